@@ -0,0 +1,37 @@
+package com.orion.iptv;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.CueGroup;
+import com.orion.player.ijk.AssSubtitleParser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+// styled cues are built from android.text spans, they need a device
+@RunWith(AndroidJUnit4.class)
+public class AssSubtitleParserInstrumentedTest {
+    @Test
+    public void parseAss() {
+        String[] subtitles = new String[] {
+                "{\\fade(500,500)\\fn华文楷体\\fs16\\1c&H3CF1F3&\\b0}--==本影片由 {\\1cHFF8000&\\b1}CMCT 团队{\\fn华文楷体\\1c&H3CF1F3&\\b0} 荣誉出品==--更多精彩影视 请访问 {\\fnCronos Pro Subhead\\1c&HFF00FF&\\b1}https://cmct.tv{\\r}",
+                "",
+                "{}",
+                "{\\b0}test",
+                "{\\fs16}test",
+                "{\\1c&H3cf1f3&}ssssss"
+        };
+        AssSubtitleParser parser = new AssSubtitleParser();
+        for (String subtitle: subtitles) {
+            CueGroup cueGroup = parser.parse(subtitle);
+            for (Cue cue : cueGroup.cues) {
+                Log.i("test", String.format(Locale.getDefault(), "%d, %.2f, %s", cue.windowColor, cue.textSize, cue.text));
+            }
+        }
+    }
+}
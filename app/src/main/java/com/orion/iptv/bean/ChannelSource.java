@@ -13,10 +13,14 @@ import java.util.List;
 
 public class ChannelSource {
     public static final String TAG = "ChannelSource";
+    // 回看地址模板，播放列表里写一行 #catchup-source=?playseek=${(b)yyyyMMddHHmmss}-${(e)yyyyMMddHHmmss}
+    private static final String CatchupSourceDirective = "#catchup-source=";
     private final String defaultGroupName;
     private final NumberGenerator groupNumGenerator = new NumberGenerator(0);
     private final NumberGenerator channelNumGenerator = new NumberGenerator(0);
     public List<ChannelGroup> groups;
+    @Nullable
+    public String catchupTemplate;
 
     public ChannelSource(String defaultGroupName) {
         this.defaultGroupName = defaultGroupName;
@@ -29,6 +33,11 @@ public class ChannelSource {
         String group = defaultGroupName;
         try {
             for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.trim().startsWith(CatchupSourceDirective)) {
+                    String template = line.trim().substring(CatchupSourceDirective.length()).trim();
+                    m.catchupTemplate = template.isEmpty() ? null : template;
+                    continue;
+                }
                 String[] parts = line.split(",", 2);
                 if (parts.length != 2) {
                     if (!line.trim().isEmpty()) {
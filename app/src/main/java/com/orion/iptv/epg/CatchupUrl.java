@@ -0,0 +1,107 @@
+package com.orion.iptv.epg;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 回看地址模板：
+//   ${start} ${end} ${now}                本地时间 yyyyMMddHHmmss
+//   ${(b)yyyy-MM-dd} ${(e)HH:mm:ss} ...   开始/结束时间按给定格式
+//   {utc} {utcend} {lutc} ${timestamp}    unix秒，lutc/timestamp为当前时间
+//   {duration} ${duration}                节目时长，秒
+//   ${url}                                原直播地址
+// 以 ? 或 & 开头的模板追加到直播地址后面
+public class CatchupUrl {
+    private static final String TAG = "CatchupUrl";
+
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({MODE_AUTO, MODE_PLAYSEEK, MODE_UTC, MODE_OFF})
+    public @interface Mode {}
+    // playlist template if it has one, playseek otherwise
+    public static final int MODE_AUTO = 0;
+    public static final int MODE_PLAYSEEK = 1;
+    public static final int MODE_UTC = 2;
+    public static final int MODE_OFF = 3;
+
+    public static final String PLAYSEEK = "?playseek=${(b)yyyyMMddHHmmss}-${(e)yyyyMMddHHmmss}";
+    public static final String UTC = "?utc={utc}&lutc={lutc}";
+
+    private static final Pattern FormattedTime = Pattern.compile("\\$\\{\\((b|e)\\)([^}]*)\\}");
+
+    private CatchupUrl() {
+    }
+
+    // null if catch-up is off
+    @Nullable
+    public static String resolve(@Mode int mode, @Nullable String playlistTemplate) {
+        switch (mode) {
+            case MODE_PLAYSEEK:
+                return PLAYSEEK;
+            case MODE_UTC:
+                return UTC;
+            case MODE_OFF:
+                return null;
+            default:
+                return playlistTemplate != null ? playlistTemplate : PLAYSEEK;
+        }
+    }
+
+    // null if the template has a bad time pattern
+    @Nullable
+    public static String build(String template, String link, long startMs, long endMs, long nowMs) {
+        String url;
+        if (template.startsWith("?") || template.startsWith("&")) {
+            url = link + (link.contains("?") ? "&" : "?") + template.substring(1);
+        } else {
+            url = template.replace("${url}", link);
+        }
+        Matcher matcher = FormattedTime.matcher(url);
+        StringBuffer buffer = new StringBuffer();
+        while (matcher.find()) {
+            long time = "b".equals(matcher.group(1)) ? startMs : endMs;
+            String formatted;
+            try {
+                formatted = new SimpleDateFormat(matcher.group(2), Locale.ENGLISH).format(new Date(time));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, String.format(Locale.ENGLISH, "invalid time pattern %s in %s: %s", matcher.group(2), template, e));
+                return null;
+            }
+            matcher.appendReplacement(buffer, Matcher.quoteReplacement(formatted));
+        }
+        matcher.appendTail(buffer);
+        long durationSeconds = Math.max(0, (endMs - startMs) / 1000);
+        return buffer.toString()
+                .replace("${start}", format(startMs))
+                .replace("${end}", format(endMs))
+                .replace("${now}", format(nowMs))
+                .replace("{utcend}", String.valueOf(endMs / 1000))
+                .replace("{utc}", String.valueOf(startMs / 1000))
+                .replace("{lutc}", String.valueOf(nowMs / 1000))
+                .replace("${timestamp}", String.valueOf(nowMs / 1000))
+                .replace("${duration}", String.valueOf(durationSeconds))
+                .replace("{duration}", String.valueOf(durationSeconds));
+    }
+
+    private static String format(long time) {
+        return new SimpleDateFormat("yyyyMMddHHmmss", Locale.ENGLISH).format(new Date(time));
+    }
+}
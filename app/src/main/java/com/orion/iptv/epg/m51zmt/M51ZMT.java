@@ -8,6 +8,7 @@ import androidx.annotation.NonNull;
 import com.google.gson.Gson;
 import com.orion.iptv.bean.EpgProgram;
 import com.orion.iptv.network.DownloadHelper;
+import com.orion.iptv.network.RequestScheduler;
 
 import java.io.IOException;
 import java.text.ParseException;
@@ -45,7 +46,7 @@ public class M51ZMT {
                 .cacheControl(cacheControl)
                 .build();
         Log.i(TAG, "request epg url: " + request.url());
-        return DownloadHelper.get(request, new okhttp3.Callback() {
+        return DownloadHelper.get(request, RequestScheduler.PRIORITY_PREFETCH, new okhttp3.Callback() {
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {
                 callback.onFailure(call, e);
@@ -0,0 +1,348 @@
+package com.orion.iptv.hls;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.orion.iptv.network.DownloadHelper;
+import com.orion.iptv.network.RequestScheduler;
+import com.orion.player.ExtDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fi.iki.elonen.NanoHTTPD;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+// 本地 HLS 中继：改写播放列表让播放器从 127.0.0.1 取分片，同时并行预取后面的N个分片，
+// 慢的单个分片不再直接造成卡顿；exo 和 ijk 都只看到一个普通的 m3u8 地址
+public class HlsRelay extends NanoHTTPD {
+    private static final String TAG = "HlsRelay";
+    private static final String MIME_PLAYLIST = "application/vnd.apple.mpegurl";
+    private static final String MIME_SEGMENT = "application/octet-stream";
+    private static final String MIME_PLAIN = "text/plain; charset=UTF-8";
+    private static final Pattern UriAttribute = Pattern.compile("URI=\"([^\"]*)\"");
+    private static final long SegmentTimeoutMs = 15 * 1000;
+    private static final long AwaitPrefetchMs = 10 * 1000;
+
+    private final SegmentCache cache;
+    private volatile int prefetchCount = 0;
+    @Nullable
+    private volatile ExtDataSource upstream;
+    @Nullable
+    private ExtDataSource current;
+    // segments of the latest load of each media playlist, audio and video renditions
+    // are separate playlists; keyed by playlist url, absolute urls
+    private final Map<String, List<String>> segments = new HashMap<>();
+    // last segment the player asked for, by playlist url
+    private final Map<String, String> lastRequested = new HashMap<>();
+
+    public HlsRelay(long cacheBytes) {
+        // port 0, the system picks a free one
+        super("127.0.0.1", 0);
+        this.cache = new SegmentCache(cacheBytes);
+    }
+
+    public static boolean isSupported(ExtDataSource dataSource) {
+        HttpUrl url = HttpUrl.parse(dataSource.getUri());
+        return url != null && url.encodedPath().toLowerCase(Locale.ROOT).endsWith(".m3u8");
+    }
+
+    public void startRelay() throws IOException {
+        start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        Log.i(TAG, "hls relay on port " + getListeningPort());
+    }
+
+    public void stopRelay() {
+        stop();
+        cache.clear();
+    }
+
+    // must be called on main thread, the relay serves one channel at a time
+    public ExtDataSource wrap(ExtDataSource dataSource, int prefetchCount) {
+        this.prefetchCount = prefetchCount;
+        this.upstream = dataSource;
+        synchronized (segments) {
+            segments.clear();
+            lastRequested.clear();
+        }
+        cache.clear();
+        current = new ExtDataSource(localUri("/playlist.m3u8", dataSource.getUri()));
+        current.setLowLatency(dataSource.isLowLatency());
+        current.setBufferProfile(dataSource.getBufferProfile());
+        return current;
+    }
+
+    @Nullable
+    public ExtDataSource unwrap(@Nullable ExtDataSource dataSource) {
+        return dataSource != null && dataSource == current ? upstream : dataSource;
+    }
+
+    private String localUri(String path, String url) {
+        try {
+            return String.format(Locale.ENGLISH, "http://127.0.0.1:%d%s?u=%s", getListeningPort(), path, URLEncoder.encode(url, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private Request newRequest(String url) {
+        Request.Builder builder = new Request.Builder().url(url);
+        ExtDataSource source = upstream;
+        if (source == null) {
+            return builder.build();
+        }
+        ExtDataSource.Auth auth = source.getAuth();
+        if (!auth.equals(ExtDataSource.NoAuth)) {
+            builder.header("Authorization", Credentials.basic(auth.username, auth.password));
+        }
+        for (Map.Entry<String, String> header : source.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        List<String> param = session.getParameters().get("u");
+        if (param == null || param.size() != 1 || HttpUrl.parse(param.get(0)) == null) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAIN, "bad url");
+        }
+        String url = param.get(0);
+        try {
+            if (session.getUri().equals("/playlist.m3u8")) {
+                return servePlaylist(url);
+            }
+            return serveSegment(session, url);
+        } catch (IOException e) {
+            Log.w(TAG, String.format(Locale.ENGLISH, "relay %s failed: %s", url, e));
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAIN, e.toString());
+        }
+    }
+
+    private okhttp3.Response execute(String url, @Nullable String range) throws IOException {
+        Request request = newRequest(url);
+        if (range != null) {
+            request = request.newBuilder().header("Range", range).build();
+        }
+        Call call = DownloadHelper.getClient().newCall(request);
+        call.timeout().timeout(SegmentTimeoutMs, TimeUnit.MILLISECONDS);
+        okhttp3.Response response = call.execute();
+        if (!response.isSuccessful() || response.body() == null) {
+            response.close();
+            throw new IOException("unexpected response code: " + response.code());
+        }
+        return response;
+    }
+
+    private Response servePlaylist(String url) throws IOException {
+        String text;
+        HttpUrl base;
+        try (okhttp3.Response response = execute(url, null)) {
+            ResponseBody body = response.body();
+            assert body != null;
+            text = body.string();
+            // follow redirects, segments are relative to the final url
+            base = response.request().url();
+        }
+        List<String> mediaSegments = new ArrayList<>();
+        String playlist = rewrite(text, base, mediaSegments);
+        if (!mediaSegments.isEmpty()) {
+            String last;
+            synchronized (segments) {
+                segments.put(url, mediaSegments);
+                last = lastRequested.get(url);
+            }
+            prefetchAfter(last);
+        }
+        return newFixedLengthResponse(Response.Status.OK, MIME_PLAYLIST, playlist);
+    }
+
+    // segment urls of a media playlist are collected into mediaSegments,
+    // byte range segments are left out, the cache only holds whole files
+    private String rewrite(String text, HttpUrl base, List<String> mediaSegments) {
+        boolean master = text.contains("#EXT-X-STREAM-INF");
+        boolean byteRange = false;
+        StringBuilder builder = new StringBuilder();
+        for (String rawLine : text.split("\n")) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("#")) {
+                byteRange |= line.startsWith("#EXT-X-BYTERANGE");
+                builder.append(rewriteTag(line, base)).append('\n');
+                continue;
+            }
+            boolean partial = byteRange;
+            byteRange = false;
+            HttpUrl resolved = base.resolve(line);
+            if (resolved == null) {
+                builder.append(line).append('\n');
+                continue;
+            }
+            String absolute = resolved.toString();
+            if (master) {
+                builder.append(localUri("/playlist.m3u8", absolute)).append('\n');
+            } else {
+                if (!partial) {
+                    mediaSegments.add(absolute);
+                }
+                builder.append(localUri(segmentPath(resolved), absolute)).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    // keys and init sections go through the relay too, alternate renditions are playlists
+    private String rewriteTag(String line, HttpUrl base) {
+        Matcher matcher = UriAttribute.matcher(line);
+        if (!matcher.find()) {
+            return line;
+        }
+        HttpUrl resolved = base.resolve(matcher.group(1));
+        if (resolved == null || line.startsWith("#EXT-X-SESSION-DATA")) {
+            return line;
+        }
+        boolean playlist = line.startsWith("#EXT-X-MEDIA") || line.startsWith("#EXT-X-I-FRAME-STREAM-INF");
+        String local = localUri(playlist ? "/playlist.m3u8" : segmentPath(resolved), resolved.toString());
+        return line.substring(0, matcher.start(1)) + local + line.substring(matcher.end(1));
+    }
+
+    // keep the extension, players pick the extractor by it
+    private static String segmentPath(HttpUrl url) {
+        List<String> path = url.pathSegments();
+        String name = path.isEmpty() ? "" : path.get(path.size() - 1);
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? "/segment" + name.substring(dot) : "/segment";
+    }
+
+    private Response serveSegment(IHTTPSession session, String url) throws IOException {
+        String range = session.getHeaders().get("range");
+        if (range != null) {
+            // a byte range of the file, or the player resuming; never answered from the cache
+            return streamThrough(url, range);
+        }
+        synchronized (segments) {
+            String playlist = playlistOf(url);
+            if (playlist != null) {
+                lastRequested.put(playlist, url);
+            }
+        }
+        prefetchAfter(url);
+        SegmentCache.Entry entry = cache.get(url);
+        if (entry != null) {
+            try {
+                byte[] data = entry.await(AwaitPrefetchMs);
+                if (data != null) {
+                    // served from the cached array as is
+                    return newFixedLengthResponse(Response.Status.OK, MIME_SEGMENT, new ByteArrayInputStream(data), data.length);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+        // not prefetched, stream it through without caching
+        return streamThrough(url, null);
+    }
+
+    private Response streamThrough(String url, @Nullable String range) throws IOException {
+        okhttp3.Response response = execute(url, range);
+        ResponseBody body = response.body();
+        assert body != null;
+        Response.Status status = response.code() == 206 ? Response.Status.PARTIAL_CONTENT : Response.Status.OK;
+        long length = body.contentLength();
+        Response relayed = length >= 0
+                ? newFixedLengthResponse(status, MIME_SEGMENT, body.byteStream(), length)
+                : newChunkedResponse(status, MIME_SEGMENT, body.byteStream());
+        String contentRange = response.header("Content-Range");
+        if (contentRange != null) {
+            relayed.addHeader("Content-Range", contentRange);
+        }
+        return relayed;
+    }
+
+    // playlist the segment was listed in, must hold the segments lock
+    @Nullable
+    private String playlistOf(String url) {
+        for (Map.Entry<String, List<String>> entry : segments.entrySet()) {
+            if (entry.getValue().contains(url)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private void prefetchAfter(@Nullable String url) {
+        int count = prefetchCount;
+        if (url == null || count <= 0) {
+            return;
+        }
+        List<String> next = new ArrayList<>();
+        synchronized (segments) {
+            String playlist = playlistOf(url);
+            if (playlist == null) {
+                return;
+            }
+            List<String> listed = segments.get(playlist);
+            int index = listed.indexOf(url);
+            for (int i = index + 1; i < listed.size() && next.size() < count; i++) {
+                next.add(listed.get(i));
+            }
+        }
+        for (String segment : next) {
+            SegmentCache.Entry entry = cache.reserve(segment);
+            if (entry == null) {
+                continue;
+            }
+            Call call = DownloadHelper.newCall(newRequest(segment), RequestScheduler.PRIORITY_PLAYBACK);
+            call.timeout().timeout(SegmentTimeoutMs, TimeUnit.MILLISECONDS);
+            call.enqueue(new PrefetchCallback(segment, entry));
+        }
+    }
+
+    private class PrefetchCallback implements Callback {
+        private final String url;
+        private final SegmentCache.Entry entry;
+
+        PrefetchCallback(String url, SegmentCache.Entry entry) {
+            this.url = url;
+            this.entry = entry;
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            Log.i(TAG, String.format(Locale.ENGLISH, "prefetch %s failed: %s", url, e));
+            cache.fail(url, entry);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull okhttp3.Response response) {
+            try (ResponseBody body = response.body()) {
+                if (!response.isSuccessful() || body == null) {
+                    throw new IOException("unexpected response code: " + response.code());
+                }
+                cache.complete(url, entry, body.bytes());
+            } catch (IOException e) {
+                onFailure(call, e);
+            }
+        }
+    }
+}
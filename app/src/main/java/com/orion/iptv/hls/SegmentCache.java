@@ -0,0 +1,105 @@
+package com.orion.iptv.hls;
+
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 预取的分片放在内存里，按最近使用淘汰，总字节数有上限；多线程访问
+public class SegmentCache {
+    private final long maxBytes;
+    // access order, the eldest is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    public static class Entry {
+        private byte[] data;
+        private boolean done = false;
+
+        // null while loading or if the load failed
+        @Nullable
+        public synchronized byte[] await(long timeoutMs) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (!done) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return null;
+                }
+                wait(left);
+            }
+            return data;
+        }
+
+        @Nullable
+        private synchronized byte[] getData() {
+            return data;
+        }
+
+        private synchronized void finish(@Nullable byte[] data) {
+            this.data = data;
+            this.done = true;
+            notifyAll();
+        }
+    }
+
+    public SegmentCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Nullable
+    public synchronized Entry get(String url) {
+        return entries.get(url);
+    }
+
+    // returns null if the segment is cached or being loaded already
+    @Nullable
+    public synchronized Entry reserve(String url) {
+        if (entries.containsKey(url)) {
+            return null;
+        }
+        Entry entry = new Entry();
+        entries.put(url, entry);
+        return entry;
+    }
+
+    public void complete(String url, Entry entry, byte[] data) {
+        entry.finish(data);
+        synchronized (this) {
+            if (entries.get(url) != entry) {
+                // cleared meanwhile
+                return;
+            }
+            totalBytes += data.length;
+            trim();
+        }
+    }
+
+    public void fail(String url, Entry entry) {
+        entry.finish(null);
+        synchronized (this) {
+            if (entries.get(url) == entry) {
+                entries.remove(url);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            byte[] data = entry.getData();
+            if (data == null) {
+                // still loading
+                continue;
+            }
+            totalBytes -= data.length;
+            it.remove();
+        }
+    }
+}
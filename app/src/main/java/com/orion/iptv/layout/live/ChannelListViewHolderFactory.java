@@ -8,10 +8,17 @@ import android.widget.TextView;
 
 import com.orion.iptv.R;
 import com.orion.iptv.bean.ChannelItem;
+import com.orion.iptv.network.LinkChecker;
+import com.orion.iptv.network.LinkHealthStore;
 import com.orion.iptv.recycleradapter.ViewHolder;
 import com.orion.iptv.recycleradapter.ViewHolderFactory;
 
+import java.util.List;
+
 public class ChannelListViewHolderFactory implements ViewHolderFactory<ViewHolder<ChannelItem>> {
+    // links checked more than 12 hours ago are not trusted
+    private static final long CheckMaxAgeMs = 12 * 3600 * 1000;
+    private static final float DeadChannelAlpha = 0.4f;
     private final Context context;
     private final int layoutId;
 
@@ -49,7 +56,22 @@ public class ChannelListViewHolderFactory implements ViewHolderFactory<ViewHolde
             public void setContent(int position, ChannelItem content) {
                 this.number.setText(content.number());
                 this.content.setText(content.content());
+                itemView.setAlpha(isDead(content) ? DeadChannelAlpha : 1f);
             }
         };
     }
+
+    // 所有线路都检查失败才算失效
+    private static boolean isDead(ChannelItem item) {
+        List<String> links = item.getSources();
+        if (links.isEmpty()) {
+            return false;
+        }
+        for (String link : links) {
+            if (LinkHealthStore.getCheckStatus(link, CheckMaxAgeMs) != LinkChecker.STATUS_DEAD) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -3,10 +3,19 @@ package com.orion.iptv.layout.live;
 import android.util.Log;
 import android.util.Pair;
 
+import androidx.annotation.Nullable;
+
+import com.orion.iptv.network.LinkHealthStore;
+import com.orion.iptv.probe.MediaInfo;
+import com.orion.iptv.probe.StreamProber;
 import com.orion.player.ExtDataSource;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public class DataSourceManager {
     private static final String TAG = "DataSourceManager";
@@ -14,7 +23,47 @@ public class DataSourceManager {
     private int cursor = 0;
 
     public DataSourceManager(List<DataSource> sources) {
-        this.sources = sources;
+        this.sources = sortByHealth(sources);
+    }
+
+    // 历史表现好的线路排前面，分数相同时探测到的分辨率高的排前面，再相同保持原顺序
+    private static List<DataSource> sortByHealth(List<DataSource> sources) {
+        Map<String, Float> scores = new HashMap<>();
+        Map<String, Integer> heights = new HashMap<>();
+        for (DataSource source : sources) {
+            String uri = source.dataSource.getUri();
+            scores.put(uri, LinkHealthStore.getScore(uri));
+            heights.put(uri, probedHeight(uri));
+        }
+        List<DataSource> sorted = new ArrayList<>(sources);
+        Collections.sort(sorted, (a, b) -> {
+            int byScore = Float.compare(scores.get(b.dataSource.getUri()), scores.get(a.dataSource.getUri()));
+            return byScore != 0 ? byScore : Integer.compare(heights.get(b.dataSource.getUri()), heights.get(a.dataSource.getUri()));
+        });
+        return sorted;
+    }
+
+    // the link sortByHealth puts first
+    @Nullable
+    public static String bestLink(List<String> links) {
+        String best = null;
+        float bestScore = 0;
+        int bestHeight = 0;
+        for (String link : links) {
+            float score = LinkHealthStore.getScore(link);
+            int height = probedHeight(link);
+            if (best == null || score > bestScore || (score == bestScore && height > bestHeight)) {
+                best = link;
+                bestScore = score;
+                bestHeight = height;
+            }
+        }
+        return best;
+    }
+
+    private static int probedHeight(String uri) {
+        MediaInfo info = StreamProber.get(uri);
+        return info != null ? info.height : 0;
     }
 
     public int getCursor(DataSource dataSource) {
@@ -47,6 +96,29 @@ public class DataSourceManager {
         return Pair.create(cursor, sources.get(cursor));
     }
 
+    public Pair<Integer, DataSource> setCursor(int cursor) {
+        this.cursor = cursor >= 0 && cursor < sources.size() ? cursor : 0;
+        Log.i(TAG,String.format(Locale.getDefault(), "use source %d/%d", this.cursor+1, sources.size()));
+        return Pair.create(this.cursor, sources.get(this.cursor));
+    }
+
+    public int indexOf(String uri) {
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).dataSource.getUri().equals(uri)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public List<ExtDataSource> getExtDataSources() {
+        List<ExtDataSource> dataSources = new ArrayList<>();
+        for (DataSource source : sources) {
+            dataSources.add(source.dataSource);
+        }
+        return dataSources;
+    }
+
     public int getDataSourceCount() {
         return sources.size();
     }
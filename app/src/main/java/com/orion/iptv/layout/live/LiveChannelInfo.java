@@ -19,9 +19,13 @@ import androidx.lifecycle.ViewModelProvider;
 import com.google.android.exoplayer2.C;
 import com.orion.iptv.R;
 import com.orion.iptv.bean.ChannelInfo;
+import com.orion.iptv.bean.ChannelItem;
 import com.orion.iptv.bean.EpgProgram;
+import com.orion.iptv.probe.MediaInfo;
+import com.orion.iptv.probe.StreamProber;
 import com.orion.player.ExtTrack;
 import com.orion.player.IExtPlayer;
+import com.orion.player.PlayerPreloader;
 import com.orion.player.ui.EnhanceConstraintLayout;
 
 import java.util.List;
@@ -29,6 +33,7 @@ import java.util.Locale;
 
 public class LiveChannelInfo extends Fragment {
     private final static String TAG = "LiveChannelInfo";
+    private final static long LiveOffsetRefreshMillis = 1000;
     private final String[] units = {"bps", "kbps", "Mbps", "Gbps"};
     protected LivePlayerViewModel viewModel;
     protected EnhanceConstraintLayout container;
@@ -37,6 +42,8 @@ public class LiveChannelInfo extends Fragment {
     protected TextView codecInfo;
     protected TextView mediaInfo;
     protected TextView bitrateInfo;
+    protected TextView liveOffsetInfo;
+    protected TextView profileInfo;
     protected TextView linkInfo;
     protected TextView currentEpgProgram;
     protected TextView nextEpgProgram;
@@ -58,7 +65,21 @@ public class LiveChannelInfo extends Fragment {
             }
         }
     };
+    // 直播延迟在显示期间每秒刷新一次
+    protected final Runnable updateLiveOffset = new Runnable() {
+        @Override
+        public void run() {
+            setLiveOffsetInfo(player != null ? player.getCurrentLiveOffset() : -1);
+            if (!isViewHidden()) {
+                container.postDelayed(this, LiveOffsetRefreshMillis);
+            }
+        }
+    };
     protected final IExtPlayer.Listener listener = new PlayerEventListener();
+    protected IExtPlayer player;
+    // link of the previewed channel being probed
+    @Nullable
+    protected String probingLink;
 
     @Nullable
     @Override
@@ -76,6 +97,8 @@ public class LiveChannelInfo extends Fragment {
         codecInfo = view.findViewById(R.id.codecInfo);
         mediaInfo = view.findViewById(R.id.mediaInfo);
         bitrateInfo = view.findViewById(R.id.bitrateInfo);
+        liveOffsetInfo = view.findViewById(R.id.liveOffsetInfo);
+        profileInfo = view.findViewById(R.id.profileInfo);
         linkInfo = view.findViewById(R.id.linkInfo);
         currentEpgProgram = view.findViewById(R.id.currentEpgProgram);
         nextEpgProgram = view.findViewById(R.id.nextEpgProgram);
@@ -86,6 +109,7 @@ public class LiveChannelInfo extends Fragment {
         nextEpgProgram.setSelected(true);
         viewModel = new ViewModelProvider(requireActivity()).get(LivePlayerViewModel.class);
         viewModel.observeLiveSource(requireActivity(), this::updateChannelInfo);
+        viewModel.observePreviewChannel(requireActivity(), this::previewChannel);
         viewModel.observeCurrentEpgProgram(requireActivity(), this::setCurrentEpgProgram);
         viewModel.observeNextEpgProgram(requireActivity(), this::setNextEpgProgram);
         container.addEventListener(new EnhanceConstraintLayout.EventListener() {
@@ -95,9 +119,13 @@ public class LiveChannelInfo extends Fragment {
                     return;
                 }
                 container.removeCallbacks(hideMyself);
+                container.removeCallbacks(updateLiveOffset);
                 if (visibility == View.VISIBLE && hideMyselfAt > 0) {
                     container.postDelayed(hideMyself, Math.max(hideMyselfAt-SystemClock.uptimeMillis(), 1));
                 }
+                if (visibility == View.VISIBLE) {
+                    container.post(updateLiveOffset);
+                }
             }
         });
     }
@@ -105,14 +133,62 @@ public class LiveChannelInfo extends Fragment {
     protected void updateChannelInfo(Pair<Integer, DataSource> dataSource) {
         ChannelInfo info = dataSource.second.channelInfo;
         assert info != null;
+        probingLink = null;
         setChannelNumber(info.channelNumber);
         setChannelName(info.channelName);
-        setCodecInfo(res.getString(R.string.codec_info_default));
-        setMediaInfo(res.getString(R.string.media_info_default));
-        setBitrateInfo(0);
+        // probed earlier, the tracks of the player replace it
+        setProbedInfo(StreamProber.get(dataSource.second.dataSource.getUri()));
+        setLiveOffsetInfo(-1);
+        setProfileInfo(null);
         setLinkInfo(dataSource.first, viewModel.getSourceCount());
     }
 
+    protected void previewChannel(ChannelItem item) {
+        if (item == null) {
+            return;
+        }
+        setChannelNumber(item.info.channelNumber);
+        setChannelName(item.info.channelName);
+        setProbedInfo(null);
+        setLiveOffsetInfo(-1);
+        setProfileInfo(null);
+        setLinkInfo(0, item.getSources().size());
+        setCurrentEpgProgram(null);
+        setNextEpgProgram(null);
+        show();
+        probePreview(item);
+    }
+
+    // the link the channel would start on
+    private void probePreview(ChannelItem item) {
+        probingLink = null;
+        for (String link : item.getSources()) {
+            if (link == null || link.isEmpty()) {
+                continue;
+            }
+            probingLink = link;
+            StreamProber.probe(viewModel.newDataSource(link, item.info), (probed, info) -> {
+                if (probed.equals(probingLink)) {
+                    setProbedInfo(info);
+                }
+            });
+            return;
+        }
+    }
+
+    protected void setProbedInfo(@Nullable MediaInfo info) {
+        if (info == null) {
+            setCodecInfo(res.getString(R.string.codec_info_default));
+            setMediaInfo(res.getString(R.string.media_info_default));
+            setBitrateInfo(0);
+            return;
+        }
+        String codec = info.videoCodec();
+        setCodecInfo(codec != null ? codec : res.getString(R.string.codec_info_default));
+        setMediaInfo(info.width > 0 && info.height > 0 ? info.width + "x" + info.height : res.getString(R.string.media_info_default));
+        setBitrateInfo(info.bitrate);
+    }
+
     protected void setChannelName(String name) {
         this.channelName.setText(name);
     }
@@ -144,6 +220,24 @@ public class LiveChannelInfo extends Fragment {
         this.bitrateInfo.setVisibility(View.VISIBLE);
     }
 
+    protected void setLiveOffsetInfo(long offsetMs) {
+        if (offsetMs < 0) {
+            this.liveOffsetInfo.setVisibility(View.GONE);
+            return;
+        }
+        this.liveOffsetInfo.setText(String.format(Locale.ENGLISH, res.getString(R.string.live_offset_info), offsetMs / 1000.0f));
+        this.liveOffsetInfo.setVisibility(View.VISIBLE);
+    }
+
+    protected void setProfileInfo(@Nullable String profile) {
+        if (profile == null) {
+            this.profileInfo.setVisibility(View.GONE);
+            return;
+        }
+        this.profileInfo.setText(profile);
+        this.profileInfo.setVisibility(View.VISIBLE);
+    }
+
     protected void setCodecInfo(String info) {
         this.codecInfo.setText(info);
     }
@@ -173,9 +267,17 @@ public class LiveChannelInfo extends Fragment {
     }
 
     public void setPlayer(IExtPlayer player) {
+        if (this.player != null && this.player != player) {
+            this.player.removeListener(listener);
+        }
+        this.player = player;
         player.addListener(listener);
     }
 
+    public void replay(PlayerPreloader.WarmPlayer warm) {
+        warm.replay(listener);
+    }
+
     public boolean isViewHidden() {
         return container.getVisibility() == View.GONE;
     }
@@ -241,6 +343,13 @@ public class LiveChannelInfo extends Fragment {
     }
 
     private class PlayerEventListener implements IExtPlayer.Listener {
+        @Override
+        public void onPlaybackStateChanged(int state) {
+            if (state == IExtPlayer.STATE_READY && player != null) {
+                setProfileInfo(player.getPlaybackProfile());
+            }
+        }
+
         @Override
         public void onTracksChanged(List<ExtTrack> tracks) {
             for (ExtTrack track: tracks) {
@@ -10,6 +10,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.util.Log;
 import android.util.Pair;
@@ -18,6 +20,7 @@ import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 import android.widget.ToggleButton;
 
 import com.orion.iptv.R;
@@ -49,6 +52,11 @@ public class LiveChannelList extends Fragment {
     private ToggleButton showEpgButton;
 
     private static final long AutoHideAfterMillis = 5*1000;
+    // 按住方向键连续换台时，输入停下这么久才真正切换频道
+    private static final long ZapSettleMillis = 300;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable commitZap = this::commitPendingChannel;
+    private int pendingChannelPos = -1;
     private long hideMyselfAt = 0;
     private final Runnable hideMyself = new Runnable() {
         @Override
@@ -122,7 +130,21 @@ public class LiveChannelList extends Fragment {
         layoutManager.setOrientation(LinearLayoutManager.VERTICAL);
         // layoutManager.setMeasurementCacheEnabled(false);
         epgList.setLayoutManager(layoutManager);
-        Selection<EpgProgram> epgProgramSelection = new SelectionWithFocus<>(epgList);
+        SelectionWithFocus<EpgProgram> epgProgramSelection = new SelectionWithFocus<>(epgList);
+        // 选中已结束的节目回看，选中正在播的节目回到直播，选中以后的节目预约录制
+        epgProgramSelection.addSelectedListener((position, item) -> {
+            long now = System.currentTimeMillis();
+            if (item.end <= now) {
+                mViewModel.playCatchup(item, 0);
+            } else if (item.start <= now) {
+                mViewModel.backToLive();
+            } else {
+                boolean scheduled = mViewModel.toggleRecording(requireContext(), item);
+                int message = scheduled ? R.string.record_scheduled : R.string.record_cancelled;
+                Toast.makeText(requireContext(), getString(message, item.program), Toast.LENGTH_SHORT).show();
+            }
+        });
+        epgProgramSelection.addFocusedListener((position, item) -> mViewModel.prefetchCatchup(item));
         mViewModel.observeEpgs(requireActivity(), epgs -> {
             List<EpgProgram> items = epgs != null ? Arrays.asList(epgs.second) : new ArrayList<>();
             RecyclerAdapter<EpgProgram> epgListViewAdapter = new RecyclerAdapter<>(
@@ -161,6 +183,13 @@ public class LiveChannelList extends Fragment {
             channelList.swapAdapter(channelListViewAdapter, true);
             channelList.scrollToPosition(position);
         });
+        // 后台检查出新结果，刷新失效频道的显示
+        mViewModel.observeLinkCheckProgress(requireActivity(), progress -> {
+            RecyclerView.Adapter<?> adapter = channelList.getAdapter();
+            if (adapter != null) {
+                adapter.notifyItemRangeChanged(0, adapter.getItemCount());
+            }
+        });
         selection.addSelectedListener((position, item) -> {
             Log.i(TAG, String.format(Locale.ENGLISH, "channel item %d::%s selected", position, item.info.channelName));
             mViewModel.selectChannel(position, item);
@@ -208,30 +237,64 @@ public class LiveChannelList extends Fragment {
         return pos < total ? pos : 0;
     }
 
+    @Nullable
+    public ChannelItem peekPrevChannel() {
+        LivePlayerViewModel.Channel channel = mViewModel.getCurrentChannel();
+        if (channel == null || channel.channels.size() < 2) {
+            return null;
+        }
+        return channel.channels.get(prevPos(channel.channelPos, channel.channels.size()));
+    }
+
+    @Nullable
+    public ChannelItem peekNextChannel() {
+        LivePlayerViewModel.Channel channel = mViewModel.getCurrentChannel();
+        if (channel == null || channel.channels.size() < 2) {
+            return null;
+        }
+        return channel.channels.get(nextPos(channel.channelPos, channel.channels.size()));
+    }
+
     public void seekToPrevChannel() {
+        stepChannel(false);
+    }
+
+    public void seekToNextChannel() {
+        stepChannel(true);
+    }
+
+    private void stepChannel(boolean next) {
         LivePlayerViewModel.Channel channel = mViewModel.getCurrentChannel();
         if (channel == null) {
             return;
         }
-        int pos = prevPos(channel.channelPos, channel.channels.size());
-        mViewModel.selectChannel(pos, channel.channels.get(pos), Pair.create(channel.groupPos, channel.channels));
+        int from = pendingChannelPos >= 0 ? pendingChannelPos : channel.channelPos;
+        int pos = next ? nextPos(from, channel.channels.size()) : prevPos(from, channel.channels.size());
+        pendingChannelPos = pos;
+        mViewModel.previewChannel(channel.channels.get(pos));
         Pair<Integer, List<ChannelItem>> channels = mViewModel.getChannels();
         if (channels != null && channels.first == channel.groupPos) {
             selection.selectQuiet(pos);
         }
+        mHandler.removeCallbacks(commitZap);
+        mHandler.postDelayed(commitZap, ZapSettleMillis);
     }
 
-    public void seekToNextChannel() {
+    private void commitPendingChannel() {
         LivePlayerViewModel.Channel channel = mViewModel.getCurrentChannel();
-        if (channel == null) {
+        int pos = pendingChannelPos;
+        pendingChannelPos = -1;
+        if (channel == null || pos < 0 || pos >= channel.channels.size()) {
             return;
         }
-        int pos = nextPos(channel.channelPos, channel.channels.size());
         mViewModel.selectChannel(pos, channel.channels.get(pos), Pair.create(channel.groupPos, channel.channels));
-        Pair<Integer, List<ChannelItem>> channels = mViewModel.getChannels();
-        if (channels != null && channels.first == channel.groupPos) {
-            selection.selectQuiet(pos);
-        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mHandler.removeCallbacks(commitZap);
+        pendingChannelPos = -1;
     }
 
     public void toggleVisibility() {
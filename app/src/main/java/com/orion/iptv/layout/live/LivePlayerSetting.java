@@ -70,6 +70,15 @@ public class LivePlayerSetting extends Fragment {
         menus.add(new SetPlayerFactory(requireActivity(), viewModel));
         menus.add(new SetSurfaceType(requireActivity(), viewModel));
         menus.add(new SetSourceTimeout(requireActivity(), viewModel));
+        menus.add(new SetPreloadCount(requireActivity(), viewModel));
+        menus.add(new SetLowLatency(requireActivity(), viewModel));
+        menus.add(new SetBufferProfile(requireActivity(), viewModel));
+        menus.add(new SetTimeshift(requireActivity(), viewModel));
+        menus.add(new SetHlsPrefetch(requireActivity(), viewModel));
+        menus.add(new SetCatchup(requireActivity(), viewModel));
+        menus.add(new SetRecordBudget(requireActivity(), viewModel));
+        menus.add(new SetMultiView(requireActivity(), viewModel));
+        menus.add(new SetZapStats(requireActivity(), viewModel));
         enhanceConstraintLayout.addEventListener(new EnhanceConstraintLayout.EventListener() {
             @Override
             public void onMotionEvent(MotionEvent ev) {
@@ -1,5 +1,8 @@
 package com.orion.iptv.layout.live;
 
+import android.content.Context;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.Pair;
 
@@ -14,10 +17,23 @@ import com.orion.iptv.bean.ChannelInfo;
 import com.orion.iptv.bean.ChannelItem;
 import com.orion.iptv.bean.ChannelSource;
 import com.orion.iptv.bean.EpgProgram;
+import com.orion.iptv.epg.CatchupUrl;
 import com.orion.iptv.misc.PreferenceStore;
+import com.orion.iptv.misc.StreamCodecs;
+import com.orion.iptv.misc.ZapTracker;
+import com.orion.iptv.network.CatchupPrefetcher;
+import com.orion.iptv.network.DownloadHelper;
+import com.orion.iptv.network.LinkChecker;
+import com.orion.iptv.network.LinkHealthStore;
+import com.orion.iptv.network.LinkRacer;
+import com.orion.iptv.probe.MediaInfo;
+import com.orion.iptv.probe.StreamProber;
+import com.orion.iptv.record.Recording;
+import com.orion.iptv.record.RecordingService;
 import com.orion.player.ExtDataSource;
 import com.orion.player.IExtPlayer;
 import com.orion.player.IExtPlayerFactory;
+import com.orion.player.exo.BufferProfile;
 import com.orion.player.exo.ExtExoPlayerFactory;
 import com.orion.player.ijk.ExtHWIjkPlayerFactory;
 import com.orion.player.ijk.ExtSWIjkPlayerFactory;
@@ -25,8 +41,13 @@ import com.orion.player.ui.VideoView;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class LivePlayerViewModel extends ViewModel {
     private final static String TAG = "LiveChannelListViewModel";
@@ -39,32 +60,89 @@ public class LivePlayerViewModel extends ViewModel {
     public final static String PlayerFactoryKey = "live_player_factory";
     public final static String SurfaceTypeKey = "live_player_surface_type";
     public final static String SourceTimeoutKey = "live_player_source_timeout";
+    public final static String PreloadCountKey = "live_player_preload_count";
+    public final static String ShowZapStatsKey = "live_player_show_zap_stats";
+    public final static String LowLatencyAllKey = "live_player_low_latency_all";
+    public final static String LowLatencyChannelsKey = "live_player_low_latency_channels";
+    // player_type_int_values, picks a player per link from its codecs
+    public final static int PLAYER_TYPE_AUTO = 3;
+    // links probed in the background per channel
+    private final static int MaxProbedLinks = 4;
+    public final static String BufferProfileKey = "live_player_buffer_profile";
+    public final static String TimeshiftSizeKey = "live_player_timeshift_size";
+    public final static String HlsPrefetchKey = "live_player_hls_prefetch";
+    public final static String CatchupModeKey = "live_player_catchup_mode";
+    public final static String RecordBudgetKey = "live_player_record_budget";
 
     public final static String DEFAULT_EPG_URL = "http://epg.51zmt.top:8000/api/diyp/";
     // 10s
     public final static int DEFAULT_SOURCE_TIMEOUT = 10000;
+    // 多线路竞速最多等3s，超时从第一条线路开始
+    public final static int LINK_RACE_TIMEOUT = 3000;
+    // adaptive source timeout, twice the p90 startup time of the link, within these bounds
+    public final static int MIN_SOURCE_TIMEOUT = 3000;
+    public final static int MAX_SOURCE_TIMEOUT = 30000;
+    private final static int ADAPTIVE_TIMEOUT_PERCENTILE = 90;
+    private final static int ADAPTIVE_TIMEOUT_MIN_SAMPLES = 3;
+    // on demand recordings without epg stop after this
+    private final static long RECORD_ON_DEMAND_MS = 2 * 3600 * 1000;
+    // seeking this close to now goes back to live
+    private final static long CATCHUP_LIVE_MARGIN_MS = 30 * 1000;
 
     private final MutableLiveData<List<ChannelGroup>> groups;
     private final MutableLiveData<Pair<ChannelInfo, EpgProgram[]>> epgs;
     private final MutableLiveData<Pair<Integer, List<ChannelItem>>> channels;
     // currentChannelInfo = Pair<<ChannelPos, GroupPos>, ChannelInfo>
     private final MutableLiveData<Channel> currentChannel;
+    private final MutableLiveData<ChannelItem> previewChannel;
     private final MutableLiveData<Pair<Integer, Pair<ChannelInfo, EpgProgram>>> currentEpgProgram;
     private final MutableLiveData<Pair<Integer, Pair<ChannelInfo, EpgProgram>>> nextEpgProgram;
     private final MutableLiveData<Pair<Integer, DataSource>> liveSource;
     private final MutableLiveData<Pair<Integer, IExtPlayerFactory<? extends IExtPlayer>>> playerFactory;
+    // factories of the players that differ from the selected one, by player type
+    private final Map<Integer, IExtPlayerFactory<? extends IExtPlayer>> playerFactories = new HashMap<>();
+    // link and player being tried after a decoder error
+    @Nullable
+    private Pair<String, Integer> pendingFallback;
+    // link whose fallback chain ran out and the player it last failed on, kept until another link plays
+    @Nullable
+    private Pair<String, Integer> exhaustedFallback;
     private final MutableLiveData<Integer> surfaceType;
     private final MutableLiveData<String> settingUrl;
     private final MutableLiveData<String> epgUrl;
     private final MutableLiveData<Integer> sourceTimeout;
+    private final MutableLiveData<Integer> preloadCount;
+    private final MutableLiveData<Boolean> showZapStats;
+    // tile count of a requested multi-view, reset once the activity handled it
+    private final MutableLiveData<Integer> multiViewRequest;
+    private final MutableLiveData<Pair<Integer, Integer>> linkCheckProgress;
 
     private DataSourceManager sourceManager;
+    private LinkRacer linkRacer;
+    // link that won the last race, by channel name
+    private final Map<String, String> raceWinners = new HashMap<>();
+    // links the activity holds warm players for, a race would only delay them
+    private Set<String> warmLinks = new HashSet<>();
+    private LinkChecker linkChecker;
+    private final CatchupPrefetcher catchupPrefetcher = new CatchupPrefetcher();
+    @Nullable
+    private String playlistCatchupTemplate;
+    // program being played back, null when live
+    @Nullable
+    private EpgProgram catchupProgram;
+    // the live link the catch-up url is built from
+    @Nullable
+    private String catchupLink;
+    private long catchupOffsetMs = 0;
+    private long catchupStartedAt = 0;
 
     public LivePlayerViewModel() {
         channels = new MutableLiveData<>();
+        linkCheckProgress = new MutableLiveData<>();
         groups = new MutableLiveData<>();
         epgs = new MutableLiveData<>();
         currentChannel = new MutableLiveData<>();
+        previewChannel = new MutableLiveData<>();
         currentEpgProgram = new MutableLiveData<>();
         nextEpgProgram = new MutableLiveData<>();
         liveSource = new MutableLiveData<>();
@@ -76,6 +154,9 @@ public class LivePlayerViewModel extends ViewModel {
         surfaceType = new MutableLiveData<>(surfaceTypeValue);
         int timeout = PreferenceStore.getInt(SourceTimeoutKey, DEFAULT_SOURCE_TIMEOUT);
         sourceTimeout = new MutableLiveData<>(timeout);
+        preloadCount = new MutableLiveData<>(PreferenceStore.getInt(PreloadCountKey, 0));
+        showZapStats = new MutableLiveData<>(PreferenceStore.getBoolean(ShowZapStatsKey, false));
+        multiViewRequest = new MutableLiveData<>();
         String epg = PreferenceStore.getString(EpgUrlKey, DEFAULT_EPG_URL);
         epgUrl = new MutableLiveData<>(epg);
     }
@@ -123,6 +204,24 @@ public class LivePlayerViewModel extends ViewModel {
         playerFactory.observe(owner, observer);
     }
 
+    public void observeLinkCheckProgress(LifecycleOwner owner, Observer<Pair<Integer, Integer>> observer) {
+        linkCheckProgress.observe(owner, observer);
+    }
+
+    // null right after each preview, observers ignore it
+    public void observePreviewChannel(LifecycleOwner owner, Observer<ChannelItem> observer) {
+        previewChannel.observe(owner, observer);
+    }
+
+    // 连续换台的中间频道只更新界面，不切换线路也不拉节目单
+    public void previewChannel(ChannelItem item) {
+        cancelLinkRace();
+        previewChannel.setValue(item);
+        // an event, not state: active observers got it synchronously, one that
+        // starts observing later (rotation, back from another screen) must not replay it
+        previewChannel.setValue(null);
+    }
+
     public void observeCurrentChannel(LifecycleOwner owner, Observer<Channel> observer) {
         currentChannel.observe(owner, observer);
     }
@@ -151,20 +250,70 @@ public class LivePlayerViewModel extends ViewModel {
     protected void selectChannel(int position, ChannelItem item, Pair<Integer, List<ChannelItem>> group) {
         PreferenceStore.setInt(ChannelPosKey, position);
         PreferenceStore.setString(ChannelNameKey, item.info.channelName);
+        ZapTracker.mark(ZapTracker.STAGE_SELECT_CHANNEL);
+        catchupProgram = null;
+        catchupLink = null;
+        catchupPrefetcher.cancel();
 
         List<DataSource> sources = new ArrayList<>();
         for (String link : item.getSources()) {
             if (link != null && !link.isEmpty()) {
-                sources.add(new DataSource(new ExtDataSource(link), item.info));
+                sources.add(new DataSource(newDataSource(link, item.info), item.info));
             }
         }
         sourceManager = new DataSourceManager(sources);
-        liveSource.setValue(sourceManager.getCurrentDataSource());
 
+        // current channel goes first, liveSource observers look up adjacent channels from it
         currentChannel.setValue(new Channel(position, item.info, group.first, group.second));
         currentEpgProgram.setValue(null);
         nextEpgProgram.setValue(null);
         epgs.setValue(null);
+
+        cancelLinkRace();
+        if (sources.size() < 2) {
+            setLiveSource(sourceManager.getCurrentDataSource());
+            return;
+        }
+        String startupLink = getStartupLink(item);
+        if (startupLink != null && warmLinks.contains(startupLink)) {
+            setLiveSource(sourceManager.setCursor(sourceManager.indexOf(startupLink)));
+            return;
+        }
+        DownloadHelper.beginPlaybackStartup();
+        DataSourceManager manager = sourceManager;
+        String channelName = item.info.channelName;
+        linkRacer = new LinkRacer(manager.getExtDataSources(), LINK_RACE_TIMEOUT);
+        linkRacer.start((index, costMs) -> {
+            if (manager != sourceManager) {
+                return;
+            }
+            linkRacer = null;
+            Pair<Integer, DataSource> source = manager.setCursor(index);
+            if (index >= 0) {
+                raceWinners.put(channelName, source.second.dataSource.getUri());
+            }
+            setLiveSource(source);
+        });
+    }
+
+    // the link selectChannel starts the channel on: the last race winner, otherwise the best scored one
+    @Nullable
+    public String getStartupLink(ChannelItem item) {
+        List<String> links = new ArrayList<>();
+        for (String link : item.getSources()) {
+            if (link != null && !link.isEmpty()) {
+                links.add(link);
+            }
+        }
+        String winner = raceWinners.get(item.info.channelName);
+        if (winner != null && links.contains(winner)) {
+            return winner;
+        }
+        return DataSourceManager.bestLink(links);
+    }
+
+    public void setWarmLinks(Set<String> links) {
+        warmLinks = links;
     }
 
     public int getSelectedGroup() {
@@ -213,15 +362,24 @@ public class LivePlayerViewModel extends ViewModel {
         }
     }
 
+    private void setLiveSource(Pair<Integer, DataSource> source) {
+        if (exhaustedFallback != null && (source == null || !exhaustedFallback.first.equals(source.second.dataSource.getUri()))) {
+            exhaustedFallback = null;
+        }
+        liveSource.setValue(source);
+    }
+
     public void seekToNextSource() {
+        cancelLinkRace();
         if (sourceManager != null) {
-            liveSource.setValue(sourceManager.nextDataSource());
+            setLiveSource(sourceManager.nextDataSource());
         }
     }
 
     public void seekToPrevSource() {
+        cancelLinkRace();
         if (sourceManager != null) {
-            liveSource.setValue(sourceManager.prevDataSource());
+            setLiveSource(sourceManager.prevDataSource());
         }
     }
 
@@ -229,19 +387,48 @@ public class LivePlayerViewModel extends ViewModel {
         return (sourceManager != null) ? sourceManager.getDataSourceCount() : 0;
     }
 
-    public IExtPlayerFactory<? extends IExtPlayer> newPlayerFactory(int playerType) {
+    private void cancelLinkRace() {
+        if (linkRacer != null) {
+            linkRacer.cancel();
+            linkRacer = null;
+        }
+    }
+
+    private void startLinkCheck(ChannelSource source) {
+        if (linkChecker != null) {
+            linkChecker.cancel();
+        }
+        linkChecker = new LinkChecker(source);
+        linkChecker.start((checked, total) -> linkCheckProgress.setValue(Pair.create(checked, total)));
+    }
+
+    @Override
+    protected void onCleared() {
+        cancelLinkRace();
+        catchupPrefetcher.cancel();
+        if (linkChecker != null) {
+            linkChecker.cancel();
+            linkChecker = null;
+        }
+    }
+
+    public static IExtPlayerFactory<? extends IExtPlayer> newPlayerFactory(int playerType) {
         switch (playerType) {
             case 0:
                 return new ExtHWIjkPlayerFactory();
             case 1:
                 return new ExtSWIjkPlayerFactory();
             case 2:
+            case PLAYER_TYPE_AUTO:
+                // unknown streams start on exo, it reports the codecs of every track
                 return new ExtExoPlayerFactory();
         }
         return new ExtHWIjkPlayerFactory();
     }
 
     public void setPlayerFactoryType(int playerFactoryType) {
+        pendingFallback = null;
+        exhaustedFallback = null;
         PreferenceStore.setInt(PlayerFactoryKey, playerFactoryType);
         playerFactory.setValue(Pair.create(playerFactoryType, newPlayerFactory(playerFactoryType)));
     }
@@ -250,6 +437,362 @@ public class LivePlayerViewModel extends ViewModel {
         return playerFactory.getValue();
     }
 
+    // the player type of the link: the one that worked after a decoder fallback,
+    // in auto mode chosen by the codecs learned from earlier playbacks
+    public int getPlayerType(ExtDataSource dataSource) {
+        String link = dataSource.getUri();
+        if (pendingFallback != null && pendingFallback.first.equals(link)) {
+            return pendingFallback.second;
+        }
+        // every player failed, stay on the last one so the link is not restarted from the top of the chain
+        if (isFallbackExhausted(dataSource)) {
+            return exhaustedFallback.second;
+        }
+        Pair<Integer, IExtPlayerFactory<? extends IExtPlayer>> current = playerFactory.getValue();
+        assert current != null;
+        if (current.first == PLAYER_TYPE_AUTO) {
+            return StreamCodecs.choosePlayerType(link);
+        }
+        int working = StreamCodecs.getWorkingPlayer(link);
+        return working != StreamCodecs.PLAYER_UNKNOWN ? working : current.first;
+    }
+
+    // the selected factory for its own player type, so the preloader can match it
+    public IExtPlayerFactory<? extends IExtPlayer> getPlayerFactory(int playerType) {
+        Pair<Integer, IExtPlayerFactory<? extends IExtPlayer>> current = playerFactory.getValue();
+        assert current != null;
+        int selectedType = current.first == PLAYER_TYPE_AUTO ? StreamCodecs.PLAYER_EXO : current.first;
+        if (playerType == selectedType) {
+            return current.second;
+        }
+        IExtPlayerFactory<? extends IExtPlayer> factory = playerFactories.get(playerType);
+        if (factory == null) {
+            factory = newPlayerFactory(playerType);
+            playerFactories.put(playerType, factory);
+        }
+        return factory;
+    }
+
+    public IExtPlayerFactory<? extends IExtPlayer> getPlayerFactory(ExtDataSource dataSource) {
+        return getPlayerFactory(getPlayerType(dataSource));
+    }
+
+    // a decoder error on the link, the next getPlayerType of it returns the next player of the chain;
+    // false once every player failed
+    public boolean fallbackPlayer(ExtDataSource dataSource, int failedPlayerType) {
+        String link = dataSource.getUri();
+        int next = StreamCodecs.nextFallbackPlayer(failedPlayerType);
+        if (next == StreamCodecs.PLAYER_UNKNOWN || isFallbackExhausted(dataSource)) {
+            pendingFallback = null;
+            exhaustedFallback = Pair.create(link, failedPlayerType);
+            StreamCodecs.setWorkingPlayer(link, StreamCodecs.PLAYER_UNKNOWN);
+            return false;
+        }
+        Log.i(TAG, String.format(Locale.ENGLISH, "decoder failed on player %d, retry %s on player %d", failedPlayerType, link, next));
+        pendingFallback = Pair.create(link, next);
+        return true;
+    }
+
+    public boolean isFallbackExhausted(ExtDataSource dataSource) {
+        return exhaustedFallback != null && exhaustedFallback.first.equals(dataSource.getUri());
+    }
+
+    // the link plays, a player reached through the fallback chain is remembered for it
+    public void onPlayerWorking(ExtDataSource dataSource, int playerType) {
+        String link = dataSource.getUri();
+        if (pendingFallback != null && pendingFallback.first.equals(link) && pendingFallback.second == playerType) {
+            StreamCodecs.setWorkingPlayer(link, playerType);
+            pendingFallback = null;
+        }
+    }
+
+    // 低延迟设置按播放列表保存，不同列表里的同名频道互不影响
+    private String getLowLatencyAllKey() {
+        return LowLatencyAllKey + "@" + getSettingUrl();
+    }
+
+    private String getLowLatencyChannelsKey() {
+        return LowLatencyChannelsKey + "@" + getSettingUrl();
+    }
+
+    public boolean isLowLatencyForAll() {
+        return PreferenceStore.getBoolean(getLowLatencyAllKey(), false);
+    }
+
+    public boolean isLowLatency(ChannelInfo info) {
+        return isLowLatencyForAll() || getLowLatencyChannels().contains(info.channelName);
+    }
+
+    private Set<String> getLowLatencyChannels() {
+        String channels = PreferenceStore.getString(getLowLatencyChannelsKey(), "");
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : channels.split("\n")) {
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    // 低延迟可以对整个播放列表或单个频道开启，修改后当前频道重新起播
+    public void setLowLatency(boolean forAll, boolean forCurrentChannel) {
+        PreferenceStore.setBoolean(getLowLatencyAllKey(), forAll);
+        Channel channel = currentChannel.getValue();
+        if (channel == null) {
+            return;
+        }
+        Set<String> names = getLowLatencyChannels();
+        if (forCurrentChannel) {
+            names.add(channel.channelInfo.channelName);
+        } else {
+            names.remove(channel.channelInfo.channelName);
+        }
+        PreferenceStore.setString(getLowLatencyChannelsKey(), TextUtils.join("\n", names));
+        restartCurrentChannel();
+    }
+
+    public int getBufferProfile() {
+        return PreferenceStore.getInt(BufferProfileKey, BufferProfile.PROFILE_AUTO);
+    }
+
+    public void setBufferProfile(int profile) {
+        PreferenceStore.setInt(BufferProfileKey, profile);
+        restartCurrentChannel();
+    }
+
+    // 时移缓冲大小，单位MB，0为关闭
+    public int getTimeshiftSize() {
+        return PreferenceStore.getInt(TimeshiftSizeKey, 0);
+    }
+
+    public void setTimeshiftSize(int sizeMb) {
+        PreferenceStore.setInt(TimeshiftSizeKey, sizeMb);
+        restartCurrentChannel();
+    }
+
+    // hls 分片预取个数，0为不经过本地中继
+    public int getHlsPrefetch() {
+        return PreferenceStore.getInt(HlsPrefetchKey, 0);
+    }
+
+    public void setHlsPrefetch(int count) {
+        PreferenceStore.setInt(HlsPrefetchKey, count);
+        restartCurrentChannel();
+    }
+
+    // 线路的播放参数随频道和设置而定
+    public ExtDataSource newDataSource(String link, ChannelInfo info) {
+        ExtDataSource dataSource = new ExtDataSource(link);
+        dataSource.setLowLatency(isLowLatency(info));
+        dataSource.setBufferProfile(getBufferProfile());
+        // probed before, exo need not sniff it again
+        MediaInfo probed = StreamProber.get(link);
+        if (probed != null) {
+            dataSource.setContentType(probed.container == MediaInfo.CONTAINER_HLS ? ExtDataSource.CONTENT_TYPE_HLS : ExtDataSource.CONTENT_TYPE_TS);
+        }
+        return dataSource;
+    }
+
+    private String getCatchupModeKey() {
+        return CatchupModeKey + "@" + getSettingUrl();
+    }
+
+    // 回看方式按播放列表保存
+    public int getCatchupMode() {
+        return PreferenceStore.getInt(getCatchupModeKey(), CatchupUrl.MODE_AUTO);
+    }
+
+    public void setCatchupMode(@CatchupUrl.Mode int mode) {
+        PreferenceStore.setInt(getCatchupModeKey(), mode);
+        if (catchupProgram != null) {
+            restartCurrentChannel();
+        }
+    }
+
+    public boolean hasPlaylistCatchupTemplate() {
+        return playlistCatchupTemplate != null;
+    }
+
+    public boolean isCatchup() {
+        return catchupProgram != null;
+    }
+
+    @Nullable
+    private String getCatchupUrl(String link, EpgProgram program, long offsetMs) {
+        String template = CatchupUrl.resolve(getCatchupMode(), playlistCatchupTemplate);
+        if (template == null) {
+            return null;
+        }
+        long start = program.start + Math.max(0, Math.min(offsetMs, program.end - program.start));
+        return CatchupUrl.build(template, link, start, program.end, System.currentTimeMillis());
+    }
+
+    // the live link in use goes first, the others stay as fallbacks
+    @Nullable
+    private List<String> getLiveLinks() {
+        Channel channel = currentChannel.getValue();
+        if (channel == null) {
+            return null;
+        }
+        List<String> links = new ArrayList<>();
+        String first = catchupLink;
+        if (first == null && sourceManager != null && sourceManager.getDataSourceCount() > 0) {
+            first = sourceManager.getCurrentDataSource().second.dataSource.getUri();
+        }
+        if (first != null) {
+            links.add(first);
+        }
+        for (String link : channel.channels.get(channel.channelPos).getSources()) {
+            if (link != null && !link.isEmpty() && !links.contains(link)) {
+                links.add(link);
+            }
+        }
+        return links;
+    }
+
+    // 从节目开始后 offsetMs 处回看，节目还没开始或者回看关闭时返回 false
+    public boolean playCatchup(EpgProgram program, long offsetMs) {
+        Channel channel = currentChannel.getValue();
+        List<String> links = getLiveLinks();
+        if (channel == null || links == null || links.isEmpty() || program.start >= System.currentTimeMillis()) {
+            return false;
+        }
+        List<DataSource> sources = new ArrayList<>();
+        for (String link : links) {
+            String url = getCatchupUrl(link, program, offsetMs);
+            if (url == null) {
+                return false;
+            }
+            sources.add(new DataSource(newDataSource(url, channel.channelInfo), channel.channelInfo));
+        }
+        cancelLinkRace();
+        catchupPrefetcher.cancel();
+        catchupLink = links.get(0);
+        catchupProgram = program;
+        catchupOffsetMs = Math.max(0, Math.min(offsetMs, program.end - program.start));
+        catchupStartedAt = SystemClock.elapsedRealtime();
+        sourceManager = new DataSourceManager(sources);
+        setLiveSource(sourceManager.getCurrentDataSource());
+        return true;
+    }
+
+    // 回看中快进快退，追到直播附近或者越过节目结尾就回到直播；不在回看时返回 false
+    public boolean seekCatchup(long deltaMs) {
+        EpgProgram program = catchupProgram;
+        if (program == null) {
+            return false;
+        }
+        long position = catchupOffsetMs + SystemClock.elapsedRealtime() - catchupStartedAt + deltaMs;
+        long now = System.currentTimeMillis();
+        if (program.start + position >= now - CATCHUP_LIVE_MARGIN_MS || position >= program.end - program.start) {
+            restartCurrentChannel();
+            return true;
+        }
+        return playCatchup(program, Math.max(0, position));
+    }
+
+    // the other links of the playing channel, the next ranking of them knows their resolution
+    public void probeOtherLinks() {
+        if (sourceManager == null || isCatchup()) {
+            return;
+        }
+        String playing = sourceManager.getCurrentDataSource().second.dataSource.getUri();
+        int probed = 0;
+        for (ExtDataSource dataSource : sourceManager.getExtDataSources()) {
+            if (probed >= MaxProbedLinks) {
+                break;
+            }
+            if (dataSource.getUri().equals(playing) || StreamProber.get(dataSource.getUri()) != null) {
+                continue;
+            }
+            StreamProber.probe(dataSource, null);
+            probed += 1;
+        }
+    }
+
+    // 焦点停在已结束的节目上时预先请求回看地址
+    public void prefetchCatchup(EpgProgram program) {
+        Channel channel = currentChannel.getValue();
+        List<String> links = getLiveLinks();
+        if (program.end > System.currentTimeMillis() || channel == null || links == null || links.isEmpty()) {
+            catchupPrefetcher.cancel();
+            return;
+        }
+        String url = getCatchupUrl(links.get(0), program, 0);
+        if (url == null) {
+            catchupPrefetcher.cancel();
+            return;
+        }
+        catchupPrefetcher.prefetch(newDataSource(url, channel.channelInfo));
+    }
+
+    public int getRecordBudget() {
+        int budget = PreferenceStore.getInt(RecordBudgetKey, Recording.DEFAULT_BUDGET);
+        return budget >= 0 && budget < Recording.Budgets.length ? budget : Recording.DEFAULT_BUDGET;
+    }
+
+    public void setRecordBudget(int budget) {
+        PreferenceStore.setInt(RecordBudgetKey, budget);
+    }
+
+    // 录制当前频道：program 为空时从现在录到当前节目结束，已经安排的录制再次调用则取消；
+    // 返回 true 表示开始或安排了录制
+    public boolean toggleRecording(Context context, @Nullable EpgProgram program) {
+        Channel channel = currentChannel.getValue();
+        List<String> links = getLiveLinks();
+        if (channel == null || links == null || links.isEmpty()) {
+            return false;
+        }
+        String link = null;
+        for (String candidate : links) {
+            if (RecordingService.isSupported(candidate)) {
+                link = candidate;
+                break;
+            }
+        }
+        if (link == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        Recording existing = RecordingService.find(link, program != null ? program.start : now);
+        if (existing != null) {
+            RecordingService.cancel(context, existing.id);
+            return false;
+        }
+        long start = now;
+        long end = now + RECORD_ON_DEMAND_MS;
+        String name = channel.channelInfo.channelName;
+        if (program != null) {
+            start = program.start;
+            end = program.end;
+            name = name + "-" + program.program;
+        } else {
+            Pair<Integer, Pair<ChannelInfo, EpgProgram>> current = currentEpgProgram.getValue();
+            if (current != null && current.second.second.end > now) {
+                end = current.second.second.end;
+            }
+        }
+        if (end <= now) {
+            return false;
+        }
+        RecordingService.record(context.getApplicationContext(), name, newDataSource(link, channel.channelInfo), start, end, getRecordBudget());
+        return true;
+    }
+
+    public void backToLive() {
+        if (catchupProgram != null) {
+            restartCurrentChannel();
+        }
+    }
+
+    private void restartCurrentChannel() {
+        Channel channel = currentChannel.getValue();
+        if (channel == null) {
+            return;
+        }
+        selectChannel(channel.channelPos, channel.channels.get(channel.channelPos), Pair.create(channel.groupPos, channel.channels));
+    }
+
     public int getSurfaceType() {
         Integer v = surfaceType.getValue();
         assert v != null;
@@ -267,11 +810,78 @@ public class LivePlayerViewModel extends ViewModel {
         return v;
     }
 
+    // 按线路(没有时按host)历史起播耗时估算超时，样本不足时用全局设置
+    public int getSourceTimeout(@Nullable ExtDataSource dataSource) {
+        int fallback = getSourceTimeout();
+        if (dataSource == null) {
+            return fallback;
+        }
+        long p90 = LinkHealthStore.getLatencyPercentile(dataSource.getUri(), ADAPTIVE_TIMEOUT_PERCENTILE, ADAPTIVE_TIMEOUT_MIN_SAMPLES);
+        if (p90 < 0) {
+            return fallback;
+        }
+        int timeout = (int) Math.max(MIN_SOURCE_TIMEOUT, Math.min(p90 * 2, MAX_SOURCE_TIMEOUT));
+        Log.i(TAG, String.format(Locale.ENGLISH, "adaptive source timeout %dms, p90 startup %dms", timeout, p90));
+        return timeout;
+    }
+
     public void setSourceTimeout(int timeout) {
         PreferenceStore.setInt(SourceTimeoutKey, timeout);
         sourceTimeout.setValue(timeout);
     }
 
+    public int getPreloadCount() {
+        Integer v = preloadCount.getValue();
+        assert v != null;
+        return v;
+    }
+
+    public void setPreloadCount(int count) {
+        PreferenceStore.setInt(PreloadCountKey, count);
+        preloadCount.setValue(count);
+    }
+
+    public void observePreloadCount(LifecycleOwner owner, Observer<Integer> observer) {
+        preloadCount.observe(owner, observer);
+    }
+
+    public boolean getShowZapStats() {
+        Boolean v = showZapStats.getValue();
+        assert v != null;
+        return v;
+    }
+
+    public void setShowZapStats(boolean show) {
+        PreferenceStore.setBoolean(ShowZapStatsKey, show);
+        showZapStats.setValue(show);
+    }
+
+    public void observeShowZapStats(LifecycleOwner owner, Observer<Boolean> observer) {
+        showZapStats.observe(owner, observer);
+    }
+
+    public void requestMultiView(int tiles) {
+        multiViewRequest.setValue(tiles);
+    }
+
+    public void observeMultiViewRequest(LifecycleOwner owner, Observer<Integer> observer) {
+        multiViewRequest.observe(owner, tiles -> {
+            if (tiles != null) {
+                multiViewRequest.setValue(null);
+                observer.onChanged(tiles);
+            }
+        });
+    }
+
+    // 多画面里选中的频道，和当前频道同一个分组
+    public void selectChannelInCurrentGroup(int position) {
+        Channel channel = currentChannel.getValue();
+        if (channel == null || position < 0 || position >= channel.channels.size()) {
+            return;
+        }
+        selectChannel(position, channel.channels.get(position), Pair.create(channel.groupPos, channel.channels));
+    }
+
     public Pair<Integer, DataSource> getCurrentSource() {
         return liveSource.getValue();
     }
@@ -316,6 +926,8 @@ public class LivePlayerViewModel extends ViewModel {
         }
 
         Log.i(TAG, String.format(Locale.getDefault(), "has groups: %d", source.groups.size()));
+        playlistCatchupTemplate = source.catchupTemplate;
+        startLinkCheck(source);
         ChannelItem channel = source.getChannel(selectedGroup, selectedChannel);
         if (channel != null) {
             if (selectedChannelName.equals(channel.info.channelName)) {
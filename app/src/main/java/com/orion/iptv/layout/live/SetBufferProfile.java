@@ -0,0 +1,64 @@
+package com.orion.iptv.layout.live;
+
+import android.content.Context;
+
+import com.orion.iptv.R;
+import com.orion.player.exo.BufferProfile;
+
+import java.util.List;
+
+public class SetBufferProfile implements SettingMenu {
+    private final Context context;
+    private final LivePlayerViewModel viewModel;
+
+    public SetBufferProfile(Context context, LivePlayerViewModel viewModel) {
+        this.context = context;
+        this.viewModel = viewModel;
+    }
+
+    @Override
+    public String content() {
+        return context.getString(R.string.set_buffer_profile);
+    }
+
+    @Override
+    public List<SettingValue> getValues() {
+        // in the order of BufferProfile constants
+        return List.of(
+                new ProfileValue(context.getString(R.string.buffer_profile_auto), BufferProfile.PROFILE_AUTO),
+                new ProfileValue(context.getString(R.string.buffer_profile_fast_start), BufferProfile.PROFILE_FAST_START),
+                new ProfileValue(context.getString(R.string.buffer_profile_balanced), BufferProfile.PROFILE_BALANCED),
+                new ProfileValue(context.getString(R.string.buffer_profile_resilient), BufferProfile.PROFILE_RESILIENT)
+        );
+    }
+
+    @Override
+    public int getSelectedPosition() {
+        return viewModel.getBufferProfile();
+    }
+
+    private class ProfileValue implements SettingValue {
+        private final String content;
+        private final int profile;
+
+        public ProfileValue(String content, int profile) {
+            this.content = content;
+            this.profile = profile;
+        }
+
+        @Override
+        public void onSelected() {
+            viewModel.setBufferProfile(profile);
+        }
+
+        @Override
+        public boolean isButton() {
+            return false;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+}
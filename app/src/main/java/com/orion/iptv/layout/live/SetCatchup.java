@@ -0,0 +1,76 @@
+package com.orion.iptv.layout.live;
+
+import android.content.Context;
+
+import com.orion.iptv.R;
+import com.orion.iptv.epg.CatchupUrl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SetCatchup implements SettingMenu {
+    private static final int[] modes = {CatchupUrl.MODE_AUTO, CatchupUrl.MODE_PLAYSEEK, CatchupUrl.MODE_UTC, CatchupUrl.MODE_OFF};
+    private final Context context;
+    private final LivePlayerViewModel viewModel;
+
+    public SetCatchup(Context context, LivePlayerViewModel viewModel) {
+        this.context = context;
+        this.viewModel = viewModel;
+    }
+
+    @Override
+    public String content() {
+        return context.getString(R.string.set_catchup);
+    }
+
+    @Override
+    public List<SettingValue> getValues() {
+        String[] names = {
+                context.getString(viewModel.hasPlaylistCatchupTemplate() ? R.string.catchup_playlist : R.string.catchup_auto),
+                "playseek",
+                "utc",
+                context.getString(R.string.catchup_off),
+        };
+        List<SettingValue> values = new ArrayList<>();
+        for (int i = 0; i < modes.length; i++) {
+            values.add(new ModeValue(names[i], modes[i]));
+        }
+        return values;
+    }
+
+    @Override
+    public int getSelectedPosition() {
+        int mode = viewModel.getCatchupMode();
+        for (int i = 0; i < modes.length; i++) {
+            if (modes[i] == mode) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private class ModeValue implements SettingValue {
+        private final String content;
+        private final int mode;
+
+        public ModeValue(String content, int mode) {
+            this.content = content;
+            this.mode = mode;
+        }
+
+        @Override
+        public void onSelected() {
+            viewModel.setCatchupMode(mode);
+        }
+
+        @Override
+        public boolean isButton() {
+            return false;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+}
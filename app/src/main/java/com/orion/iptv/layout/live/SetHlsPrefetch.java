@@ -0,0 +1,72 @@
+package com.orion.iptv.layout.live;
+
+import android.content.Context;
+
+import com.orion.iptv.R;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class SetHlsPrefetch implements SettingMenu {
+    // segments fetched ahead, 0 plays hls directly
+    private static final int[] counts = {0, 2, 4, 6};
+    private final Context context;
+    private final LivePlayerViewModel viewModel;
+
+    public SetHlsPrefetch(Context context, LivePlayerViewModel viewModel) {
+        this.context = context;
+        this.viewModel = viewModel;
+    }
+
+    @Override
+    public String content() {
+        return context.getString(R.string.set_hls_prefetch);
+    }
+
+    @Override
+    public List<SettingValue> getValues() {
+        List<SettingValue> values = new ArrayList<>();
+        for (int count : counts) {
+            String content = count == 0 ? context.getString(R.string.hls_prefetch_off) : String.format(Locale.ENGLISH, "%d", count);
+            values.add(new CountValue(content, count));
+        }
+        return values;
+    }
+
+    @Override
+    public int getSelectedPosition() {
+        int count = viewModel.getHlsPrefetch();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == count) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private class CountValue implements SettingValue {
+        private final String content;
+        private final int count;
+
+        public CountValue(String content, int count) {
+            this.content = content;
+            this.count = count;
+        }
+
+        @Override
+        public void onSelected() {
+            viewModel.setHlsPrefetch(count);
+        }
+
+        @Override
+        public boolean isButton() {
+            return false;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.orion.iptv.layout.live;
+
+import android.content.Context;
+
+import com.orion.iptv.R;
+
+import java.util.List;
+
+public class SetLowLatency implements SettingMenu {
+    private final Context context;
+    private final LivePlayerViewModel viewModel;
+
+    public SetLowLatency(Context context, LivePlayerViewModel viewModel) {
+        this.context = context;
+        this.viewModel = viewModel;
+    }
+
+    @Override
+    public String content() {
+        return context.getString(R.string.set_low_latency);
+    }
+
+    @Override
+    public List<SettingValue> getValues() {
+        return List.of(
+                new LowLatencyValue(context.getString(R.string.low_latency_off), false, false),
+                new LowLatencyValue(context.getString(R.string.low_latency_channel), false, true),
+                new LowLatencyValue(context.getString(R.string.low_latency_all), true, false)
+        );
+    }
+
+    @Override
+    public int getSelectedPosition() {
+        if (viewModel.isLowLatencyForAll()) {
+            return 2;
+        }
+        LivePlayerViewModel.Channel channel = viewModel.getCurrentChannel();
+        return channel != null && viewModel.isLowLatency(channel.channelInfo) ? 1 : 0;
+    }
+
+    private class LowLatencyValue implements SettingValue {
+        private final String content;
+        private final boolean forAll;
+        private final boolean forCurrentChannel;
+
+        public LowLatencyValue(String content, boolean forAll, boolean forCurrentChannel) {
+            this.content = content;
+            this.forAll = forAll;
+            this.forCurrentChannel = forCurrentChannel;
+        }
+
+        @Override
+        public void onSelected() {
+            viewModel.setLowLatency(forAll, forCurrentChannel);
+        }
+
+        @Override
+        public boolean isButton() {
+            return false;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.orion.iptv.layout.live;
+
+import android.content.Context;
+
+import com.orion.iptv.R;
+import com.orion.player.DecoderBudget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SetMultiView implements SettingMenu {
+    private final Context context;
+    private final LivePlayerViewModel viewModel;
+
+    public SetMultiView(Context context, LivePlayerViewModel viewModel) {
+        this.context = context;
+        this.viewModel = viewModel;
+    }
+
+    @Override
+    public String content() {
+        return context.getString(R.string.set_multiview);
+    }
+
+    // only what the decoders can sustain is offered
+    @Override
+    public List<SettingValue> getValues() {
+        List<SettingValue> values = new ArrayList<>();
+        int maxTiles = DecoderBudget.getMaxTiles(context);
+        for (int tiles = 2; tiles <= maxTiles; tiles++) {
+            values.add(new TilesValue(context.getString(R.string.multiview_tiles, tiles), tiles));
+        }
+        if (values.isEmpty()) {
+            values.add(new TilesValue(context.getString(R.string.multiview_unsupported), 0));
+        }
+        return values;
+    }
+
+    @Override
+    public int getSelectedPosition() {
+        return -1;
+    }
+
+    private class TilesValue implements SettingValue {
+        private final String content;
+        private final int tiles;
+
+        public TilesValue(String content, int tiles) {
+            this.content = content;
+            this.tiles = tiles;
+        }
+
+        @Override
+        public void onSelected() {
+            if (tiles > 1) {
+                viewModel.requestMultiView(tiles);
+            }
+        }
+
+        @Override
+        public boolean isButton() {
+            return true;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.orion.iptv.layout.live;
+
+import android.content.Context;
+
+import com.orion.iptv.R;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SetPreloadCount implements SettingMenu {
+    private final LivePlayerViewModel viewModel;
+    private final String content;
+    private final String[] countEntries;
+    private final int[] countValues;
+
+    public SetPreloadCount(Context context, LivePlayerViewModel viewModel) {
+        this.viewModel = viewModel;
+        this.countEntries = context.getResources().getStringArray(R.array.preload_count_entries);
+        this.countValues = context.getResources().getIntArray(R.array.preload_count_values);
+        this.content = context.getString(R.string.set_preload_count);
+    }
+
+    @Override
+    public List<SettingValue> getValues() {
+        List<SettingValue> values = new ArrayList<>();
+        for (int i=0; i<countEntries.length; i++) {
+            values.add(new CountValue(countEntries[i], countValues[i]));
+        }
+        return values;
+    }
+
+    @Override
+    public int getSelectedPosition() {
+        int v = viewModel.getPreloadCount();
+        for (int i=0; i<countValues.length; i++) {
+            if (countValues[i] == v) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String content() {
+        return content;
+    }
+
+    private class CountValue implements SettingValue {
+        private final String content;
+        private final int value;
+
+        public CountValue(String content, int value) {
+            this.content = content;
+            this.value = value;
+        }
+
+        @Override
+        public void onSelected() {
+            viewModel.setPreloadCount(value);
+        }
+
+        @Override
+        public boolean isButton() {
+            return false;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+}
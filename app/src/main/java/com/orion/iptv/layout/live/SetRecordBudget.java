@@ -0,0 +1,67 @@
+package com.orion.iptv.layout.live;
+
+import android.content.Context;
+
+import com.orion.iptv.R;
+import com.orion.iptv.record.Recording;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SetRecordBudget implements SettingMenu {
+    private final Context context;
+    private final LivePlayerViewModel viewModel;
+
+    public SetRecordBudget(Context context, LivePlayerViewModel viewModel) {
+        this.context = context;
+        this.viewModel = viewModel;
+    }
+
+    @Override
+    public String content() {
+        return context.getString(R.string.set_record_budget);
+    }
+
+    @Override
+    public List<SettingValue> getValues() {
+        List<SettingValue> values = new ArrayList<>();
+        for (int i = 0; i < Recording.Budgets.length; i++) {
+            int[] budget = Recording.Budgets[i];
+            String content = budget[1] > 0
+                    ? context.getString(R.string.record_budget, budget[0] / 1024, budget[1])
+                    : context.getString(R.string.record_budget_unlimited, budget[0] / 1024);
+            values.add(new BudgetValue(content, i));
+        }
+        return values;
+    }
+
+    @Override
+    public int getSelectedPosition() {
+        return viewModel.getRecordBudget();
+    }
+
+    private class BudgetValue implements SettingValue {
+        private final String content;
+        private final int budget;
+
+        public BudgetValue(String content, int budget) {
+            this.content = content;
+            this.budget = budget;
+        }
+
+        @Override
+        public void onSelected() {
+            viewModel.setRecordBudget(budget);
+        }
+
+        @Override
+        public boolean isButton() {
+            return false;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+}
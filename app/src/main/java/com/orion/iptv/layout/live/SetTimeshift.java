@@ -0,0 +1,72 @@
+package com.orion.iptv.layout.live;
+
+import android.content.Context;
+
+import com.orion.iptv.R;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class SetTimeshift implements SettingMenu {
+    // buffer size in MB, 0 disables timeshift
+    private static final int[] sizes = {0, 128, 256, 512};
+    private final Context context;
+    private final LivePlayerViewModel viewModel;
+
+    public SetTimeshift(Context context, LivePlayerViewModel viewModel) {
+        this.context = context;
+        this.viewModel = viewModel;
+    }
+
+    @Override
+    public String content() {
+        return context.getString(R.string.set_timeshift);
+    }
+
+    @Override
+    public List<SettingValue> getValues() {
+        List<SettingValue> values = new ArrayList<>();
+        for (int size : sizes) {
+            String content = size == 0 ? context.getString(R.string.timeshift_off) : String.format(Locale.ENGLISH, "%dMB", size);
+            values.add(new SizeValue(content, size));
+        }
+        return values;
+    }
+
+    @Override
+    public int getSelectedPosition() {
+        int size = viewModel.getTimeshiftSize();
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] == size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private class SizeValue implements SettingValue {
+        private final String content;
+        private final int size;
+
+        public SizeValue(String content, int size) {
+            this.content = content;
+            this.size = size;
+        }
+
+        @Override
+        public void onSelected() {
+            viewModel.setTimeshiftSize(size);
+        }
+
+        @Override
+        public boolean isButton() {
+            return false;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+}
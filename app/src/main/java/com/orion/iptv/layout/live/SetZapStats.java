@@ -0,0 +1,94 @@
+package com.orion.iptv.layout.live;
+
+import android.content.Context;
+import android.widget.Toast;
+
+import com.orion.iptv.R;
+import com.orion.iptv.misc.ZapTracker;
+
+import java.io.File;
+import java.util.List;
+
+public class SetZapStats implements SettingMenu {
+    private final Context context;
+    private final LivePlayerViewModel viewModel;
+
+    public SetZapStats(Context context, LivePlayerViewModel viewModel) {
+        this.context = context;
+        this.viewModel = viewModel;
+    }
+
+    @Override
+    public String content() {
+        return context.getString(R.string.set_zap_stats);
+    }
+
+    @Override
+    public List<SettingValue> getValues() {
+        return List.of(
+                new ShowValue(context.getString(R.string.zap_stats_hide), false),
+                new ShowValue(context.getString(R.string.zap_stats_show), true),
+                new ExportValue(context.getString(R.string.zap_stats_export))
+        );
+    }
+
+    @Override
+    public int getSelectedPosition() {
+        return viewModel.getShowZapStats() ? 1 : 0;
+    }
+
+    private class ShowValue implements SettingValue {
+        private final String content;
+        private final boolean show;
+
+        public ShowValue(String content, boolean show) {
+            this.content = content;
+            this.show = show;
+        }
+
+        @Override
+        public void onSelected() {
+            viewModel.setShowZapStats(show);
+        }
+
+        @Override
+        public boolean isButton() {
+            return false;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+
+    private class ExportValue implements SettingValue {
+        private final String content;
+
+        public ExportValue(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public void onSelected() {
+            File base = context.getExternalFilesDir(null);
+            File dir = new File(base != null ? base : context.getFilesDir(), "zap_stats");
+            ZapTracker.export(dir, exported -> {
+                String message = exported != null
+                        ? context.getString(R.string.zap_stats_exported, exported.getAbsolutePath())
+                        : context.getString(R.string.zap_stats_export_failed);
+                Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+            });
+        }
+
+        @Override
+        public boolean isButton() {
+            return true;
+        }
+
+        @Override
+        public String content() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.orion.iptv.misc;
+
+import java.util.Arrays;
+
+// 类似 HdrHistogram 的对数-线性分桶，每个2的幂区间再分16个子桶，相对误差约6%，
+// 固定内存，记录和查询都不分配对象
+public class LatencyHistogram {
+    private static final int SubBucketBits = 4;
+    private static final int SubBucketCount = 1 << SubBucketBits;
+    // values above 2^20 ms (about 17 minutes) go to the last bucket
+    private static final int MaxMagnitude = 20;
+    private static final int BucketCount = SubBucketCount + (MaxMagnitude - SubBucketBits + 1) * SubBucketCount;
+
+    private final long[] counts = new long[BucketCount];
+    private long totalCount = 0;
+    private long maxValue = 0;
+
+    public void record(long valueMs) {
+        long value = Math.max(valueMs, 0);
+        counts[indexOf(value)] += 1;
+        totalCount += 1;
+        maxValue = Math.max(maxValue, value);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    // upper bound of the bucket holding the given percentile (0-100), 0 if empty
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        maxValue = 0;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SubBucketCount) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MaxMagnitude) {
+            return BucketCount - 1;
+        }
+        int shift = magnitude - SubBucketBits;
+        int sub = (int) (value >> shift) - SubBucketCount;
+        return SubBucketCount + (magnitude - SubBucketBits) * SubBucketCount + sub;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SubBucketCount) {
+            return index;
+        }
+        int shift = (index - SubBucketCount) / SubBucketCount;
+        int sub = (index - SubBucketCount) % SubBucketCount;
+        return ((long) (SubBucketCount + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,70 @@
+package com.orion.iptv.misc;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Locale;
+
+// 按起播方式统计起播耗时，用来对比新建/复用/预热播放器
+public class StartupStats {
+    private static final String TAG = "StartupStats";
+
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({STARTUP_NEW, STARTUP_REUSED, STARTUP_WARM})
+    public @interface Mode {}
+    public static final int STARTUP_NEW = 0;
+    public static final int STARTUP_REUSED = 1;
+    public static final int STARTUP_WARM = 2;
+    private static final String[] modeNames = {"new", "reused", "warm"};
+
+    private final long[] totalMs = new long[modeNames.length];
+    private final int[] counts = new int[modeNames.length];
+    private long beginAt = 0;
+    private @Mode int mode = STARTUP_NEW;
+
+    public void begin(@Mode int mode) {
+        this.mode = mode;
+        this.beginAt = SystemClock.elapsedRealtime();
+    }
+
+    // mode of the pending or last startup
+    public @Mode int getMode() {
+        return mode;
+    }
+
+    public void cancel() {
+        beginAt = 0;
+    }
+
+    // returns startup cost in ms, or -1 if there is no pending startup
+    public long end() {
+        if (beginAt <= 0) {
+            return -1;
+        }
+        long cost = SystemClock.elapsedRealtime() - beginAt;
+        beginAt = 0;
+        totalMs[mode] += cost;
+        counts[mode] += 1;
+        Log.i(TAG, String.format(Locale.ENGLISH, "startup cost %dms, player %s, avg new: %dms, reused: %dms, warm: %dms",
+                cost, modeNames[mode], average(STARTUP_NEW), average(STARTUP_REUSED), average(STARTUP_WARM)));
+        return cost;
+    }
+
+    public long average(@Mode int mode) {
+        return counts[mode] > 0 ? totalMs[mode] / counts[mode] : 0;
+    }
+}
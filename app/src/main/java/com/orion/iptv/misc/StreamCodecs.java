@@ -0,0 +1,193 @@
+package com.orion.iptv.misc;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.orion.player.CodecSupport;
+import com.orion.player.ExtTrack;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// 记住每个链接的编码格式，下次播放前按设备解码能力选播放器：
+// exo 能硬解就用 exo，否则 avc/hevc 用 ijk 硬解，剩下的交给 ijk 软解；
+// 解码出错后换播放器成功播放的链接，记住那个播放器；只在主线程调用
+public class StreamCodecs {
+    private static final String TAG = "StreamCodecs";
+    private static final String StoreKey = "stream_codecs";
+    private static final int MaxLinks = 300;
+    // same as player_type_int_values
+    public static final int PLAYER_HW_IJK = 0;
+    public static final int PLAYER_SW_IJK = 1;
+    public static final int PLAYER_EXO = 2;
+    public static final int PLAYER_UNKNOWN = -1;
+    // decoder fallback order
+    private static final int[] FallbackChain = {PLAYER_HW_IJK, PLAYER_EXO, PLAYER_SW_IJK};
+
+    private static class Codecs {
+        @Nullable
+        final String video;
+        @Nullable
+        final String audio;
+        final boolean tenBit;
+        // player that played the link after a decoder fallback
+        final int player;
+
+        Codecs(@Nullable String video, @Nullable String audio, boolean tenBit, int player) {
+            this.video = video;
+            this.audio = audio;
+            this.tenBit = tenBit;
+            this.player = player;
+        }
+
+        boolean sameAs(Codecs other) {
+            return equal(video, other.video) && equal(audio, other.audio) && tenBit == other.tenBit && player == other.player;
+        }
+
+        private static boolean equal(@Nullable String a, @Nullable String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    // access ordered, the least recently played link goes first
+    private static final Map<String, Codecs> links = new LinkedHashMap<String, Codecs>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Codecs> eldest) {
+            return size() > MaxLinks;
+        }
+    };
+    private static boolean loaded = false;
+
+    private StreamCodecs() {
+    }
+
+    private static void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        String stored = PreferenceStore.getString(StoreKey, "");
+        for (String line : stored.split("\n")) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 4) {
+                continue;
+            }
+            int player = PLAYER_UNKNOWN;
+            try {
+                player = fields.length > 4 ? Integer.parseInt(fields[4]) : PLAYER_UNKNOWN;
+            } catch (NumberFormatException ignored) {
+            }
+            links.put(fields[0], new Codecs(emptyToNull(fields[1]), emptyToNull(fields[2]), "1".equals(fields[3]), player));
+        }
+    }
+
+    private static void save() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Codecs> entry : links.entrySet()) {
+            Codecs codecs = entry.getValue();
+            builder.append(entry.getKey()).append('\t')
+                    .append(codecs.video != null ? codecs.video : "").append('\t')
+                    .append(codecs.audio != null ? codecs.audio : "").append('\t')
+                    .append(codecs.tenBit ? "1" : "0").append('\t')
+                    .append(codecs.player).append('\n');
+        }
+        PreferenceStore.setString(StoreKey, builder.toString());
+    }
+
+    @Nullable
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    // selected tracks reported by any of the players
+    public static void learn(String link, List<ExtTrack> tracks) {
+        String video = null;
+        String audio = null;
+        boolean tenBit = false;
+        for (ExtTrack track : tracks) {
+            if (!track.selected) {
+                continue;
+            }
+            String mime = CodecSupport.mimeOf(track.format);
+            if (mime == null) {
+                // not mapped, no decoder will be found for it
+                mime = String.valueOf(track.format.codecs);
+            }
+            if (track.trackType == C.TRACK_TYPE_VIDEO && video == null) {
+                video = mime;
+                tenBit = CodecSupport.isTenBit(track.format);
+            } else if (track.trackType == C.TRACK_TYPE_AUDIO && audio == null) {
+                audio = mime;
+            }
+        }
+        if (video == null && audio == null) {
+            return;
+        }
+        load();
+        Codecs old = links.get(link);
+        // ijk doesn't report the profile, keep what exo found
+        tenBit |= old != null && old.tenBit && Codecs.equal(old.video, video);
+        Codecs codecs = new Codecs(video, audio, tenBit, old != null ? old.player : PLAYER_UNKNOWN);
+        if (old != null && old.sameAs(codecs)) {
+            return;
+        }
+        links.put(link, codecs);
+        Log.i(TAG, String.format(Locale.ENGLISH, "%s: video %s, audio %s, 10 bit %b", link, video, audio, tenBit));
+        save();
+    }
+
+    public static int getWorkingPlayer(String link) {
+        load();
+        Codecs codecs = links.get(link);
+        return codecs != null ? codecs.player : PLAYER_UNKNOWN;
+    }
+
+    // PLAYER_UNKNOWN forgets it
+    public static void setWorkingPlayer(String link, int player) {
+        load();
+        Codecs old = links.get(link);
+        if (old == null ? player == PLAYER_UNKNOWN : old.player == player) {
+            return;
+        }
+        links.put(link, old != null ? new Codecs(old.video, old.audio, old.tenBit, player) : new Codecs(null, null, false, player));
+        Log.i(TAG, String.format(Locale.ENGLISH, "%s: working player %d", link, player));
+        save();
+    }
+
+    // the player to try after a decoder error, PLAYER_UNKNOWN when all of them failed
+    public static int nextFallbackPlayer(int player) {
+        for (int i = 0; i < FallbackChain.length - 1; i++) {
+            if (FallbackChain[i] == player) {
+                return FallbackChain[i + 1];
+            }
+        }
+        return PLAYER_UNKNOWN;
+    }
+
+    public static int choosePlayerType(String link) {
+        load();
+        Codecs codecs = links.get(link);
+        if (codecs != null && codecs.player != PLAYER_UNKNOWN) {
+            return codecs.player;
+        }
+        if (codecs == null || (codecs.video == null && codecs.audio == null)) {
+            // nothing known yet, exo probes the stream and reports the tracks
+            return PLAYER_EXO;
+        }
+        boolean videoHardware = codecs.video == null || CodecSupport.hasHardwareDecoder(codecs.video, codecs.tenBit);
+        boolean audioDecodable = codecs.audio == null || CodecSupport.hasExoDecoder(codecs.audio);
+        if (videoHardware && audioDecodable) {
+            return PLAYER_EXO;
+        }
+        // ijk decodes every audio format itself, hardware video only through MediaCodec for avc and hevc
+        if (videoHardware && (MimeTypes.VIDEO_H264.equals(codecs.video) || MimeTypes.VIDEO_H265.equals(codecs.video))) {
+            return PLAYER_HW_IJK;
+        }
+        return PLAYER_SW_IJK;
+    }
+}
@@ -0,0 +1,319 @@
+package com.orion.iptv.misc;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 记录从按键到首帧的各阶段耗时，按播放器类型、host、surface类型分别汇总成直方图；
+// 只在主线程调用
+public class ZapTracker {
+    private static final String TAG = "ZapTracker";
+
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({STAGE_KEY, STAGE_SELECT_CHANNEL, STAGE_SWITCH_SOURCE, STAGE_PLAYER_CREATE,
+            STAGE_SET_DATA_SOURCE, STAGE_PREPARE, STAGE_READY, STAGE_FIRST_FRAME})
+    public @interface Stage {}
+    public static final int STAGE_KEY = 0;
+    public static final int STAGE_SELECT_CHANNEL = 1;
+    public static final int STAGE_SWITCH_SOURCE = 2;
+    public static final int STAGE_PLAYER_CREATE = 3;
+    public static final int STAGE_SET_DATA_SOURCE = 4;
+    public static final int STAGE_PREPARE = 5;
+    public static final int STAGE_READY = 6;
+    public static final int STAGE_FIRST_FRAME = 7;
+    private static final String[] stageNames = {"key", "select", "switch", "create", "set_source", "prepare", "ready", "first_frame"};
+
+    public interface Listener {
+        void onZapFinished();
+    }
+
+    private static final String AllKey = "all";
+    // hosts are unbounded, keep the histograms of the first ones only
+    private static final int MaxDimensions = 64;
+    private static final int MaxRecentZaps = 500;
+
+    private static final Map<String, LatencyHistogram[]> histograms = new LinkedHashMap<>();
+    private static final ArrayDeque<Zap> recentZaps = new ArrayDeque<>();
+    private static Zap current;
+    private static Zap last;
+    @Nullable
+    private static Listener listener;
+    private static ExecutorService executor;
+
+    private ZapTracker() {
+    }
+
+    public static void setListener(@Nullable Listener listener) {
+        ZapTracker.listener = listener;
+    }
+
+    // 按键或手势触发换台
+    public static void begin() {
+        startZap();
+        current.mark(STAGE_KEY);
+    }
+
+    public static void mark(@Stage int stage) {
+        boolean restart = current == null || current.has(stage);
+        if (restart) {
+            // select or switch without a key press, e.g. picked from the channel list or source failover
+            if (stage != STAGE_SELECT_CHANNEL && stage != STAGE_SWITCH_SOURCE) {
+                return;
+            }
+            startZap();
+        }
+        current.mark(stage);
+        // exo renders the first frame before it reports ready, ijk the other way round
+        if (current.has(STAGE_READY) && current.has(STAGE_FIRST_FRAME)) {
+            finishZap();
+        }
+    }
+
+    public static void setDimensions(String playerType, @Nullable String host, int surfaceType) {
+        if (current == null) {
+            return;
+        }
+        current.playerType = playerType;
+        current.host = host;
+        current.surfaceType = surfaceType;
+    }
+
+    private static void startZap() {
+        // an abandoned zap still tells how far it got
+        if (current != null && (current.has(STAGE_READY) || current.has(STAGE_FIRST_FRAME))) {
+            record(current);
+        }
+        current = new Zap();
+    }
+
+    private static void finishZap() {
+        Zap zap = current;
+        current = null;
+        record(zap);
+        last = zap;
+        Log.i(TAG, zap.describe());
+        if (listener != null) {
+            listener.onZapFinished();
+        }
+    }
+
+    private static void record(Zap zap) {
+        List<String> keys = new ArrayList<>();
+        keys.add(AllKey);
+        if (zap.playerType != null) {
+            keys.add("player:" + zap.playerType);
+            keys.add("surface:" + zap.surfaceType);
+        }
+        if (zap.host != null) {
+            keys.add("host:" + zap.host);
+        }
+        for (String key : keys) {
+            LatencyHistogram[] stages = histograms.get(key);
+            if (stages == null) {
+                if (histograms.size() >= MaxDimensions) {
+                    continue;
+                }
+                stages = new LatencyHistogram[stageNames.length];
+                for (int i = 0; i < stages.length; i++) {
+                    stages[i] = new LatencyHistogram();
+                }
+                histograms.put(key, stages);
+            }
+            for (int stage = 0; stage < stageNames.length; stage++) {
+                if (zap.has(stage)) {
+                    stages[stage].record(zap.elapsed(stage));
+                }
+            }
+        }
+        recentZaps.addLast(zap);
+        while (recentZaps.size() > MaxRecentZaps) {
+            recentZaps.removeFirst();
+        }
+    }
+
+    // 调试浮层上显示的内容
+    public static String summary() {
+        StringBuilder builder = new StringBuilder();
+        if (last != null) {
+            builder.append(last.describe()).append('\n');
+        }
+        List<String> keys = new ArrayList<>();
+        keys.add(AllKey);
+        if (last != null && last.playerType != null) {
+            keys.add("player:" + last.playerType);
+            keys.add("surface:" + last.surfaceType);
+        }
+        if (last != null && last.host != null) {
+            keys.add("host:" + last.host);
+        }
+        for (String key : keys) {
+            LatencyHistogram[] stages = histograms.get(key);
+            if (stages == null) {
+                continue;
+            }
+            builder.append(key).append('\n');
+            for (int stage : new int[]{STAGE_READY, STAGE_FIRST_FRAME}) {
+                LatencyHistogram histogram = stages[stage];
+                if (histogram.getTotalCount() == 0) {
+                    continue;
+                }
+                builder.append(String.format(Locale.ENGLISH, "  %s p50 %d p90 %d p99 %d max %d n=%d\n",
+                        stageNames[stage], histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                        histogram.getValueAtPercentile(99), histogram.getMaxValue(), histogram.getTotalCount()));
+            }
+        }
+        return builder.toString().trim();
+    }
+
+    public interface ExportCallback {
+        // dir is null if export failed, called on main thread
+        void onExported(@Nullable File dir);
+    }
+
+    // 导出直方图和最近的换台明细为csv，文件写在后台线程
+    public static void export(File dir, ExportCallback callback) {
+        String histogramCsv = histogramCsv();
+        String zapCsv = zapCsv();
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        Handler handler = new Handler(Looper.getMainLooper());
+        executor.execute(() -> {
+            File result = dir;
+            try {
+                if (!dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("create " + dir + " failed");
+                }
+                write(new File(dir, "zap_histograms.csv"), histogramCsv);
+                write(new File(dir, "zap_log.csv"), zapCsv);
+                Log.i(TAG, "zap stats exported to " + dir);
+            } catch (IOException e) {
+                Log.w(TAG, "export zap stats failed: " + e);
+                result = null;
+            }
+            File exported = result;
+            handler.post(() -> callback.onExported(exported));
+        });
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(content);
+        }
+    }
+
+    private static String histogramCsv() {
+        StringBuilder builder = new StringBuilder("dimension,stage,count,p50,p90,p99,max\n");
+        for (Map.Entry<String, LatencyHistogram[]> entry : histograms.entrySet()) {
+            LatencyHistogram[] stages = entry.getValue();
+            for (int stage = 0; stage < stages.length; stage++) {
+                LatencyHistogram histogram = stages[stage];
+                if (histogram.getTotalCount() == 0) {
+                    continue;
+                }
+                builder.append(String.format(Locale.ENGLISH, "%s,%s,%d,%d,%d,%d,%d\n",
+                        entry.getKey(), stageNames[stage], histogram.getTotalCount(),
+                        histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                        histogram.getValueAtPercentile(99), histogram.getMaxValue()));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String zapCsv() {
+        StringBuilder builder = new StringBuilder("wall_clock_ms,player,host,surface");
+        for (String name : stageNames) {
+            builder.append(',').append(name);
+        }
+        builder.append('\n');
+        for (Zap zap : recentZaps) {
+            builder.append(zap.wallClockMs).append(',')
+                    .append(zap.playerType != null ? zap.playerType : "").append(',')
+                    .append(zap.host != null ? zap.host : "").append(',')
+                    .append(zap.surfaceType);
+            for (int stage = 0; stage < stageNames.length; stage++) {
+                builder.append(',').append(zap.has(stage) ? zap.elapsed(stage) : -1);
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static class Zap {
+        final long wallClockMs = System.currentTimeMillis();
+        // monotonic, 0 means the stage is not reached
+        final long[] stamps = new long[stageNames.length];
+        String playerType;
+        String host;
+        int surfaceType = -1;
+
+        void mark(@Stage int stage) {
+            if (stamps[stage] == 0) {
+                stamps[stage] = SystemClock.elapsedRealtimeNanos();
+            }
+        }
+
+        boolean has(int stage) {
+            return stamps[stage] != 0;
+        }
+
+        long start() {
+            long start = Long.MAX_VALUE;
+            for (long stamp : stamps) {
+                if (stamp != 0) {
+                    start = Math.min(start, stamp);
+                }
+            }
+            return start;
+        }
+
+        // ms since the zap began
+        long elapsed(int stage) {
+            return (stamps[stage] - start()) / 1000000;
+        }
+
+        String describe() {
+            StringBuilder builder = new StringBuilder(String.format(Locale.ENGLISH, "zap %s/%s/%d:",
+                    playerType, host, surfaceType));
+            for (int stage = 0; stage < stageNames.length; stage++) {
+                if (has(stage)) {
+                    builder.append(' ').append(stageNames[stage]).append('=').append(elapsed(stage));
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.orion.iptv.multicast;
+
+import java.nio.ByteBuffer;
+
+// RTP 按序号重排：乱序的包放进窗口等前面的包，窗口满了就跳过丢失的包；只在接收线程调用
+class JitterBuffer {
+    interface Output {
+        void onPacket(ByteBuffer packet);
+
+        void onDropped(ByteBuffer packet);
+    }
+
+    private static final int SeqMask = 0xffff;
+
+    private final ByteBuffer[] slots;
+    private final int mask;
+    private final Output output;
+    // sequence number expected next, -1 before the first packet
+    private int next = -1;
+
+    // window is a power of two
+    JitterBuffer(int window, Output output) {
+        this.slots = new ByteBuffer[window];
+        this.mask = window - 1;
+        this.output = output;
+    }
+
+    void push(int seq, ByteBuffer packet) {
+        if (next < 0) {
+            next = seq;
+        }
+        int distance = (seq - next) & SeqMask;
+        if (distance > SeqMask / 2) {
+            // late or duplicated
+            output.onDropped(packet);
+            return;
+        }
+        if (distance >= slots.length * 2) {
+            // sender restarted or a long gap, nothing held is worth waiting for
+            flush();
+            next = seq;
+            distance = 0;
+        }
+        while (distance >= slots.length) {
+            // give up on the oldest missing packet
+            emit(next & mask);
+            next = (next + 1) & SeqMask;
+            distance -= 1;
+        }
+        int slot = seq & mask;
+        if (slots[slot] != null) {
+            output.onDropped(packet);
+            return;
+        }
+        slots[slot] = packet;
+        while (slots[next & mask] != null) {
+            emit(next & mask);
+            next = (next + 1) & SeqMask;
+        }
+    }
+
+    private void emit(int slot) {
+        ByteBuffer packet = slots[slot];
+        if (packet != null) {
+            slots[slot] = null;
+            output.onPacket(packet);
+        }
+    }
+
+    // held packets in sequence order
+    void flush() {
+        for (int i = 0; i < slots.length; i++) {
+            emit((next + i) & mask);
+        }
+    }
+}
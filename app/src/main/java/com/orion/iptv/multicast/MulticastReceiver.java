@@ -0,0 +1,255 @@
+package com.orion.iptv.multicast;
+
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// 接收一路组播(或单播)UDP，去掉 RTP 头并按序号重排后交给读取方；
+// 包缓冲区启动时一次分配好，接收路径上不再分配内存
+class MulticastReceiver {
+    private static final String TAG = "MulticastReceiver";
+    // one ethernet frame, iptv senders put 7 ts packets into a datagram
+    private static final int PacketSize = 2048;
+    // about half a second of a 20 Mbps stream
+    private static final int PoolSize = 1024;
+    private static final int JitterWindow = 64;
+    private static final int ReceiveBufferSize = 2 * 1024 * 1024;
+    private static final int TsSyncByte = 0x47;
+
+    private final InetAddress group;
+    @Nullable
+    private final InetAddress source;
+    private final int port;
+    private final ArrayBlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(PoolSize);
+    private final ArrayBlockingQueue<ByteBuffer> ready = new ArrayBlockingQueue<>(PoolSize);
+    private final JitterBuffer jitter;
+    private final Thread thread;
+    private volatile boolean stopped = false;
+    @Nullable
+    private volatile DatagramChannel channel;
+    @Nullable
+    private volatile MulticastSocket socket;
+
+    // source is the sender of a source specific group
+    MulticastReceiver(InetAddress group, @Nullable InetAddress source, int port) {
+        this.group = group;
+        this.source = source;
+        this.port = port;
+        // the channel receives into direct buffers, the socket fallback needs arrays
+        boolean direct = useChannel();
+        for (int i = 0; i < PoolSize; i++) {
+            free.add(direct ? ByteBuffer.allocateDirect(PacketSize) : ByteBuffer.allocate(PacketSize));
+        }
+        this.jitter = new JitterBuffer(JitterWindow, new JitterBuffer.Output() {
+            @Override
+            public void onPacket(ByteBuffer packet) {
+                ready.offer(packet);
+            }
+
+            @Override
+            public void onDropped(ByteBuffer packet) {
+                recycle(packet);
+            }
+        });
+        this.thread = new Thread(this::receive, TAG);
+        this.thread.setDaemon(true);
+    }
+
+    // DatagramChannel joins groups from api 24 on
+    private static boolean useChannel() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        stopped = true;
+        thread.interrupt();
+        MulticastSocket current = socket;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    // ts data in order, null when nothing arrived in time
+    @Nullable
+    ByteBuffer take(long timeoutMs) throws InterruptedException {
+        return ready.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Nullable
+    ByteBuffer poll() {
+        return ready.poll();
+    }
+
+    void recycle(ByteBuffer packet) {
+        packet.clear();
+        free.offer(packet);
+    }
+
+    private ByteBuffer obtain() {
+        ByteBuffer packet = free.poll();
+        if (packet == null) {
+            // the reader fell behind, drop the oldest data and stay live
+            packet = ready.poll();
+            if (packet != null) {
+                packet.clear();
+            }
+        }
+        // the jitter window is much smaller than the pool, one of them always has a buffer
+        assert packet != null;
+        return packet;
+    }
+
+    private void receive() {
+        Log.i(TAG, String.format(Locale.ENGLISH, "receive %s:%d, source %s", group.getHostAddress(), port, source));
+        try {
+            if (useChannel()) {
+                receiveChannel();
+            } else {
+                receiveSocket();
+            }
+        } catch (IOException e) {
+            if (!stopped) {
+                Log.w(TAG, "receive failed: " + e);
+            }
+        } finally {
+            DatagramChannel currentChannel = channel;
+            if (currentChannel != null) {
+                try {
+                    currentChannel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            MulticastSocket currentSocket = socket;
+            if (currentSocket != null) {
+                currentSocket.close();
+            }
+        }
+        Log.i(TAG, String.format(Locale.ENGLISH, "stop receiving %s:%d", group.getHostAddress(), port));
+    }
+
+    @RequiresApi(Build.VERSION_CODES.N)
+    private void receiveChannel() throws IOException {
+        DatagramChannel datagramChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel = datagramChannel;
+        datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        datagramChannel.setOption(StandardSocketOptions.SO_RCVBUF, ReceiveBufferSize);
+        datagramChannel.bind(new InetSocketAddress(port));
+        if (group.isMulticastAddress()) {
+            NetworkInterface networkInterface = getMulticastInterface();
+            if (networkInterface == null) {
+                throw new IOException("no multicast capable interface");
+            }
+            if (source != null) {
+                datagramChannel.join(group, networkInterface, source);
+            } else {
+                datagramChannel.join(group, networkInterface);
+            }
+        }
+        // blocking, interrupting the thread closes the channel
+        while (!stopped) {
+            ByteBuffer packet = obtain();
+            datagramChannel.receive(packet);
+            packet.flip();
+            onPacket(packet);
+        }
+    }
+
+    // the source of a source specific group is ignored, the kernel before api 24 can't filter it
+    private void receiveSocket() throws IOException {
+        MulticastSocket multicastSocket = new MulticastSocket(port);
+        socket = multicastSocket;
+        multicastSocket.setReceiveBufferSize(ReceiveBufferSize);
+        if (group.isMulticastAddress()) {
+            multicastSocket.joinGroup(group);
+        }
+        DatagramPacket datagram = new DatagramPacket(new byte[0], 0);
+        while (!stopped) {
+            ByteBuffer packet = obtain();
+            datagram.setData(packet.array(), packet.arrayOffset(), packet.capacity());
+            multicastSocket.receive(datagram);
+            packet.limit(datagram.getLength());
+            onPacket(packet);
+        }
+    }
+
+    private void onPacket(ByteBuffer packet) {
+        if (!packet.hasRemaining()) {
+            recycle(packet);
+            return;
+        }
+        int first = packet.get(0) & 0xff;
+        if (first == TsSyncByte) {
+            // plain udp, ts packets only
+            ready.offer(packet);
+            return;
+        }
+        // rtp version 2, fixed header of 12 bytes and csrc list
+        int headerSize = 12 + (first & 0x0f) * 4;
+        if ((first & 0xc0) != 0x80 || packet.limit() < headerSize) {
+            recycle(packet);
+            return;
+        }
+        int seq = packet.getShort(2) & 0xffff;
+        if ((first & 0x10) != 0) {
+            // header extension, length in 32 bit words
+            if (packet.limit() < headerSize + 4) {
+                recycle(packet);
+                return;
+            }
+            headerSize += 4 + (packet.getShort(headerSize + 2) & 0xffff) * 4;
+        }
+        int end = packet.limit();
+        if ((first & 0x20) != 0) {
+            // padding, the last byte is its size
+            end -= packet.get(end - 1) & 0xff;
+        }
+        if (headerSize >= end) {
+            recycle(packet);
+            return;
+        }
+        packet.limit(end);
+        packet.position(headerSize);
+        jitter.push(seq, packet);
+    }
+
+    @Nullable
+    private static NetworkInterface getMulticastInterface() throws SocketException {
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces.hasMoreElements()) {
+            NetworkInterface networkInterface = interfaces.nextElement();
+            if (networkInterface.isLoopback() || !networkInterface.isUp() || !networkInterface.supportsMulticast()) {
+                continue;
+            }
+            Enumeration<InetAddress> addresses = networkInterface.getInetAddresses();
+            while (addresses.hasMoreElements()) {
+                if (addresses.nextElement() instanceof Inet4Address) {
+                    return networkInterface;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,185 @@
+package com.orion.iptv.multicast;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.orion.player.ExtDataSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fi.iki.elonen.NanoHTTPD;
+
+// 组播转 HTTP，和 udpxy 一样：每个 http 请求加入一个组播组，收到的 TS 作为 chunked 响应输出，
+// 请求结束就退出组播组；exo 和 ijk 都只看到一个普通的 http ts 地址
+public class MulticastRelay extends NanoHTTPD {
+    private static final String TAG = "MulticastRelay";
+    private static final String MIME_TS = "video/mp2t";
+    private static final String MIME_PLAIN = "text/plain; charset=UTF-8";
+    // udp://@239.1.1.1:1234, rtp://10.0.0.1@232.1.1.1:5000 for a source specific group
+    private static final Pattern MulticastUrl = Pattern.compile("^(?:udp|rtp)://(?:([^@/]*)@)?([^:/@]+):(\\d+)", Pattern.CASE_INSENSITIVE);
+    // the stream is gone when nothing arrives for this long, the player then reports an error
+    private static final long NoDataTimeoutMs = 10 * 1000;
+
+    private final WifiManager.MulticastLock multicastLock;
+    private final Set<MulticastReceiver> receivers = new HashSet<>();
+    @Nullable
+    private ExtDataSource upstream;
+    @Nullable
+    private ExtDataSource current;
+
+    public MulticastRelay(Context context) {
+        // port 0, the system picks a free one
+        super("127.0.0.1", 0);
+        WifiManager wifiManager = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        multicastLock = wifiManager.createMulticastLock(TAG);
+        multicastLock.setReferenceCounted(true);
+    }
+
+    public static boolean isSupported(ExtDataSource dataSource) {
+        return MulticastUrl.matcher(dataSource.getUri()).find();
+    }
+
+    public void startRelay() throws IOException {
+        start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        Log.i(TAG, "multicast relay on port " + getListeningPort());
+    }
+
+    public void stopRelay() {
+        stop();
+        synchronized (receivers) {
+            for (MulticastReceiver receiver : receivers) {
+                receiver.stop();
+                multicastLock.release();
+            }
+            receivers.clear();
+        }
+    }
+
+    // must be called on main thread
+    public ExtDataSource wrap(ExtDataSource dataSource) {
+        upstream = dataSource;
+        try {
+            current = new ExtDataSource(String.format(Locale.ENGLISH, "http://127.0.0.1:%d/live.ts?u=%s",
+                    getListeningPort(), URLEncoder.encode(dataSource.getUri(), "UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        current.setLowLatency(dataSource.isLowLatency());
+        current.setBufferProfile(dataSource.getBufferProfile());
+        return current;
+    }
+
+    @Nullable
+    public ExtDataSource unwrap(@Nullable ExtDataSource dataSource) {
+        return dataSource != null && dataSource == current ? upstream : dataSource;
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        List<String> param = session.getParameters().get("u");
+        Matcher matcher = param != null && param.size() == 1 ? MulticastUrl.matcher(param.get(0)) : null;
+        if (matcher == null || !matcher.find()) {
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAIN, "bad url");
+        }
+        MulticastReceiver receiver;
+        try {
+            String source = matcher.group(1);
+            // literal addresses, no lookup
+            receiver = new MulticastReceiver(
+                    InetAddress.getByName(matcher.group(2)),
+                    source != null && !source.isEmpty() ? InetAddress.getByName(source) : null,
+                    Integer.parseInt(matcher.group(3)));
+        } catch (IOException | NumberFormatException e) {
+            Log.w(TAG, String.format(Locale.ENGLISH, "relay %s failed: %s", param.get(0), e));
+            return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAIN, e.toString());
+        }
+        synchronized (receivers) {
+            // wifi drops multicast frames without the lock
+            multicastLock.acquire();
+            receivers.add(receiver);
+        }
+        receiver.start();
+        return newChunkedResponse(Response.Status.OK, MIME_TS, new ReceiverInputStream(receiver));
+    }
+
+    private void release(MulticastReceiver receiver) {
+        receiver.stop();
+        synchronized (receivers) {
+            if (receivers.remove(receiver)) {
+                multicastLock.release();
+            }
+        }
+    }
+
+    // closed by NanoHTTPD once the response ends or the player disconnects
+    private class ReceiverInputStream extends InputStream {
+        private final MulticastReceiver receiver;
+        @Nullable
+        private ByteBuffer packet;
+
+        ReceiverInputStream(MulticastReceiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int total = 0;
+            while (total < len) {
+                if (packet == null || !packet.hasRemaining()) {
+                    if (packet != null) {
+                        receiver.recycle(packet);
+                        packet = null;
+                    }
+                    try {
+                        // wait for the first bytes only, then hand over what is already there
+                        packet = total == 0 ? receiver.take(NoDataTimeoutMs) : receiver.poll();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                    if (packet == null) {
+                        break;
+                    }
+                }
+                int n = Math.min(len - total, packet.remaining());
+                packet.get(b, off + total, n);
+                total += n;
+            }
+            return total == 0 ? -1 : total;
+        }
+
+        @Override
+        public void close() {
+            if (packet != null) {
+                receiver.recycle(packet);
+                packet = null;
+            }
+            release(receiver);
+        }
+    }
+}
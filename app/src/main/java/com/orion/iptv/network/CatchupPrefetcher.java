@@ -0,0 +1,127 @@
+package com.orion.iptv.network;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.orion.player.ExtDataSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+// 回看节目获得焦点时先请求一次回看地址：hls取播放列表和第一个分片，其它只读开头，
+// 让服务器提前准备回看会话，同时建好连接
+public class CatchupPrefetcher {
+    private static final String TAG = "CatchupPrefetcher";
+    private static final long MaxPlaylistBytes = 256 * 1024;
+    private static final long MaxSegmentBytes = 1024 * 1024;
+    private static final long StreamHeadBytes = 64 * 1024;
+
+    // set on the main thread, handed over to the segment request on an okhttp thread
+    private final AtomicReference<Call> call = new AtomicReference<>();
+
+    public void prefetch(ExtDataSource dataSource) {
+        cancel();
+        HttpUrl parsed = HttpUrl.parse(dataSource.getUri());
+        if (parsed == null) {
+            return;
+        }
+        call.set(DownloadHelper.get(newRequest(parsed, dataSource), RequestScheduler.PRIORITY_PREFETCH, new PrefetchCallback(dataSource, true)));
+    }
+
+    // same headers and auth as the player sends, or the server refuses the prefetch
+    private static Request newRequest(HttpUrl url, ExtDataSource dataSource) {
+        Request.Builder builder = new Request.Builder().url(url);
+        ExtDataSource.Auth auth = dataSource.getAuth();
+        if (!auth.equals(ExtDataSource.NoAuth)) {
+            builder.header("Authorization", Credentials.basic(auth.username, auth.password));
+        }
+        for (Map.Entry<String, String> header : dataSource.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+
+    public void cancel() {
+        Call current = call.getAndSet(null);
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private class PrefetchCallback implements Callback {
+        private final ExtDataSource dataSource;
+        private final boolean first;
+
+        PrefetchCallback(ExtDataSource dataSource, boolean first) {
+            this.dataSource = dataSource;
+            this.first = first;
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            if (!call.isCanceled()) {
+                Log.i(TAG, String.format(Locale.ENGLISH, "prefetch %s failed: %s", call.request().url(), e));
+            }
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) {
+            try (ResponseBody body = response.body()) {
+                if (!response.isSuccessful() || body == null) {
+                    return;
+                }
+                BufferedSource source = body.source();
+                if (!first) {
+                    source.request(MaxSegmentBytes);
+                    return;
+                }
+                source.request(MaxPlaylistBytes);
+                long size = Math.min(source.getBuffer().size(), MaxPlaylistBytes);
+                String head = source.getBuffer().readString(size, StandardCharsets.UTF_8);
+                if (!head.startsWith("#EXTM3U")) {
+                    // a plain stream, the first bytes are enough
+                    source.request(StreamHeadBytes);
+                    return;
+                }
+                HttpUrl segment = firstSegment(head, response.request().url());
+                if (segment != null && !call.isCanceled()) {
+                    Log.i(TAG, "prefetch first segment: " + segment);
+                    Call next = DownloadHelper.get(newRequest(segment, dataSource), RequestScheduler.PRIORITY_PREFETCH, new PrefetchCallback(dataSource, false));
+                    // canceled or replaced by another prefetch meanwhile
+                    if (!CatchupPrefetcher.this.call.compareAndSet(call, next)) {
+                        next.cancel();
+                    }
+                }
+            } catch (IOException e) {
+                onFailure(call, e);
+            }
+        }
+    }
+
+    // first media line, a master playlist yields its first variant which is fine to warm up as well
+    @Nullable
+    private static HttpUrl firstSegment(String playlist, HttpUrl base) {
+        for (String line : playlist.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            return base.resolve(trimmed);
+        }
+        return null;
+    }
+}
@@ -1,7 +1,10 @@
 package com.orion.iptv.network;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
+import okhttp3.Cache;
 import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -14,34 +17,111 @@ public class DownloadHelper {
     private static final DownloadHelper helper = new DownloadHelper();
 
     private OkHttpClient client;
+    private RequestScheduler scheduler;
 
-    public static void setClient(OkHttpClient client) {
+    private static final long CacheSize = 50 * 1024 * 1024;
+
+    // the activity is created again on every config change, the cached client is built once per process
+    public static synchronized void init(File cacheDir) {
+        if (helper.client != null && helper.client.cache() != null) {
+            return;
+        }
+        setClient(newClientBuilder().cache(new Cache(cacheDir, CacheSize)).build());
+    }
+
+    public static synchronized void setClient(OkHttpClient client) {
+        if (helper.scheduler != null) {
+            helper.scheduler.shutdown();
+        }
         helper.client = client;
+        helper.scheduler = new RequestScheduler(client);
+    }
+
+    // a service restarted in a fresh process runs before any activity set the client,
+    // it gets one without the disk cache
+    public static synchronized OkHttpClient getClient() {
+        if (helper.client == null) {
+            setClient(newClientBuilder().build());
+        }
+        return helper.client;
+    }
+
+    private static OkHttpClient.Builder newClientBuilder() {
+        return new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .followSslRedirects(true);
+    }
+
+    private static synchronized RequestScheduler getScheduler() {
+        getClient();
+        return helper.scheduler;
+    }
+
+    // tests start from a cold process with it
+    public static synchronized void reset() {
+        if (helper.scheduler != null) {
+            helper.scheduler.shutdown();
+        }
+        helper.client = null;
+        helper.scheduler = null;
     }
 
     public static Call get(String url, Callback callback) {
+        return get(url, RequestScheduler.PRIORITY_INTERACTIVE, callback);
+    }
+
+    public static Call get(String url, @RequestScheduler.Priority int priority, Callback callback) {
         Request request = new Request.Builder()
                 .url(url)
                 .build();
-        return get(request, callback);
+        return get(request, priority, callback);
     }
 
     public static Call get(String url, CacheControl cacheControl, Callback callback) {
+        return get(url, cacheControl, RequestScheduler.PRIORITY_INTERACTIVE, callback);
+    }
+
+    public static Call get(String url, CacheControl cacheControl, @RequestScheduler.Priority int priority, Callback callback) {
         Request request = new Request.Builder()
                 .url(url)
                 .cacheControl(cacheControl)
                 .build();
-        return get(request, callback);
+        return get(request, priority, callback);
     }
 
     public static Call get(Request request, Callback callback) {
-        Call call = helper.client.newCall(request);
+        return get(request, RequestScheduler.PRIORITY_INTERACTIVE, callback);
+    }
+
+    public static Call get(Request request, @RequestScheduler.Priority int priority, Callback callback) {
+        Call call = getScheduler().newCall(request, priority);
         call.enqueue(callback);
         return call;
     }
 
+    // call.timeout() must be configured before enqueue, so hand out the unscheduled call
+    public static Call newCall(Request request, @RequestScheduler.Priority int priority) {
+        return getScheduler().newCall(request, priority);
+    }
+
     public static Response getBlocked(Request request) throws IOException {
-        Call call = helper.client.newCall(request);
+        Call call = getClient().newCall(request);
         return call.execute();
     }
+
+    public static void beginPlaybackStartup() {
+        if (helper.scheduler != null) {
+            helper.scheduler.beginPlaybackStartup();
+        }
+    }
+
+    public static void endPlaybackStartup() {
+        if (helper.scheduler != null) {
+            helper.scheduler.endPlaybackStartup();
+        }
+    }
+
+    public static boolean isPlaybackStarting() {
+        return helper.scheduler != null && helper.scheduler.isPlaybackStarting();
+    }
 }
@@ -0,0 +1,247 @@
+package com.orion.iptv.network;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+
+import com.orion.iptv.bean.ChannelGroup;
+import com.orion.iptv.bean.ChannelItem;
+import com.orion.iptv.bean.ChannelSource;
+
+import java.io.IOException;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+// 后台逐个检查播放列表里的http线路，结果写入 LinkHealthStore；
+// 请求走 PRIORITY_BACKGROUND，由 RequestScheduler 限制单host并发，起播期间自动暂停
+public class LinkChecker {
+    private static final String TAG = "LinkChecker";
+
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({STATUS_UNKNOWN, STATUS_ALIVE, STATUS_SLOW, STATUS_DEAD})
+    public @interface Status {}
+    public static final int STATUS_UNKNOWN = 0;
+    public static final int STATUS_ALIVE = 1;
+    public static final int STATUS_SLOW = 2;
+    public static final int STATUS_DEAD = 3;
+
+    private static final long TimeoutMs = 5 * 1000;
+    private static final long SlowThresholdMs = 1500;
+    // links checked within this period are skipped
+    private static final long RecheckAfterMs = 3600 * 1000;
+    // keep the scheduler queue short, other background requests should not wait for us
+    private static final int MaxOutstanding = 8;
+    // this many connection errors before any alive link means the network is down
+    private static final int MaxErrorsBeforeAlive = 16;
+    private static final int ManifestProbeBytes = 1024;
+    private static final int TsProbeBytes = 188 * 4;
+    private static final int NotifyEvery = 32;
+
+    public interface Listener {
+        // called on main thread, after some links have been checked
+        void onProgress(int checked, int total);
+    }
+
+    private final Handler mHandler;
+    private final ArrayDeque<String> pending;
+    private final List<Call> calls;
+    // connection errors are held back until some link turns out alive
+    private final List<String> suspects;
+    // links whose body read was cut off once, checked again from the back of the queue
+    private final Set<String> requeued;
+    private final int total;
+    private Listener listener;
+    private int checked = 0;
+    private int sinceNotify = 0;
+    private boolean sawAlive = false;
+    private boolean finished = false;
+
+    public LinkChecker(ChannelSource source) {
+        this.mHandler = new Handler(Looper.getMainLooper());
+        this.calls = new ArrayList<>();
+        this.suspects = new ArrayList<>();
+        this.requeued = new HashSet<>();
+        Set<String> links = new LinkedHashSet<>();
+        for (ChannelGroup group : source.groups) {
+            for (ChannelItem item : group.channels) {
+                for (String link : item.getSources()) {
+                    if (isCheckable(link) && LinkHealthStore.getCheckStatus(link, RecheckAfterMs) == STATUS_UNKNOWN) {
+                        links.add(link);
+                    }
+                }
+            }
+        }
+        this.pending = new ArrayDeque<>(links);
+        this.total = links.size();
+    }
+
+    private static boolean isCheckable(String link) {
+        return HttpUrl.parse(link) != null;
+    }
+
+    private static boolean isManifest(HttpUrl url) {
+        return url.encodedPath().toLowerCase(Locale.ROOT).endsWith(".m3u8");
+    }
+
+    // must be called on main thread
+    public void start(Listener listener) {
+        this.listener = listener;
+        Log.i(TAG, String.format(Locale.ENGLISH, "check %d links", total));
+        pump();
+    }
+
+    public void cancel() {
+        finished = true;
+        pending.clear();
+        for (Call call : calls) {
+            call.cancel();
+        }
+        calls.clear();
+    }
+
+    private void pump() {
+        while (!finished && calls.size() < MaxOutstanding && !pending.isEmpty()) {
+            String link = pending.poll();
+            HttpUrl url = HttpUrl.parse(link);
+            if (url == null) {
+                continue;
+            }
+            Request.Builder builder = new Request.Builder().url(url);
+            if (!isManifest(url)) {
+                builder.header("Range", "bytes=0-" + (TsProbeBytes - 1));
+            }
+            Call call = DownloadHelper.newCall(builder.build(), RequestScheduler.PRIORITY_BACKGROUND);
+            call.timeout().timeout(TimeoutMs, TimeUnit.MILLISECONDS);
+            call.enqueue(new CheckCallback(link, isManifest(url)));
+            calls.add(call);
+        }
+        if (!finished && calls.isEmpty() && pending.isEmpty()) {
+            finished = true;
+            Log.i(TAG, String.format(Locale.ENGLISH, "checked %d/%d links", checked, total));
+            listener.onProgress(checked, total);
+        }
+    }
+
+    private void onResult(Call call, String link, @Status int status, boolean connectionError) {
+        if (finished) {
+            return;
+        }
+        calls.remove(call);
+        checked += 1;
+        if (connectionError && !sawAlive) {
+            suspects.add(link);
+            if (suspects.size() >= MaxErrorsBeforeAlive) {
+                Log.w(TAG, "all links failed to connect, network may be down, stop checking");
+                suspects.clear();
+                cancel();
+                return;
+            }
+        } else if (status != STATUS_UNKNOWN) {
+            LinkHealthStore.recordCheck(link, status);
+        }
+        if ((status == STATUS_ALIVE || status == STATUS_SLOW) && !sawAlive) {
+            sawAlive = true;
+            for (String suspect : suspects) {
+                LinkHealthStore.recordCheck(suspect, STATUS_DEAD);
+            }
+            suspects.clear();
+        }
+        sinceNotify += 1;
+        if (sinceNotify >= NotifyEvery) {
+            sinceNotify = 0;
+            listener.onProgress(checked, total);
+        }
+        pump();
+    }
+
+    // the body read was interrupted, by a playback startup preempting us or by the network,
+    // it says nothing about the link: try it once more, then leave it unknown
+    private void onInterrupted(Call call, String link) {
+        if (finished) {
+            return;
+        }
+        if (requeued.add(link)) {
+            calls.remove(call);
+            pending.addLast(link);
+            pump();
+            return;
+        }
+        onResult(call, link, STATUS_UNKNOWN, false);
+    }
+
+    private class CheckCallback implements okhttp3.Callback {
+        private final String link;
+        private final boolean manifest;
+
+        CheckCallback(String link, boolean manifest) {
+            this.link = link;
+            this.manifest = manifest;
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            if (call.isCanceled()) {
+                return;
+            }
+            mHandler.post(() -> onResult(call, link, STATUS_DEAD, true));
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) {
+            if (call.isCanceled()) {
+                response.close();
+                return;
+            }
+            int status = STATUS_DEAD;
+            try (ResponseBody body = response.body()) {
+                if (response.isSuccessful() && body != null) {
+                    int probeBytes = manifest ? ManifestProbeBytes : TsProbeBytes;
+                    BufferedSource source = body.source();
+                    source.request(probeBytes);
+                    int length = (int) Math.min(source.getBuffer().size(), probeBytes);
+                    byte[] head = source.getBuffer().readByteArray(length);
+                    if (LinkRacer.looksLikeMedia(head, length, response.header("Content-Type"))) {
+                        long ttfb = response.receivedResponseAtMillis() - response.sentRequestAtMillis();
+                        status = ttfb > SlowThresholdMs ? STATUS_SLOW : STATUS_ALIVE;
+                    }
+                }
+            } catch (IOException e) {
+                Log.i(TAG, String.format(Locale.ENGLISH, "read %s failed: %s", link, e));
+                if (!call.isCanceled()) {
+                    mHandler.post(() -> onInterrupted(call, link));
+                }
+                return;
+            }
+            int result = status;
+            mHandler.post(() -> onResult(call, link, result, false));
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package com.orion.iptv.network;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+
+// 记录每条线路和每个host的起播耗时、失败和卡顿次数，分数随时间衰减，
+// 持久化为一个紧凑的二进制文件，所有文件读写都在后台线程
+public class LinkHealthStore {
+    private static final String TAG = "LinkHealthStore";
+    private static final LinkHealthStore store = new LinkHealthStore();
+
+    private static final int Magic = 0x4c485332; // LHS2
+    private static final int MaxEntries = 2000;
+    private static final int MaxLatencySamples = 16;
+    // failures and stalls lose half of their weight every 6 hours
+    private static final long HalfLifeMs = 6 * 3600 * 1000;
+    private static final long SaveDelayMs = 5 * 1000;
+    private static final float HostWeight = 0.5f;
+
+    public static final int ERROR_TIMEOUT = -1;
+    public static final int ERROR_UNKNOWN = -2;
+
+    private final Map<String, Health> links = new HashMap<>();
+    private final Map<String, Health> hosts = new HashMap<>();
+    private File file;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> pendingSave;
+
+    private LinkHealthStore() {
+    }
+
+    public static void init(File dir) {
+        synchronized (store) {
+            if (store.file != null) {
+                return;
+            }
+            store.file = new File(dir, "link_health.bin");
+            store.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+            store.executor.execute(store::load);
+        }
+    }
+
+    public static void recordSuccess(String url, long startupMs) {
+        long now = System.currentTimeMillis();
+        synchronized (store) {
+            for (Health health : store.entries(url)) {
+                health.decay(now);
+                health.successes += 1;
+                health.addLatency(startupMs);
+            }
+            store.scheduleSave();
+        }
+    }
+
+    public static void recordFailure(String url, int errorCode) {
+        long now = System.currentTimeMillis();
+        synchronized (store) {
+            for (Health health : store.entries(url)) {
+                health.decay(now);
+                health.failures += 1;
+                health.lastError = errorCode;
+            }
+            store.scheduleSave();
+        }
+    }
+
+    public static void recordStall(String url) {
+        long now = System.currentTimeMillis();
+        synchronized (store) {
+            for (Health health : store.entries(url)) {
+                health.decay(now);
+                health.stalls += 1;
+            }
+            store.scheduleSave();
+        }
+    }
+
+    // result of LinkChecker, counts less than a real playback
+    public static void recordCheck(String url, @LinkChecker.Status int status) {
+        long now = System.currentTimeMillis();
+        synchronized (store) {
+            Health health = getOrCreate(store.links, url);
+            health.decay(now);
+            health.checkStatus = status;
+            health.checkedAt = now;
+            switch (status) {
+                case LinkChecker.STATUS_ALIVE:
+                    health.successes += 0.25f;
+                    break;
+                case LinkChecker.STATUS_SLOW:
+                    health.stalls += 1;
+                    break;
+                case LinkChecker.STATUS_DEAD:
+                    health.failures += 0.5f;
+                    break;
+            }
+            store.scheduleSave();
+        }
+    }
+
+    // STATUS_UNKNOWN if the link was not checked within maxAgeMs
+    public static @LinkChecker.Status int getCheckStatus(String url, long maxAgeMs) {
+        synchronized (store) {
+            Health health = store.links.get(url);
+            if (health == null || System.currentTimeMillis() - health.checkedAt > maxAgeMs) {
+                return LinkChecker.STATUS_UNKNOWN;
+            }
+            return health.checkStatus;
+        }
+    }
+
+    // higher is better, unknown links score 0
+    public static float getScore(String url) {
+        long now = System.currentTimeMillis();
+        synchronized (store) {
+            float score = 0;
+            Health link = store.links.get(url);
+            if (link != null) {
+                score += link.score(now);
+            }
+            String host = hostOf(url);
+            Health health = host != null ? store.hosts.get(host) : null;
+            if (health != null) {
+                score += health.score(now) * HostWeight;
+            }
+            return score;
+        }
+    }
+
+    // startup latency samples of the link, falls back to its host, oldest first
+    @NonNull
+    public static long[] getLatencies(String url) {
+        synchronized (store) {
+            Health health = store.links.get(url);
+            if (health == null || health.latencyCount == 0) {
+                String host = hostOf(url);
+                health = host != null ? store.hosts.get(host) : null;
+            }
+            return health != null ? health.latencies() : new long[0];
+        }
+    }
+
+    // percentile (0-100) of startup latency, -1 if there are fewer than minSamples samples
+    public static long getLatencyPercentile(String url, int percentile, int minSamples) {
+        long[] latencies = getLatencies(url);
+        if (latencies.length == 0 || latencies.length < minSamples) {
+            return -1;
+        }
+        Arrays.sort(latencies);
+        int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+    }
+
+    @Nullable
+    private static String hostOf(String url) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        return httpUrl != null ? httpUrl.host() : null;
+    }
+
+    private List<Health> entries(String url) {
+        List<Health> entries = new ArrayList<>();
+        entries.add(getOrCreate(links, url));
+        String host = hostOf(url);
+        if (host != null) {
+            entries.add(getOrCreate(hosts, host));
+        }
+        return entries;
+    }
+
+    private static Health getOrCreate(Map<String, Health> map, String key) {
+        Health health = map.get(key);
+        if (health == null) {
+            evict(map, MaxEntries - 1);
+            health = new Health(System.currentTimeMillis());
+            map.put(key, health);
+        }
+        return health;
+    }
+
+    // drop the least recently updated entries until at most maxSize are left
+    private static void evict(Map<String, Health> map, int maxSize) {
+        while (map.size() > maxSize) {
+            String oldest = null;
+            long oldestAt = Long.MAX_VALUE;
+            for (Map.Entry<String, Health> entry : map.entrySet()) {
+                if (entry.getValue().updatedAt < oldestAt) {
+                    oldest = entry.getKey();
+                    oldestAt = entry.getValue().updatedAt;
+                }
+            }
+            map.remove(oldest);
+        }
+    }
+
+    private void scheduleSave() {
+        if (executor == null) {
+            return;
+        }
+        if (pendingSave != null) {
+            pendingSave.cancel(false);
+        }
+        pendingSave = executor.schedule(this::save, SaveDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        Map<String, Health> loadedLinks = new HashMap<>();
+        Map<String, Health> loadedHosts = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int magic = in.readInt();
+            if (magic != Magic) {
+                Log.w(TAG, "unknown file format, ignore it");
+                return;
+            }
+            readEntries(in, loadedLinks);
+            readEntries(in, loadedHosts);
+        } catch (IOException e) {
+            Log.w(TAG, "load link health failed: " + e);
+            return;
+        }
+        synchronized (this) {
+            // records made before loading finished are newer, keep them
+            for (Map.Entry<String, Health> entry : loadedLinks.entrySet()) {
+                if (!links.containsKey(entry.getKey())) {
+                    links.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Map.Entry<String, Health> entry : loadedHosts.entrySet()) {
+                if (!hosts.containsKey(entry.getKey())) {
+                    hosts.put(entry.getKey(), entry.getValue());
+                }
+            }
+            evict(links, MaxEntries);
+            evict(hosts, MaxEntries);
+        }
+        Log.i(TAG, String.format(Locale.ENGLISH, "loaded %d links, %d hosts", loadedLinks.size(), loadedHosts.size()));
+    }
+
+    private void save() {
+        List<Map.Entry<String, Health>> linkEntries;
+        List<Map.Entry<String, Health>> hostEntries;
+        synchronized (this) {
+            linkEntries = snapshot(links);
+            hostEntries = snapshot(hosts);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(Magic);
+            writeEntries(out, linkEntries);
+            writeEntries(out, hostEntries);
+        } catch (IOException e) {
+            Log.w(TAG, "save link health failed: " + e);
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.w(TAG, "rename " + tmp + " failed");
+        }
+    }
+
+    // copy entries, the maps never hold more than MaxEntries
+    private static List<Map.Entry<String, Health>> snapshot(Map<String, Health> map) {
+        List<Map.Entry<String, Health>> entries = new ArrayList<>();
+        for (Map.Entry<String, Health> entry : map.entrySet()) {
+            entries.add(new HashMap.SimpleEntry<>(entry.getKey(), entry.getValue().copy()));
+        }
+        return entries;
+    }
+
+    private static void writeEntries(DataOutputStream out, List<Map.Entry<String, Health>> entries) throws IOException {
+        List<Map.Entry<String, Health>> writable = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Health> entry : entries) {
+            if (fitsUTF(entry.getKey())) {
+                writable.add(entry);
+            }
+        }
+        out.writeInt(writable.size());
+        for (Map.Entry<String, Health> entry : writable) {
+            Health health = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(health.updatedAt);
+            out.writeFloat(health.successes);
+            out.writeFloat(health.failures);
+            out.writeFloat(health.stalls);
+            out.writeInt(health.lastError);
+            out.writeByte(health.checkStatus);
+            out.writeLong(health.checkedAt);
+            long[] latencies = health.latencies();
+            out.writeByte(latencies.length);
+            for (long latency : latencies) {
+                out.writeInt((int) Math.min(latency, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    // writeUTF throws for more than 64KB of modified utf-8, such a link is skipped instead of failing the save
+    private static boolean fitsUTF(String key) {
+        int bytes = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            bytes += c >= 0x01 && c <= 0x7f ? 1 : c <= 0x7ff ? 2 : 3;
+            if (bytes > 0xffff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readEntries(DataInputStream in, Map<String, Health> map) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            Health health = new Health(in.readLong());
+            health.successes = in.readFloat();
+            health.failures = in.readFloat();
+            health.stalls = in.readFloat();
+            health.lastError = in.readInt();
+            health.checkStatus = in.readUnsignedByte();
+            health.checkedAt = in.readLong();
+            int latencyCount = in.readUnsignedByte();
+            for (int j = 0; j < latencyCount; j++) {
+                health.addLatency(in.readInt());
+            }
+            map.put(key, health);
+        }
+    }
+
+    private static class Health {
+        long updatedAt;
+        float successes = 0;
+        float failures = 0;
+        float stalls = 0;
+        int lastError = 0;
+        @LinkChecker.Status int checkStatus = LinkChecker.STATUS_UNKNOWN;
+        long checkedAt = 0;
+        final long[] latencyRing = new long[MaxLatencySamples];
+        int latencyCount = 0;
+        int latencyPos = 0;
+
+        Health(long updatedAt) {
+            this.updatedAt = updatedAt;
+        }
+
+        void decay(long now) {
+            float factor = factor(now);
+            successes *= factor;
+            failures *= factor;
+            stalls *= factor;
+            updatedAt = now;
+        }
+
+        float factor(long now) {
+            long elapsed = Math.max(now - updatedAt, 0);
+            return (float) Math.pow(0.5, (double) elapsed / HalfLifeMs);
+        }
+
+        void addLatency(long latencyMs) {
+            latencyRing[latencyPos] = latencyMs;
+            latencyPos = (latencyPos + 1) % latencyRing.length;
+            latencyCount = Math.min(latencyCount + 1, latencyRing.length);
+        }
+
+        long[] latencies() {
+            long[] result = new long[latencyCount];
+            int start = (latencyPos - latencyCount + latencyRing.length) % latencyRing.length;
+            for (int i = 0; i < latencyCount; i++) {
+                result[i] = latencyRing[(start + i) % latencyRing.length];
+            }
+            return result;
+        }
+
+        float score(long now) {
+            float factor = factor(now);
+            float score = successes * factor - 2 * failures * factor - 0.5f * stalls * factor;
+            if (latencyCount > 0) {
+                long[] sorted = latencies();
+                Arrays.sort(sorted);
+                // every second of median startup latency costs half a point
+                score -= sorted[sorted.length / 2] / 2000.0f;
+            }
+            return score;
+        }
+
+        Health copy() {
+            Health health = new Health(updatedAt);
+            health.successes = successes;
+            health.failures = failures;
+            health.stalls = stalls;
+            health.lastError = lastError;
+            health.checkStatus = checkStatus;
+            health.checkedAt = checkedAt;
+            System.arraycopy(latencyRing, 0, health.latencyRing, 0, latencyRing.length);
+            health.latencyCount = latencyCount;
+            health.latencyPos = latencyPos;
+            return health;
+        }
+    }
+}
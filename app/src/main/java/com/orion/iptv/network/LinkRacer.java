@@ -0,0 +1,195 @@
+package com.orion.iptv.network;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.orion.player.ExtDataSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Credentials;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+// 同时探测一个频道的所有http线路，第一个返回有效媒体数据的线路胜出，其余请求取消
+public class LinkRacer {
+    private static final String TAG = "LinkRacer";
+    // enough for "#EXTM3U" or two ts sync bytes
+    private static final int ProbeBytes = 189;
+    private static final int TsPacketSize = 188;
+
+    public interface Callback {
+        // index is -1 if no link responded in time
+        void onWinner(int index, long costMs);
+    }
+
+    private final List<ExtDataSource> sources;
+    private final long timeoutMs;
+    private final Handler mHandler;
+    private final List<Call> calls;
+    private final Runnable onTimeout = () -> finish(-1);
+    private Callback callback;
+    private long startAt;
+    private int pending = 0;
+    private boolean finished = false;
+
+    public LinkRacer(List<ExtDataSource> sources, long timeoutMs) {
+        this.sources = sources;
+        this.timeoutMs = timeoutMs;
+        this.mHandler = new Handler(Looper.getMainLooper());
+        this.calls = new ArrayList<>();
+    }
+
+    public static boolean isProbeable(ExtDataSource dataSource) {
+        String uri = dataSource.getUri().toLowerCase(Locale.ROOT);
+        return uri.startsWith("http://") || uri.startsWith("https://");
+    }
+
+    // must be called on main thread, callback runs on main thread as well
+    public void start(Callback callback) {
+        this.callback = callback;
+        this.startAt = SystemClock.elapsedRealtime();
+        for (int i = 0; i < sources.size(); i++) {
+            ExtDataSource dataSource = sources.get(i);
+            if (!isProbeable(dataSource)) {
+                continue;
+            }
+            Request request;
+            try {
+                request = newRequest(dataSource);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "skip invalid link: " + dataSource.getUri());
+                continue;
+            }
+            Call call = DownloadHelper.newCall(request, RequestScheduler.PRIORITY_PLAYBACK);
+            call.timeout().timeout(timeoutMs, TimeUnit.MILLISECONDS);
+            call.enqueue(new ProbeCallback(i));
+            calls.add(call);
+            pending += 1;
+        }
+        if (pending == 0) {
+            finish(-1);
+            return;
+        }
+        mHandler.postDelayed(onTimeout, timeoutMs);
+    }
+
+    public void cancel() {
+        finished = true;
+        mHandler.removeCallbacks(onTimeout);
+        for (Call call : calls) {
+            call.cancel();
+        }
+        calls.clear();
+    }
+
+    private Request newRequest(ExtDataSource dataSource) {
+        Request.Builder builder = new Request.Builder()
+                .url(dataSource.getUri())
+                .header("Range", "bytes=0-" + (ProbeBytes - 1));
+        ExtDataSource.Auth auth = dataSource.getAuth();
+        if (!auth.equals(ExtDataSource.NoAuth)) {
+            builder.header("Authorization", Credentials.basic(auth.username, auth.password));
+        }
+        for (Map.Entry<String, String> header : dataSource.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+
+    private void onProbeResult(int index, boolean valid) {
+        if (finished) {
+            return;
+        }
+        pending -= 1;
+        if (valid) {
+            finish(index);
+        } else if (pending <= 0) {
+            finish(-1);
+        }
+    }
+
+    private void finish(int index) {
+        if (finished) {
+            return;
+        }
+        long cost = SystemClock.elapsedRealtime() - startAt;
+        Log.i(TAG, String.format(Locale.ENGLISH, "race finished, winner: %d, cost: %dms", index, cost));
+        cancel();
+        callback.onWinner(index, cost);
+    }
+
+    // 服务器可能忽略Range返回整个流，这里只看前几个字节
+    public static boolean looksLikeMedia(byte[] head, int length, String contentType) {
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("text/html")) {
+            return false;
+        }
+        if (length >= 7 && new String(head, 0, 7, StandardCharsets.US_ASCII).equals("#EXTM3U")) {
+            return true;
+        }
+        if (length > 0 && head[0] == 0x47) {
+            return length <= TsPacketSize || head[TsPacketSize] == 0x47;
+        }
+        if (length >= 3 && head[0] == 'F' && head[1] == 'L' && head[2] == 'V') {
+            return true;
+        }
+        // mp4, ftyp box
+        if (length >= 8 && head[4] == 'f' && head[5] == 't' && head[6] == 'y' && head[7] == 'p') {
+            return true;
+        }
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("video/") || type.startsWith("audio/") || type.contains("mpegurl") || type.contains("dash+xml");
+    }
+
+    private class ProbeCallback implements okhttp3.Callback {
+        private final int index;
+
+        ProbeCallback(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            if (!call.isCanceled()) {
+                Log.i(TAG, String.format(Locale.ENGLISH, "link %d probe failed: %s", index, e));
+            }
+            mHandler.post(() -> onProbeResult(index, false));
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) {
+            boolean valid = false;
+            try (ResponseBody body = response.body()) {
+                if (response.isSuccessful() && body != null) {
+                    BufferedSource source = body.source();
+                    source.request(ProbeBytes);
+                    int length = (int) Math.min(source.getBuffer().size(), ProbeBytes);
+                    byte[] head = source.getBuffer().readByteArray(length);
+                    String contentType = response.header("Content-Type");
+                    valid = looksLikeMedia(head, length, contentType);
+                }
+                Log.i(TAG, String.format(Locale.ENGLISH, "link %d probe code: %d, valid: %b", index, response.code(), valid));
+            } catch (IOException e) {
+                Log.i(TAG, String.format(Locale.ENGLISH, "link %d probe read failed: %s", index, e));
+            }
+            boolean result = valid;
+            mHandler.post(() -> onProbeResult(index, result));
+        }
+    }
+}
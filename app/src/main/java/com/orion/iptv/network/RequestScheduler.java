@@ -0,0 +1,319 @@
+package com.orion.iptv.network;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Timeout;
+
+// 按优先级调度请求，每个优先级有独立的全局/单host并发上限；
+// 频道起播期间暂停后台请求，并把已发出的后台请求取消后重新排队
+public class RequestScheduler {
+    private static final String TAG = "RequestScheduler";
+
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({PRIORITY_PLAYBACK, PRIORITY_INTERACTIVE, PRIORITY_PREFETCH, PRIORITY_BACKGROUND})
+    public @interface Priority {}
+    public static final int PRIORITY_PLAYBACK = 0;
+    public static final int PRIORITY_INTERACTIVE = 1;
+    public static final int PRIORITY_PREFETCH = 2;
+    public static final int PRIORITY_BACKGROUND = 3;
+
+    private static final int[] maxRequests = {16, 8, 4, 4};
+    private static final int[] maxRequestsPerHost = {6, 4, 2, 2};
+    // hold background requests at most 15s in case playback never reports ready
+    private static final long MaxStartupHoldMs = 15 * 1000;
+
+    private final OkHttpClient client;
+    private final List<ArrayDeque<ScheduledCall>> queues;
+    private final List<List<ScheduledCall>> running;
+    private final List<Map<String, Integer>> runningPerHost;
+    private final ScheduledExecutorService timer;
+    private long startupUntil = 0;
+
+    public RequestScheduler(OkHttpClient client) {
+        this.client = client;
+        int total = 0;
+        int totalPerHost = 0;
+        queues = new ArrayList<>();
+        running = new ArrayList<>();
+        runningPerHost = new ArrayList<>();
+        for (int i = 0; i < maxRequests.length; i++) {
+            queues.add(new ArrayDeque<>());
+            running.add(new ArrayList<>());
+            runningPerHost.add(new HashMap<>());
+            total += maxRequests[i];
+            totalPerHost += maxRequestsPerHost[i];
+        }
+        // our own limits are the real gate, don't let the okhttp dispatcher queue again
+        client.dispatcher().setMaxRequests(Math.max(client.dispatcher().getMaxRequests(), total));
+        client.dispatcher().setMaxRequestsPerHost(Math.max(client.dispatcher().getMaxRequestsPerHost(), totalPerHost));
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // the replaced scheduler stops its timer thread, calls already running finish on their own
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    public Call newCall(Request request, @Priority int priority) {
+        return new ScheduledCall(request, priority);
+    }
+
+    // 频道开始起播，后台请求让路
+    public void beginPlaybackStartup() {
+        List<ScheduledCall> preempted = new ArrayList<>();
+        synchronized (this) {
+            startupUntil = System.nanoTime() / 1000000 + MaxStartupHoldMs;
+            for (ScheduledCall call : running.get(PRIORITY_BACKGROUND)) {
+                call.preempted = true;
+                preempted.add(call);
+            }
+        }
+        for (ScheduledCall call : preempted) {
+            Call realCall = call.realCall;
+            if (realCall != null) {
+                realCall.cancel();
+            }
+        }
+        timer.schedule(this::promote, MaxStartupHoldMs + 1, TimeUnit.MILLISECONDS);
+    }
+
+    public void endPlaybackStartup() {
+        synchronized (this) {
+            startupUntil = 0;
+        }
+        promote();
+    }
+
+    public synchronized boolean isPlaybackStarting() {
+        return startupUntil > System.nanoTime() / 1000000;
+    }
+
+    private synchronized void enqueue(ScheduledCall call) {
+        queues.get(call.priority).addLast(call);
+    }
+
+    private boolean isRunnable(ScheduledCall call) {
+        if (call.priority == PRIORITY_BACKGROUND && isPlaybackStarting()) {
+            return false;
+        }
+        if (running.get(call.priority).size() >= maxRequests[call.priority]) {
+            return false;
+        }
+        Integer count = runningPerHost.get(call.priority).get(call.host());
+        return count == null || count < maxRequestsPerHost[call.priority];
+    }
+
+    private void promote() {
+        List<ScheduledCall> ready = new ArrayList<>();
+        synchronized (this) {
+            for (int priority = PRIORITY_PLAYBACK; priority <= PRIORITY_BACKGROUND; priority++) {
+                Iterator<ScheduledCall> it = queues.get(priority).iterator();
+                while (it.hasNext()) {
+                    ScheduledCall call = it.next();
+                    if (!isRunnable(call)) {
+                        continue;
+                    }
+                    it.remove();
+                    running.get(priority).add(call);
+                    Map<String, Integer> perHost = runningPerHost.get(priority);
+                    Integer count = perHost.get(call.host());
+                    perHost.put(call.host(), count == null ? 1 : count + 1);
+                    ready.add(call);
+                }
+            }
+        }
+        for (ScheduledCall call : ready) {
+            call.dispatch();
+        }
+    }
+
+    private void finished(ScheduledCall call) {
+        synchronized (this) {
+            if (running.get(call.priority).remove(call)) {
+                Map<String, Integer> perHost = runningPerHost.get(call.priority);
+                Integer count = perHost.get(call.host());
+                if (count == null || count <= 1) {
+                    perHost.remove(call.host());
+                } else {
+                    perHost.put(call.host(), count - 1);
+                }
+            }
+        }
+        promote();
+    }
+
+    private class ScheduledCall implements Call {
+        private final Request request;
+        private final @Priority int priority;
+        private final Timeout timeout = new Timeout();
+        private Callback callback;
+        private volatile Call realCall;
+        private volatile boolean canceled = false;
+        private volatile boolean preempted = false;
+        private boolean executed = false;
+
+        ScheduledCall(Request request, @Priority int priority) {
+            this.request = request;
+            this.priority = priority;
+        }
+
+        String host() {
+            return request.url().host();
+        }
+
+        void dispatch() {
+            if (canceled) {
+                finished(this);
+                callback.onFailure(this, new IOException("Canceled"));
+                return;
+            }
+            preempted = false;
+            Call call = client.newCall(request);
+            if (timeout.timeoutNanos() > 0) {
+                call.timeout().timeout(timeout.timeoutNanos(), TimeUnit.NANOSECONDS);
+            }
+            realCall = call;
+            if (canceled) {
+                call.cancel();
+            }
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    if (preempted && !canceled) {
+                        Log.i(TAG, String.format(Locale.ENGLISH, "requeue preempted request: %s", request.url()));
+                        realCall = null;
+                        RequestScheduler.this.enqueue(ScheduledCall.this);
+                        finished(ScheduledCall.this);
+                        return;
+                    }
+                    finished(ScheduledCall.this);
+                    callback.onFailure(ScheduledCall.this, e);
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+                    try {
+                        callback.onResponse(ScheduledCall.this, response);
+                    } finally {
+                        finished(ScheduledCall.this);
+                    }
+                }
+            });
+        }
+
+        @NonNull
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @NonNull
+        @Override
+        public Response execute() throws IOException {
+            synchronized (this) {
+                if (executed) {
+                    throw new IllegalStateException("Already Executed");
+                }
+                executed = true;
+            }
+            Call call = client.newCall(request);
+            realCall = call;
+            return call.execute();
+        }
+
+        @Override
+        public void enqueue(@NonNull Callback responseCallback) {
+            synchronized (this) {
+                if (executed) {
+                    throw new IllegalStateException("Already Executed");
+                }
+                executed = true;
+            }
+            callback = responseCallback;
+            RequestScheduler.this.enqueue(this);
+            promote();
+        }
+
+        @Override
+        public void cancel() {
+            if (canceled) {
+                return;
+            }
+            canceled = true;
+            Call call = realCall;
+            if (call != null) {
+                call.cancel();
+                return;
+            }
+            boolean removed;
+            synchronized (RequestScheduler.this) {
+                removed = queues.get(priority).remove(this);
+            }
+            if (removed && callback != null) {
+                callback.onFailure(this, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @NonNull
+        @Override
+        public Timeout timeout() {
+            return timeout;
+        }
+
+        @NonNull
+        @Override
+        public Call clone() {
+            return new ScheduledCall(request, priority);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.orion.iptv.probe;
+
+// 按位读取 SPS 这类码流，读过头时返回 0，调用方自己检查 isExhausted
+class BitReader {
+    private final byte[] data;
+    private final int end;
+    private int bitPosition;
+
+    BitReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.end = offset + length;
+        this.bitPosition = offset * 8;
+    }
+
+    boolean isExhausted() {
+        return bitPosition > end * 8;
+    }
+
+    int readBit() {
+        int byteIndex = bitPosition >> 3;
+        int bit = byteIndex < end ? (data[byteIndex] >> (7 - (bitPosition & 7))) & 1 : 0;
+        bitPosition += 1;
+        return bit;
+    }
+
+    // up to 32 bits
+    int readBits(int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 1) | readBit();
+        }
+        return value;
+    }
+
+    void skipBits(int count) {
+        bitPosition += count;
+    }
+
+    // exp-golomb ue(v)
+    int readUnsignedExpGolomb() {
+        int leadingZeros = 0;
+        while (readBit() == 0) {
+            if (++leadingZeros > 31 || isExhausted()) {
+                return 0;
+            }
+        }
+        return (int) ((1L << leadingZeros) - 1 + readBits(leadingZeros));
+    }
+
+    // exp-golomb se(v)
+    int readSignedExpGolomb() {
+        int code = readUnsignedExpGolomb();
+        return (code & 1) == 1 ? (code + 1) / 2 : -(code / 2);
+    }
+}
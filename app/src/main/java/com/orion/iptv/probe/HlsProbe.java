@@ -0,0 +1,142 @@
+package com.orion.iptv.probe;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.util.MimeTypes;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// HLS 主播放列表：取码率最高的 variant 的 BANDWIDTH/RESOLUTION/CODECS
+public class HlsProbe {
+    private static final String StreamInfTag = "#EXT-X-STREAM-INF:";
+    private static final Pattern Attribute = Pattern.compile("([A-Z0-9-]+)=(\"[^\"]*\"|[^,]*)");
+
+    private HlsProbe() {
+    }
+
+    public static boolean isPlaylist(String text) {
+        return text.startsWith("#EXTM3U") || text.startsWith("\uFEFF#EXTM3U");
+    }
+
+    // null for a media playlist
+    @Nullable
+    public static MediaInfo parseMaster(String playlist) {
+        MediaInfo best = null;
+        for (String line : playlist.split("\n")) {
+            line = line.trim();
+            if (!line.startsWith(StreamInfTag)) {
+                continue;
+            }
+            MediaInfo variant = parseStreamInf(line.substring(StreamInfTag.length()));
+            if (best == null || variant.bitrate > best.bitrate) {
+                best = variant;
+            }
+        }
+        return best;
+    }
+
+    private static MediaInfo parseStreamInf(String attributes) {
+        long bandwidth = 0;
+        int width = 0;
+        int height = 0;
+        String videoMime = null;
+        String audioMime = null;
+        boolean tenBit = false;
+        Matcher matcher = Attribute.matcher(attributes);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String value = matcher.group(2);
+            if (value.startsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            switch (name) {
+                case "BANDWIDTH":
+                    bandwidth = parseLong(value);
+                    break;
+                case "RESOLUTION": {
+                    int x = value.toLowerCase(Locale.ROOT).indexOf('x');
+                    if (x > 0) {
+                        width = (int) parseLong(value.substring(0, x));
+                        height = (int) parseLong(value.substring(x + 1));
+                    }
+                    break;
+                }
+                case "CODECS":
+                    for (String codec : value.split(",")) {
+                        codec = codec.trim();
+                        String mime = mimeOf(codec);
+                        if (mime == null) {
+                            continue;
+                        }
+                        if (MimeTypes.isVideo(mime) && videoMime == null) {
+                            videoMime = mime;
+                            tenBit = isTenBit(codec);
+                        } else if (MimeTypes.isAudio(mime) && audioMime == null) {
+                            audioMime = mime;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new MediaInfo(MediaInfo.CONTAINER_HLS, videoMime, audioMime, width, height, tenBit, bandwidth);
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // rfc 6381 codec strings
+    @Nullable
+    static String mimeOf(String codec) {
+        int dot = codec.indexOf('.');
+        String fourcc = (dot > 0 ? codec.substring(0, dot) : codec).toLowerCase(Locale.ROOT);
+        switch (fourcc) {
+            case "avc1":
+            case "avc3":
+                return MimeTypes.VIDEO_H264;
+            case "hvc1":
+            case "hev1":
+                return MimeTypes.VIDEO_H265;
+            case "vp09":
+                return MimeTypes.VIDEO_VP9;
+            case "av01":
+                return MimeTypes.VIDEO_AV1;
+            case "mp4a":
+                return codec.startsWith("mp4a.40.34") ? MimeTypes.AUDIO_MPEG : MimeTypes.AUDIO_AAC;
+            case "ac-3":
+                return MimeTypes.AUDIO_AC3;
+            case "ec-3":
+                return MimeTypes.AUDIO_E_AC3;
+            case "opus":
+                return MimeTypes.AUDIO_OPUS;
+            default:
+                return null;
+        }
+    }
+
+    // hvc1.2.x is main 10, vp09.02 is profile 2
+    private static boolean isTenBit(String codec) {
+        String lower = codec.toLowerCase(Locale.ROOT);
+        return lower.startsWith("hvc1.2.") || lower.startsWith("hev1.2.") || lower.startsWith("vp09.02");
+    }
+
+    // first uri of a media playlist, null when there is none
+    @Nullable
+    public static String firstMediaUri(String playlist) {
+        for (String line : playlist.split("\n")) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                return trimmed;
+            }
+        }
+        return null;
+    }
+}
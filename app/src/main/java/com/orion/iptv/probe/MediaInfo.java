@@ -0,0 +1,65 @@
+package com.orion.iptv.probe;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Locale;
+
+// 探测到的线路信息，未知的字段为 null 或 0
+public class MediaInfo {
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({CONTAINER_TS, CONTAINER_HLS})
+    public @interface Container {}
+    public static final int CONTAINER_TS = 0;
+    public static final int CONTAINER_HLS = 1;
+
+    public final @Container int container;
+    @Nullable
+    public final String videoMime;
+    @Nullable
+    public final String audioMime;
+    public final int width;
+    public final int height;
+    public final boolean tenBit;
+    // bits per second, from the pcr of a ts stream or the BANDWIDTH of a hls variant
+    public final long bitrate;
+
+    public MediaInfo(@Container int container, @Nullable String videoMime, @Nullable String audioMime,
+                     int width, int height, boolean tenBit, long bitrate) {
+        this.container = container;
+        this.videoMime = videoMime;
+        this.audioMime = audioMime;
+        this.width = width;
+        this.height = height;
+        this.tenBit = tenBit;
+        this.bitrate = bitrate;
+    }
+
+    public MediaInfo withContainer(@Container int container) {
+        return new MediaInfo(container, videoMime, audioMime, width, height, tenBit, bitrate);
+    }
+
+    // video/avc -> avc
+    @Nullable
+    public String videoCodec() {
+        return videoMime != null ? videoMime.substring(videoMime.indexOf('/') + 1) : null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%s %dx%d video %s%s, audio %s, %d bps",
+                container == CONTAINER_HLS ? "hls" : "ts", width, height, videoMime, tenBit ? " 10 bit" : "", audioMime, bitrate);
+    }
+}
@@ -0,0 +1,196 @@
+package com.orion.iptv.probe;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.orion.iptv.network.DownloadHelper;
+import com.orion.iptv.network.RequestScheduler;
+import com.orion.player.ExtDataSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+// 起播前探测线路：ts 读开头几百 KB，hls 读主播放列表，媒体播放列表再读第一个分片；
+// 结果按链接缓存在内存里，probe 和回调都在主线程
+public class StreamProber {
+    private static final String TAG = "StreamProber";
+    // enough for a pmt, a key frame and a few pcr at 10 Mbps
+    private static final long ProbeBytes = 384 * 1024;
+    private static final long ProbeTimeoutMs = 10 * 1000;
+    private static final long MaxAgeMs = 6 * 3600 * 1000;
+    private static final int MaxEntries = 500;
+
+    public interface Listener {
+        void onProbed(String link, MediaInfo info);
+    }
+
+    private static class Entry {
+        final MediaInfo info;
+        final long probedAt;
+
+        Entry(MediaInfo info, long probedAt) {
+            this.info = info;
+            this.probedAt = probedAt;
+        }
+    }
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MaxEntries;
+        }
+    };
+    // links being probed and who waits for them
+    private static final Map<String, List<Listener>> pending = new HashMap<>();
+
+    private StreamProber() {
+    }
+
+    @Nullable
+    public static MediaInfo get(String link) {
+        Entry entry = cache.get(link);
+        if (entry == null || SystemClock.elapsedRealtime() - entry.probedAt > MaxAgeMs) {
+            return null;
+        }
+        return entry.info;
+    }
+
+    // listener may be null to only fill the cache, it is not called when probing fails
+    public static void probe(ExtDataSource dataSource, @Nullable Listener listener) {
+        String link = dataSource.getUri();
+        MediaInfo info = get(link);
+        if (info != null) {
+            if (listener != null) {
+                listener.onProbed(link, info);
+            }
+            return;
+        }
+        List<Listener> listeners = pending.get(link);
+        if (listeners != null) {
+            if (listener != null) {
+                listeners.add(listener);
+            }
+            return;
+        }
+        HttpUrl url = HttpUrl.parse(link);
+        if (url == null) {
+            return;
+        }
+        listeners = new ArrayList<>();
+        if (listener != null) {
+            listeners.add(listener);
+        }
+        pending.put(link, listeners);
+        enqueue(newRequest(url, dataSource), new ProbeCallback(link, dataSource, false));
+    }
+
+    private static void enqueue(Request request, Callback callback) {
+        Call call = DownloadHelper.newCall(request, RequestScheduler.PRIORITY_PREFETCH);
+        call.timeout().timeout(ProbeTimeoutMs, TimeUnit.MILLISECONDS);
+        call.enqueue(callback);
+    }
+
+    private static Request newRequest(HttpUrl url, ExtDataSource dataSource) {
+        Request.Builder builder = new Request.Builder().url(url);
+        ExtDataSource.Auth auth = dataSource.getAuth();
+        if (!auth.equals(ExtDataSource.NoAuth)) {
+            builder.header("Authorization", Credentials.basic(auth.username, auth.password));
+        }
+        for (Map.Entry<String, String> header : dataSource.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+
+    // any thread
+    private static void finish(String link, @Nullable MediaInfo info) {
+        handler.post(() -> {
+            List<Listener> listeners = pending.remove(link);
+            if (info == null) {
+                return;
+            }
+            Log.i(TAG, String.format(Locale.ENGLISH, "%s: %s", link, info));
+            cache.put(link, new Entry(info, SystemClock.elapsedRealtime()));
+            if (listeners != null) {
+                for (Listener listener : listeners) {
+                    listener.onProbed(link, info);
+                }
+            }
+        });
+    }
+
+    private static class ProbeCallback implements Callback {
+        private final String link;
+        private final ExtDataSource dataSource;
+        // the first segment of a hls media playlist
+        private final boolean segment;
+
+        ProbeCallback(String link, ExtDataSource dataSource, boolean segment) {
+            this.link = link;
+            this.dataSource = dataSource;
+            this.segment = segment;
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            Log.i(TAG, String.format(Locale.ENGLISH, "probe %s failed: %s", call.request().url(), e));
+            finish(link, null);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) {
+            try (ResponseBody body = response.body()) {
+                if (!response.isSuccessful() || body == null) {
+                    finish(link, null);
+                    return;
+                }
+                BufferedSource source = body.source();
+                source.request(ProbeBytes);
+                byte[] head = source.getBuffer().readByteArray(Math.min(source.getBuffer().size(), ProbeBytes));
+                String text = head.length > 0 && (head[0] == '#' || (head[0] & 0xff) == 0xef)
+                        ? new String(head, StandardCharsets.UTF_8) : "";
+                if (segment || !HlsProbe.isPlaylist(text)) {
+                    MediaInfo info = TsProbe.parse(head, head.length);
+                    finish(link, info != null && segment ? info.withContainer(MediaInfo.CONTAINER_HLS) : info);
+                    return;
+                }
+                MediaInfo info = HlsProbe.parseMaster(text);
+                if (info != null) {
+                    finish(link, info);
+                    return;
+                }
+                String uri = HlsProbe.firstMediaUri(text);
+                HttpUrl segmentUrl = uri != null ? response.request().url().resolve(uri) : null;
+                if (segmentUrl == null) {
+                    finish(link, null);
+                    return;
+                }
+                enqueue(newRequest(segmentUrl, dataSource), new ProbeCallback(link, dataSource, true));
+            } catch (IOException e) {
+                onFailure(call, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.orion.iptv.probe;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.util.MimeTypes;
+
+import java.io.ByteArrayOutputStream;
+
+// 从 TS 流开头解析 PAT/PMT 得到编码格式，从视频 PES 里的 SPS 或序列头得到分辨率，
+// 用 PCR 估算码率；只看开头几百 KB，不解码
+public class TsProbe {
+    private static final int PacketSize = 188;
+    private static final int SyncByte = 0x47;
+    private static final int PatPid = 0;
+    // payload kept of one video pes for the sps search, a key frame starts with it
+    private static final int MaxPesBytes = 512 * 1024;
+    private static final long PcrHz = 27_000_000L;
+
+    private TsProbe() {
+    }
+
+    // null when the data is not a ts stream or has no pmt
+    @Nullable
+    public static MediaInfo parse(byte[] data, int length) {
+        int start = findSync(data, length);
+        if (start < 0) {
+            return null;
+        }
+        int pmtPid = -1;
+        int pcrPid = -1;
+        int videoPid = -1;
+        int videoType = -1;
+        String videoMime = null;
+        String audioMime = null;
+        long firstPcr = -1;
+        long firstPcrOffset = 0;
+        long lastPcr = -1;
+        long lastPcrOffset = 0;
+        ByteArrayOutputStream video = new ByteArrayOutputStream();
+        VideoHeader header = null;
+        boolean started = false;
+
+        for (int offset = start; offset + PacketSize <= length; offset += PacketSize) {
+            if ((data[offset] & 0xff) != SyncByte) {
+                // lost sync, e.g. a truncated packet in the middle
+                int next = findSync(data, offset, length);
+                if (next < 0) {
+                    break;
+                }
+                offset = next - PacketSize;
+                continue;
+            }
+            boolean unitStart = (data[offset + 1] & 0x40) != 0;
+            int pid = ((data[offset + 1] & 0x1f) << 8) | (data[offset + 2] & 0xff);
+            int adaptation = (data[offset + 3] >> 4) & 0x3;
+            int payload = offset + 4;
+            if ((adaptation & 0x2) != 0) {
+                int adaptationLength = data[offset + 4] & 0xff;
+                if (pid == pcrPid && adaptationLength >= 7 && (data[offset + 5] & 0x10) != 0) {
+                    long pcr = readPcr(data, offset + 6);
+                    if (firstPcr < 0) {
+                        firstPcr = pcr;
+                        firstPcrOffset = offset;
+                    }
+                    lastPcr = pcr;
+                    lastPcrOffset = offset;
+                }
+                payload += 1 + adaptationLength;
+            }
+            int end = offset + PacketSize;
+            if ((adaptation & 0x1) == 0 || payload >= end) {
+                continue;
+            }
+            if (pid == PatPid && pmtPid < 0 && unitStart) {
+                pmtPid = parsePat(data, payload, end);
+            } else if (pid == pmtPid && videoPid < 0 && audioMime == null && unitStart) {
+                int[] pids = new int[2];
+                String[] mimes = new String[2];
+                if (parsePmt(data, payload, end, pids, mimes)) {
+                    pcrPid = pids[0];
+                    videoPid = pids[1];
+                    videoMime = mimes[0];
+                    audioMime = mimes[1];
+                    videoType = videoPid >= 0 ? streamTypeOf(videoMime) : -1;
+                }
+            } else if (pid == videoPid && header == null) {
+                if (unitStart) {
+                    // the previous pes is complete
+                    if (video.size() > 0) {
+                        header = findVideoHeader(video.toByteArray(), videoType, true);
+                        video.reset();
+                    }
+                    payload = skipPesHeader(data, payload, end);
+                    started = true;
+                }
+                // nothing before the first pes start is usable
+                if (started && payload < end && video.size() < MaxPesBytes) {
+                    video.write(data, payload, end - payload);
+                }
+            }
+        }
+        if (header == null && video.size() > 0) {
+            header = findVideoHeader(video.toByteArray(), videoType, false);
+        }
+        if (pmtPid < 0 || (videoMime == null && audioMime == null)) {
+            return null;
+        }
+        long bitrate = 0;
+        if (firstPcr >= 0 && lastPcr > firstPcr) {
+            bitrate = (lastPcrOffset - firstPcrOffset) * 8 * PcrHz / (lastPcr - firstPcr);
+        }
+        return new MediaInfo(MediaInfo.CONTAINER_TS, videoMime, audioMime,
+                header != null ? header.width : 0, header != null ? header.height : 0,
+                header != null && header.tenBit, bitrate);
+    }
+
+    private static int findSync(byte[] data, int length) {
+        return findSync(data, 0, length);
+    }
+
+    // three sync bytes one packet apart
+    private static int findSync(byte[] data, int from, int length) {
+        for (int i = from; i + 2 * PacketSize < length; i++) {
+            if ((data[i] & 0xff) == SyncByte && (data[i + PacketSize] & 0xff) == SyncByte && (data[i + 2 * PacketSize] & 0xff) == SyncByte) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 27 MHz, base * 300 + extension
+    private static long readPcr(byte[] data, int offset) {
+        long base = ((long) (data[offset] & 0xff) << 25)
+                | ((data[offset + 1] & 0xff) << 17)
+                | ((data[offset + 2] & 0xff) << 9)
+                | ((data[offset + 3] & 0xff) << 1)
+                | ((data[offset + 4] & 0xff) >> 7);
+        int extension = ((data[offset + 4] & 0x1) << 8) | (data[offset + 5] & 0xff);
+        return base * 300 + extension;
+    }
+
+    // pid of the first program, sections are assumed to fit in one packet
+    private static int parsePat(byte[] data, int payload, int end) {
+        int section = payload + 1 + (data[payload] & 0xff);
+        if (section + 8 > end || (data[section] & 0xff) != 0x00) {
+            return -1;
+        }
+        int sectionEnd = Math.min(end, section + 3 + (((data[section + 1] & 0x0f) << 8) | (data[section + 2] & 0xff)) - 4);
+        for (int i = section + 8; i + 4 <= sectionEnd; i += 4) {
+            int program = ((data[i] & 0xff) << 8) | (data[i + 1] & 0xff);
+            if (program != 0) {
+                return ((data[i + 2] & 0x1f) << 8) | (data[i + 3] & 0xff);
+            }
+        }
+        return -1;
+    }
+
+    // pids = {pcr pid, video pid}, mimes = {video, audio}; first video and first audio stream only
+    private static boolean parsePmt(byte[] data, int payload, int end, int[] pids, String[] mimes) {
+        int section = payload + 1 + (data[payload] & 0xff);
+        if (section + 12 > end || (data[section] & 0xff) != 0x02) {
+            return false;
+        }
+        int sectionEnd = Math.min(end, section + 3 + (((data[section + 1] & 0x0f) << 8) | (data[section + 2] & 0xff)) - 4);
+        pids[0] = ((data[section + 8] & 0x1f) << 8) | (data[section + 9] & 0xff);
+        pids[1] = -1;
+        int programInfoLength = ((data[section + 10] & 0x0f) << 8) | (data[section + 11] & 0xff);
+        for (int i = section + 12 + programInfoLength; i + 5 <= sectionEnd; ) {
+            int streamType = data[i] & 0xff;
+            int pid = ((data[i + 1] & 0x1f) << 8) | (data[i + 2] & 0xff);
+            int infoLength = ((data[i + 3] & 0x0f) << 8) | (data[i + 4] & 0xff);
+            String mime = mimeOf(streamType, data, i + 5, Math.min(sectionEnd, i + 5 + infoLength));
+            if (mime != null && MimeTypes.isVideo(mime) && mimes[0] == null) {
+                mimes[0] = mime;
+                pids[1] = pid;
+            } else if (mime != null && MimeTypes.isAudio(mime) && mimes[1] == null) {
+                mimes[1] = mime;
+            }
+            i += 5 + infoLength;
+        }
+        return true;
+    }
+
+    @Nullable
+    private static String mimeOf(int streamType, byte[] data, int descriptors, int end) {
+        switch (streamType) {
+            case 0x01:
+            case 0x02:
+                return MimeTypes.VIDEO_MPEG2;
+            case 0x10:
+                return MimeTypes.VIDEO_MP4V;
+            case 0x1b:
+                return MimeTypes.VIDEO_H264;
+            case 0x24:
+                return MimeTypes.VIDEO_H265;
+            case 0x03:
+            case 0x04:
+                return MimeTypes.AUDIO_MPEG;
+            case 0x0f:
+            case 0x11:
+                return MimeTypes.AUDIO_AAC;
+            case 0x81:
+                return MimeTypes.AUDIO_AC3;
+            case 0x87:
+                return MimeTypes.AUDIO_E_AC3;
+            case 0x06:
+                // private data, dvb carries ac3, eac3 and dts this way
+                for (int i = descriptors; i + 2 <= end; i += 2 + (data[i + 1] & 0xff)) {
+                    switch (data[i] & 0xff) {
+                        case 0x6a:
+                            return MimeTypes.AUDIO_AC3;
+                        case 0x7a:
+                            return MimeTypes.AUDIO_E_AC3;
+                        case 0x7b:
+                            return MimeTypes.AUDIO_DTS;
+                    }
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static int streamTypeOf(@Nullable String videoMime) {
+        if (MimeTypes.VIDEO_H264.equals(videoMime)) {
+            return 0x1b;
+        }
+        if (MimeTypes.VIDEO_H265.equals(videoMime)) {
+            return 0x24;
+        }
+        if (MimeTypes.VIDEO_MPEG2.equals(videoMime)) {
+            return 0x02;
+        }
+        return -1;
+    }
+
+    private static int skipPesHeader(byte[] data, int payload, int end) {
+        if (payload + 9 > end || data[payload] != 0 || data[payload + 1] != 0 || data[payload + 2] != 1) {
+            return end;
+        }
+        return payload + 9 + (data[payload + 8] & 0xff);
+    }
+
+    static class VideoHeader {
+        final int width;
+        final int height;
+        final boolean tenBit;
+
+        VideoHeader(int width, int height, boolean tenBit) {
+            this.width = width;
+            this.height = height;
+            this.tenBit = tenBit;
+        }
+    }
+
+    // complete: es is a whole pes, the last unit ends with it
+    @Nullable
+    static VideoHeader findVideoHeader(byte[] es, int streamType, boolean complete) {
+        for (int i = 0; i + 4 < es.length; i++) {
+            if (es[i] != 0 || es[i + 1] != 0 || es[i + 2] != 1) {
+                continue;
+            }
+            int nal = i + 3;
+            int next = nextStartCode(es, nal);
+            if (next < 0) {
+                if (!complete) {
+                    // the unit may continue in the next packet
+                    return null;
+                }
+                next = es.length;
+            }
+            switch (streamType) {
+                case 0x1b:
+                    if ((es[nal] & 0x1f) == 7) {
+                        return parseAvcSps(unescape(es, nal + 1, next));
+                    }
+                    break;
+                case 0x24:
+                    if (((es[nal] >> 1) & 0x3f) == 33) {
+                        return parseHevcSps(unescape(es, nal + 2, next));
+                    }
+                    break;
+                case 0x02:
+                    if ((es[nal] & 0xff) == 0xb3 && nal + 4 <= es.length) {
+                        int width = ((es[nal + 1] & 0xff) << 4) | ((es[nal + 2] & 0xff) >> 4);
+                        int height = ((es[nal + 2] & 0x0f) << 8) | (es[nal + 3] & 0xff);
+                        return new VideoHeader(width, height, false);
+                    }
+                    break;
+                default:
+                    return null;
+            }
+            i = next - 1;
+        }
+        return null;
+    }
+
+    private static int nextStartCode(byte[] es, int from) {
+        for (int i = from; i + 2 < es.length; i++) {
+            if (es[i] == 0 && es[i + 1] == 0 && es[i + 2] == 1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // drop the emulation prevention bytes, 00 00 03 -> 00 00
+    private static byte[] unescape(byte[] es, int from, int to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(to - from);
+        int zeros = 0;
+        for (int i = from; i < to; i++) {
+            int b = es[i] & 0xff;
+            if (zeros >= 2 && b == 3) {
+                zeros = 0;
+                continue;
+            }
+            zeros = b == 0 ? zeros + 1 : 0;
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+
+    @Nullable
+    static VideoHeader parseAvcSps(byte[] sps) {
+        BitReader reader = new BitReader(sps, 0, sps.length);
+        int profile = reader.readBits(8);
+        reader.skipBits(16); // constraint flags, level
+        reader.readUnsignedExpGolomb(); // seq_parameter_set_id
+        int chromaFormat = 1;
+        int bitDepth = 8;
+        if (profile == 100 || profile == 110 || profile == 122 || profile == 244 || profile == 44 || profile == 83
+                || profile == 86 || profile == 118 || profile == 128 || profile == 138 || profile == 139 || profile == 134 || profile == 135) {
+            chromaFormat = reader.readUnsignedExpGolomb();
+            if (chromaFormat == 3) {
+                reader.skipBits(1); // separate_colour_plane_flag
+            }
+            bitDepth = 8 + reader.readUnsignedExpGolomb();
+            reader.readUnsignedExpGolomb(); // bit_depth_chroma_minus8
+            reader.skipBits(1); // qpprime_y_zero_transform_bypass_flag
+            if (reader.readBit() == 1) {
+                int lists = chromaFormat != 3 ? 8 : 12;
+                for (int i = 0; i < lists; i++) {
+                    if (reader.readBit() == 1) {
+                        skipScalingList(reader, i < 6 ? 16 : 64);
+                    }
+                }
+            }
+        }
+        reader.readUnsignedExpGolomb(); // log2_max_frame_num_minus4
+        int pocType = reader.readUnsignedExpGolomb();
+        if (pocType == 0) {
+            reader.readUnsignedExpGolomb(); // log2_max_pic_order_cnt_lsb_minus4
+        } else if (pocType == 1) {
+            reader.skipBits(1); // delta_pic_order_always_zero_flag
+            reader.readSignedExpGolomb(); // offset_for_non_ref_pic
+            reader.readSignedExpGolomb(); // offset_for_top_to_bottom_field
+            int cycle = reader.readUnsignedExpGolomb();
+            for (int i = 0; i < cycle && !reader.isExhausted(); i++) {
+                reader.readSignedExpGolomb();
+            }
+        }
+        reader.readUnsignedExpGolomb(); // max_num_ref_frames
+        reader.skipBits(1); // gaps_in_frame_num_value_allowed_flag
+        int widthInMbs = reader.readUnsignedExpGolomb() + 1;
+        int heightInMapUnits = reader.readUnsignedExpGolomb() + 1;
+        int frameMbsOnly = reader.readBit();
+        if (frameMbsOnly == 0) {
+            reader.skipBits(1); // mb_adaptive_frame_field_flag
+        }
+        reader.skipBits(1); // direct_8x8_inference_flag
+        int width = widthInMbs * 16;
+        int height = (2 - frameMbsOnly) * heightInMapUnits * 16;
+        if (reader.readBit() == 1) {
+            int cropUnitX = chromaFormat == 0 ? 1 : (chromaFormat == 3 ? 1 : 2);
+            int cropUnitY = (chromaFormat == 1 ? 2 : 1) * (2 - frameMbsOnly);
+            width -= (reader.readUnsignedExpGolomb() + reader.readUnsignedExpGolomb()) * cropUnitX;
+            height -= (reader.readUnsignedExpGolomb() + reader.readUnsignedExpGolomb()) * cropUnitY;
+        }
+        if (reader.isExhausted() || width <= 0 || height <= 0) {
+            return null;
+        }
+        return new VideoHeader(width, height, bitDepth > 8);
+    }
+
+    private static void skipScalingList(BitReader reader, int size) {
+        int last = 8;
+        int next = 8;
+        for (int i = 0; i < size && !reader.isExhausted(); i++) {
+            if (next != 0) {
+                next = (last + reader.readSignedExpGolomb() + 256) % 256;
+            }
+            last = next == 0 ? last : next;
+        }
+    }
+
+    @Nullable
+    static VideoHeader parseHevcSps(byte[] sps) {
+        BitReader reader = new BitReader(sps, 0, sps.length);
+        reader.skipBits(4); // sps_video_parameter_set_id
+        int maxSubLayersMinus1 = reader.readBits(3);
+        reader.skipBits(1); // sps_temporal_id_nesting_flag
+        // profile_tier_level
+        reader.skipBits(3); // general_profile_space, general_tier_flag
+        int profile = reader.readBits(5);
+        reader.skipBits(32 + 48 + 8); // compatibility flags, constraint flags, general_level_idc
+        boolean[] subLayerProfile = new boolean[maxSubLayersMinus1];
+        boolean[] subLayerLevel = new boolean[maxSubLayersMinus1];
+        for (int i = 0; i < maxSubLayersMinus1; i++) {
+            subLayerProfile[i] = reader.readBit() == 1;
+            subLayerLevel[i] = reader.readBit() == 1;
+        }
+        if (maxSubLayersMinus1 > 0) {
+            reader.skipBits(2 * (8 - maxSubLayersMinus1));
+        }
+        for (int i = 0; i < maxSubLayersMinus1; i++) {
+            reader.skipBits((subLayerProfile[i] ? 88 : 0) + (subLayerLevel[i] ? 8 : 0));
+        }
+        reader.readUnsignedExpGolomb(); // sps_seq_parameter_set_id
+        int chromaFormat = reader.readUnsignedExpGolomb();
+        if (chromaFormat == 3) {
+            reader.skipBits(1); // separate_colour_plane_flag
+        }
+        int width = reader.readUnsignedExpGolomb();
+        int height = reader.readUnsignedExpGolomb();
+        if (reader.readBit() == 1) {
+            int subWidth = chromaFormat == 1 || chromaFormat == 2 ? 2 : 1;
+            int subHeight = chromaFormat == 1 ? 2 : 1;
+            width -= (reader.readUnsignedExpGolomb() + reader.readUnsignedExpGolomb()) * subWidth;
+            height -= (reader.readUnsignedExpGolomb() + reader.readUnsignedExpGolomb()) * subHeight;
+        }
+        int bitDepth = 8 + reader.readUnsignedExpGolomb();
+        if (reader.isExhausted() || width <= 0 || height <= 0) {
+            return null;
+        }
+        // profile 2 is main 10
+        return new VideoHeader(width, height, profile == 2 || bitDepth > 8);
+    }
+}
@@ -0,0 +1,400 @@
+package com.orion.iptv.record;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.orion.iptv.network.DownloadHelper;
+import com.orion.player.ExtDataSource;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+// 不解码，直接把 ts 流或者 hls 分片按顺序追加写入文件；一个录制一个线程
+class Recorder implements Runnable {
+    private static final String TAG = "Recorder";
+    private static final int WriteBufferSize = 256 * 1024;
+    private static final int MaxReconnects = 3;
+    private static final long ReconnectDelayMs = 1000;
+    // stop before the disk is full, other apps need space too
+    private static final long MinFreeBytes = 256 * 1024 * 1024;
+    private static final long FreeSpaceCheckBytes = 16 * 1024 * 1024;
+    // segments taken from a live playlist on the first load
+    private static final int LiveStartSegments = 2;
+
+    interface Listener {
+        // called on the recording thread
+        void onFinished(Recording recording);
+    }
+
+    private final Recording recording;
+    // sent with the playlist and every segment, as the player does
+    private final Map<String, String> headers;
+    private final ExtDataSource.Auth auth;
+    private final Listener listener;
+    private final OkHttpClient client;
+    // reused for every read of this recording, the file channel writes from it without another copy
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(WriteBufferSize);
+    private volatile boolean cancelled = false;
+    @Nullable
+    private volatile Call call;
+    private long throttleStartedAt = 0;
+    private long throttledBytes = 0;
+    private long nextFreeSpaceCheck = 0;
+
+    Recorder(Recording recording, Map<String, String> headers, ExtDataSource.Auth auth, Listener listener) {
+        this.recording = recording;
+        this.headers = headers;
+        this.auth = auth;
+        this.listener = listener;
+        // a live stream never completes, only stalls are fatal
+        this.client = DownloadHelper.getClient().newBuilder()
+                .callTimeout(0, TimeUnit.MILLISECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .build();
+    }
+
+    void cancel() {
+        cancelled = true;
+        Call current = call;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    @Override
+    public void run() {
+        recording.setState(Recording.STATE_RECORDING);
+        Log.i(TAG, String.format(Locale.ENGLISH, "record %s to %s", recording.link, recording.file));
+        @Recording.State int state;
+        try (FileOutputStream out = new FileOutputStream(recording.file, true);
+             FileChannel channel = out.getChannel()) {
+            if (isHls(recording.link)) {
+                recordHls(channel);
+            } else {
+                recordStream(channel);
+            }
+            state = cancelled ? Recording.STATE_CANCELLED : Recording.STATE_DONE;
+        } catch (IOException e) {
+            Log.w(TAG, String.format(Locale.ENGLISH, "record %s failed: %s", recording.link, e));
+            state = cancelled ? Recording.STATE_CANCELLED : Recording.STATE_FAILED;
+        } catch (InterruptedException e) {
+            state = Recording.STATE_CANCELLED;
+        } catch (RuntimeException e) {
+            // a bad link or url must still finish the recording, or the service stays in the foreground
+            Log.e(TAG, String.format(Locale.ENGLISH, "record %s failed: %s", recording.link, e));
+            state = Recording.STATE_FAILED;
+        }
+        recording.setState(state);
+        Log.i(TAG, String.format(Locale.ENGLISH, "record %s finished, state: %d, bytes: %d", recording.link, state, recording.getBytesWritten()));
+        listener.onFinished(recording);
+    }
+
+    private static boolean isHls(String link) {
+        HttpUrl url = HttpUrl.parse(link);
+        return url != null && url.encodedPath().toLowerCase(Locale.ROOT).endsWith(".m3u8");
+    }
+
+    private boolean shouldStop() {
+        return cancelled
+                || System.currentTimeMillis() >= recording.endMs
+                || recording.getBytesWritten() >= recording.maxBytes;
+    }
+
+    private Response execute(String url) throws IOException {
+        Request.Builder builder = new Request.Builder().url(url);
+        if (!auth.equals(ExtDataSource.NoAuth)) {
+            builder.header("Authorization", Credentials.basic(auth.username, auth.password));
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        Call current = client.newCall(builder.build());
+        call = current;
+        if (cancelled) {
+            current.cancel();
+        }
+        Response response = current.execute();
+        if (!response.isSuccessful() || response.body() == null) {
+            response.close();
+            throw new IOException("unexpected response code: " + response.code());
+        }
+        return response;
+    }
+
+    private void recordStream(FileChannel file) throws IOException, InterruptedException {
+        int failures = 0;
+        while (!shouldStop() && failures <= MaxReconnects) {
+            try (Response response = execute(recording.link)) {
+                ResponseBody body = response.body();
+                assert body != null;
+                long before = recording.getBytesWritten();
+                append(body, file);
+                if (recording.getBytesWritten() > before) {
+                    failures = 0;
+                }
+            } catch (IOException e) {
+                if (cancelled) {
+                    return;
+                }
+                Log.w(TAG, "stream interrupted: " + e);
+            }
+            failures += 1;
+            if (!shouldStop() && failures <= MaxReconnects) {
+                Thread.sleep(ReconnectDelayMs);
+            }
+        }
+        if (failures > MaxReconnects) {
+            throw new IOException("upstream lost");
+        }
+    }
+
+    private void recordHls(FileChannel file) throws IOException, InterruptedException {
+        String playlistUrl = recording.link;
+        long lastSequence = -1;
+        String lastMap = null;
+        int failures = 0;
+        while (!shouldStop()) {
+            MediaPlaylist playlist;
+            try {
+                playlist = loadPlaylist(playlistUrl);
+            } catch (IOException e) {
+                if (cancelled || ++failures > MaxReconnects) {
+                    throw e;
+                }
+                Log.w(TAG, "load playlist failed: " + e);
+                Thread.sleep(ReconnectDelayMs);
+                continue;
+            }
+            if (playlist.variant != null) {
+                playlistUrl = playlist.variant;
+                continue;
+            }
+            failures = 0;
+            int first = 0;
+            if (lastSequence < 0 && !playlist.ended) {
+                // start close to the live edge
+                first = Math.max(0, playlist.segments.size() - LiveStartSegments);
+            }
+            for (int i = first; i < playlist.segments.size() && !shouldStop(); i++) {
+                long sequence = playlist.mediaSequence + i;
+                if (sequence <= lastSequence) {
+                    continue;
+                }
+                Segment segment = playlist.segments.get(i);
+                // fmp4 needs its init section once before the fragments, again only if it changes
+                if (segment.map != null && !segment.map.equals(lastMap)) {
+                    appendUrl(segment.map, file);
+                    lastMap = segment.map;
+                }
+                appendUrl(segment.url, file);
+                lastSequence = sequence;
+            }
+            if (playlist.ended) {
+                return;
+            }
+            Thread.sleep(Math.max(1000, playlist.targetDurationMs / 2));
+        }
+    }
+
+    // a missing segment leaves a gap in the recording rather than ending it
+    private void appendUrl(String url, FileChannel file) throws IOException {
+        try (Response response = execute(url)) {
+            ResponseBody body = response.body();
+            assert body != null;
+            append(body, file);
+        } catch (IOException e) {
+            if (cancelled) {
+                throw e;
+            }
+            Log.w(TAG, String.format(Locale.ENGLISH, "skip segment %s: %s", url, e));
+        }
+    }
+
+    private void append(ResponseBody body, FileChannel file) throws IOException {
+        try (ReadableByteChannel source = Channels.newChannel(body.byteStream())) {
+            while (!shouldStop()) {
+                buffer.clear();
+                long left = recording.maxBytes - recording.getBytesWritten();
+                if (left < buffer.capacity()) {
+                    buffer.limit((int) left);
+                }
+                if (source.read(buffer) < 0) {
+                    return;
+                }
+                buffer.flip();
+                int count = buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    file.write(buffer);
+                }
+                recording.addBytesWritten(count);
+                checkFreeSpace();
+                throttle(count);
+            }
+        }
+    }
+
+    private void checkFreeSpace() throws IOException {
+        long written = recording.getBytesWritten();
+        if (written < nextFreeSpaceCheck) {
+            return;
+        }
+        nextFreeSpaceCheck = written + FreeSpaceCheckBytes;
+        if (recording.file.getUsableSpace() < MinFreeBytes) {
+            throw new IOException("disk almost full");
+        }
+    }
+
+    // sleeping stops reading, tcp flow control then slows the server down
+    private void throttle(int count) throws IOException {
+        if (recording.maxBytesPerSecond <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (throttleStartedAt == 0) {
+            throttleStartedAt = now;
+        }
+        throttledBytes += count;
+        long aheadMs = throttledBytes * 1000 / recording.maxBytesPerSecond - (now - throttleStartedAt);
+        if (aheadMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(aheadMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static class Segment {
+        final String url;
+        @Nullable
+        final String map;
+
+        Segment(String url, @Nullable String map) {
+            this.url = url;
+            this.map = map;
+        }
+    }
+
+    private static class MediaPlaylist {
+        // set for a master playlist, the variant to record
+        @Nullable
+        String variant;
+        long mediaSequence = 0;
+        long targetDurationMs = 6000;
+        boolean ended = false;
+        final List<Segment> segments = new ArrayList<>();
+    }
+
+    private MediaPlaylist loadPlaylist(String url) throws IOException {
+        String text;
+        HttpUrl base;
+        try (Response response = execute(url)) {
+            ResponseBody body = response.body();
+            assert body != null;
+            text = body.string();
+            // follow redirects, segments are relative to the final url
+            base = response.request().url();
+        }
+        if (!text.startsWith("#EXTM3U")) {
+            throw new IOException("not a hls playlist");
+        }
+        MediaPlaylist playlist = new MediaPlaylist();
+        boolean master = text.contains("#EXT-X-STREAM-INF");
+        long bestBandwidth = -1;
+        long pendingBandwidth = 0;
+        String map = null;
+        for (String rawLine : text.split("\n")) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("#EXT-X-STREAM-INF")) {
+                pendingBandwidth = parseLong(attribute(line, "BANDWIDTH"), 0);
+            } else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                playlist.mediaSequence = parseLong(line.substring("#EXT-X-MEDIA-SEQUENCE:".length()), 0);
+            } else if (line.startsWith("#EXT-X-TARGETDURATION:")) {
+                playlist.targetDurationMs = parseLong(line.substring("#EXT-X-TARGETDURATION:".length()), 6) * 1000;
+            } else if (line.startsWith("#EXT-X-ENDLIST")) {
+                playlist.ended = true;
+            } else if (line.startsWith("#EXT-X-KEY")) {
+                String method = attribute(line, "METHOD");
+                if (method != null && !method.equals("NONE")) {
+                    // the key would have to be recorded as well, the file is useless without it
+                    throw new IOException("encrypted hls can't be recorded");
+                }
+            } else if (line.startsWith("#EXT-X-MAP")) {
+                String uri = attribute(line, "URI");
+                HttpUrl resolved = uri != null ? base.resolve(uri) : null;
+                map = resolved != null ? resolved.toString() : null;
+            } else if (!line.startsWith("#")) {
+                HttpUrl resolved = base.resolve(line);
+                if (resolved == null) {
+                    continue;
+                }
+                if (master) {
+                    // record the best variant, the budget limits it if needed
+                    if (pendingBandwidth > bestBandwidth) {
+                        bestBandwidth = pendingBandwidth;
+                        playlist.variant = resolved.toString();
+                    }
+                } else {
+                    playlist.segments.add(new Segment(resolved.toString(), map));
+                }
+            }
+        }
+        if (master && playlist.variant == null) {
+            throw new IOException("no variant in master playlist");
+        }
+        return playlist;
+    }
+
+    @Nullable
+    private static String attribute(String line, String name) {
+        // BANDWIDTH must not match AVERAGE-BANDWIDTH
+        int start = line.indexOf(":" + name + "=");
+        if (start < 0) {
+            start = line.indexOf("," + name + "=");
+        }
+        if (start < 0) {
+            return null;
+        }
+        start += name.length() + 2;
+        if (start < line.length() && line.charAt(start) == '"') {
+            int end = line.indexOf('"', start + 1);
+            return end > start ? line.substring(start + 1, end) : null;
+        }
+        int end = line.indexOf(',', start);
+        return line.substring(start, end < 0 ? line.length() : end);
+    }
+
+    private static long parseLong(@Nullable String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
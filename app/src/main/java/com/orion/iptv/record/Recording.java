@@ -0,0 +1,88 @@
+package com.orion.iptv.record;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import androidx.annotation.IntDef;
+
+import java.io.File;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Locale;
+
+// 一次录制：频道、时间段、磁盘和带宽预算，以及录制进度
+public class Recording {
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({STATE_SCHEDULED, STATE_RECORDING, STATE_DONE, STATE_FAILED, STATE_CANCELLED})
+    public @interface State {}
+    public static final int STATE_SCHEDULED = 0;
+    public static final int STATE_RECORDING = 1;
+    public static final int STATE_DONE = 2;
+    public static final int STATE_FAILED = 3;
+    public static final int STATE_CANCELLED = 4;
+
+    // {disk MB, bandwidth Mbps}, 0 bandwidth is unlimited
+    public static final int[][] Budgets = {{1024, 8}, {2048, 16}, {4096, 32}, {8192, 0}};
+    public static final int DEFAULT_BUDGET = 1;
+
+    public final String id;
+    public final String name;
+    public final String link;
+    public final long startMs;
+    public final long endMs;
+    public final long maxBytes;
+    public final long maxBytesPerSecond;
+    public final File file;
+    private volatile int state = STATE_SCHEDULED;
+    private volatile long bytesWritten = 0;
+
+    public Recording(String name, String link, long startMs, long endMs, long maxBytes, long maxBytesPerSecond, File file) {
+        this.id = newId(link, startMs);
+        this.name = name;
+        this.link = link;
+        this.startMs = startMs;
+        this.endMs = endMs;
+        this.maxBytes = maxBytes;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.file = file;
+    }
+
+    public static String newId(String link, long startMs) {
+        return String.format(Locale.ENGLISH, "%d@%s", startMs, link);
+    }
+
+    public static long getMaxBytes(int budget) {
+        return (long) Budgets[budget][0] * 1024 * 1024;
+    }
+
+    public static long getMaxBytesPerSecond(int budget) {
+        return (long) Budgets[budget][1] * 1000 * 1000 / 8;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    void setState(@State int state) {
+        this.state = state;
+    }
+
+    public boolean isFinished() {
+        return state >= STATE_DONE;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    void addBytesWritten(long bytes) {
+        bytesWritten += bytes;
+    }
+}
@@ -0,0 +1,314 @@
+package com.orion.iptv.record;
+
+import android.app.AlarmManager;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.orion.iptv.R;
+import com.orion.player.ExtDataSource;
+
+import java.io.File;
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.HttpUrl;
+
+// 前台服务，录制不跟随 Activity 的生命周期；每个录制请求是一个 start intent，
+// 进程被杀后系统重新投递还没结束的请求；预约的录制由精确闹钟唤醒开始，doze 时也能准时
+public class RecordingService extends Service {
+    private static final String TAG = "RecordingService";
+    private static final String ACTION_RECORD = "com.orion.iptv.record.RECORD";
+    private static final String ACTION_CANCEL = "com.orion.iptv.record.CANCEL";
+    // from the alarm of a scheduled recording
+    private static final String ACTION_BEGIN = "com.orion.iptv.record.BEGIN";
+    private static final String EXTRA_ID = "id";
+    private static final String EXTRA_NAME = "name";
+    private static final String EXTRA_LINK = "link";
+    private static final String EXTRA_HEADERS = "headers";
+    private static final String EXTRA_USERNAME = "username";
+    private static final String EXTRA_PASSWORD = "password";
+    private static final String EXTRA_START = "start";
+    private static final String EXTRA_END = "end";
+    private static final String EXTRA_MAX_BYTES = "max_bytes";
+    private static final String EXTRA_MAX_BYTES_PER_SECOND = "max_bytes_per_second";
+    private static final String ChannelId = "recording";
+    private static final int NotificationId = 0x5245;
+    private static final String RecordingsDir = "recordings";
+
+    // shared with the ui, same process
+    private static final Map<String, Recording> recordings = new LinkedHashMap<>();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Recorder> recorders = new HashMap<>();
+    private final Map<String, Runnable> scheduled = new HashMap<>();
+    private final Map<String, PendingIntent> alarms = new HashMap<>();
+    private final Map<String, Integer> startIds = new HashMap<>();
+
+    // headers and auth of the data source go with every request of the recording
+    public static void record(Context context, String name, ExtDataSource dataSource, long startMs, long endMs, int budget) {
+        Intent intent = new Intent(context, RecordingService.class)
+                .setAction(ACTION_RECORD)
+                .putExtra(EXTRA_NAME, name)
+                .putExtra(EXTRA_LINK, dataSource.getUri())
+                .putExtra(EXTRA_HEADERS, new HashMap<>(dataSource.getHeaders()))
+                .putExtra(EXTRA_USERNAME, dataSource.getAuth().username)
+                .putExtra(EXTRA_PASSWORD, dataSource.getAuth().password)
+                .putExtra(EXTRA_START, startMs)
+                .putExtra(EXTRA_END, endMs)
+                .putExtra(EXTRA_MAX_BYTES, Recording.getMaxBytes(budget))
+                .putExtra(EXTRA_MAX_BYTES_PER_SECOND, Recording.getMaxBytesPerSecond(budget));
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    public static void cancel(Context context, String id) {
+        Intent intent = new Intent(context, RecordingService.class)
+                .setAction(ACTION_CANCEL)
+                .putExtra(EXTRA_ID, id);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    public static List<Recording> getRecordings() {
+        synchronized (recordings) {
+            return new ArrayList<>(recordings.values());
+        }
+    }
+
+    // only http(s) is fetched by the recorder, multicast and rtsp links can't be recorded
+    public static boolean isSupported(String link) {
+        return HttpUrl.parse(link) != null;
+    }
+
+    // scheduled or running recording of the link that covers the given time
+    @Nullable
+    public static Recording find(String link, long timeMs) {
+        synchronized (recordings) {
+            for (Recording recording : recordings.values()) {
+                if (recording.link.equals(link) && !recording.isFinished()
+                        && recording.startMs <= timeMs && timeMs < recording.endMs) {
+                    return recording;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public int onStartCommand(@Nullable Intent intent, int flags, int startId) {
+        // every startForegroundService must be answered with startForeground
+        startForeground(NotificationId, buildNotification());
+        if (intent == null) {
+            stopIfIdle();
+            return START_REDELIVER_INTENT;
+        }
+        if (ACTION_CANCEL.equals(intent.getAction())) {
+            cancelRecording(intent.getStringExtra(EXTRA_ID));
+            stopSelf(startId);
+        } else if (ACTION_RECORD.equals(intent.getAction())) {
+            schedule(intent, startId);
+        } else if (ACTION_BEGIN.equals(intent.getAction())) {
+            // the recording's own start id keeps the service, this one needs no answer
+            String id = intent.getStringExtra(EXTRA_ID);
+            Runnable begin = id != null ? scheduled.get(id) : null;
+            if (begin != null) {
+                begin.run();
+            }
+        } else {
+            stopSelf(startId);
+        }
+        stopIfIdle();
+        return START_REDELIVER_INTENT;
+    }
+
+    private void schedule(Intent intent, int startId) {
+        String name = intent.getStringExtra(EXTRA_NAME);
+        String link = intent.getStringExtra(EXTRA_LINK);
+        long startMs = intent.getLongExtra(EXTRA_START, 0);
+        long endMs = intent.getLongExtra(EXTRA_END, 0);
+        long now = System.currentTimeMillis();
+        String id = link != null ? Recording.newId(link, startMs) : null;
+        if (name == null || id == null || endMs <= now || startIds.containsKey(id)) {
+            stopSelf(startId);
+            return;
+        }
+        Recording recording = new Recording(name, link, startMs, endMs,
+                intent.getLongExtra(EXTRA_MAX_BYTES, Recording.getMaxBytes(Recording.DEFAULT_BUDGET)),
+                intent.getLongExtra(EXTRA_MAX_BYTES_PER_SECOND, 0),
+                newFile(name, Math.max(startMs, now)));
+        synchronized (recordings) {
+            recordings.put(id, recording);
+        }
+        startIds.put(id, startId);
+        Map<String, String> headers = readHeaders(intent);
+        String username = intent.getStringExtra(EXTRA_USERNAME);
+        String password = intent.getStringExtra(EXTRA_PASSWORD);
+        ExtDataSource.Auth auth = TextUtils.isEmpty(username) && TextUtils.isEmpty(password) ? ExtDataSource.NoAuth
+                : new ExtDataSource.Auth(username != null ? username : "", password != null ? password : "");
+        Runnable begin = () -> begin(recording, headers, auth);
+        scheduled.put(id, begin);
+        if (startMs <= now) {
+            begin.run();
+        } else {
+            setAlarm(id, startMs);
+        }
+        Log.i(TAG, String.format(Locale.ENGLISH, "schedule %s at %d", id, startMs));
+        updateNotification();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> readHeaders(Intent intent) {
+        Serializable headers = intent.getSerializableExtra(EXTRA_HEADERS);
+        return headers instanceof HashMap ? (HashMap<String, String>) headers : new HashMap<>();
+    }
+
+    // a delayed handler message sleeps through doze, the alarm wakes the device and starts the service
+    private void setAlarm(String id, long startMs) {
+        Intent intent = new Intent(this, RecordingService.class)
+                .setAction(ACTION_BEGIN)
+                .putExtra(EXTRA_ID, id);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE;
+        PendingIntent pendingIntent = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                ? PendingIntent.getForegroundService(this, id.hashCode(), intent, flags)
+                : PendingIntent.getService(this, id.hashCode(), intent, flags);
+        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+            // exact alarms revoked by the user, doze may start it a few minutes late
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, startMs, pendingIntent);
+        } else {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, startMs, pendingIntent);
+        }
+        alarms.put(id, pendingIntent);
+    }
+
+    private void cancelAlarm(String id) {
+        PendingIntent pendingIntent = alarms.remove(id);
+        if (pendingIntent != null) {
+            AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(pendingIntent);
+        }
+    }
+
+    private void begin(Recording recording, Map<String, String> headers, ExtDataSource.Auth auth) {
+        scheduled.remove(recording.id);
+        cancelAlarm(recording.id);
+        Recorder recorder = new Recorder(recording, headers, auth, finished -> handler.post(() -> onFinished(finished)));
+        recorders.put(recording.id, recorder);
+        executor.execute(recorder);
+        updateNotification();
+    }
+
+    private void onFinished(Recording recording) {
+        recorders.remove(recording.id);
+        Integer startId = startIds.remove(recording.id);
+        if (startId != null) {
+            stopSelf(startId);
+        }
+        updateNotification();
+        stopIfIdle();
+    }
+
+    private void cancelRecording(@Nullable String id) {
+        if (id == null) {
+            return;
+        }
+        Runnable begin = scheduled.remove(id);
+        if (begin != null) {
+            cancelAlarm(id);
+            Recording recording;
+            synchronized (recordings) {
+                recording = recordings.get(id);
+            }
+            if (recording != null) {
+                recording.setState(Recording.STATE_CANCELLED);
+                onFinished(recording);
+            }
+            return;
+        }
+        Recorder recorder = recorders.get(id);
+        if (recorder != null) {
+            // onFinished follows from the recording thread
+            recorder.cancel();
+        }
+    }
+
+    private void stopIfIdle() {
+        if (recorders.isEmpty() && scheduled.isEmpty()) {
+            stopForeground(true);
+            stopSelf();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        handler.removeCallbacksAndMessages(null);
+        for (String id : new ArrayList<>(alarms.keySet())) {
+            cancelAlarm(id);
+        }
+        for (Recorder recorder : recorders.values()) {
+            recorder.cancel();
+        }
+        executor.shutdownNow();
+        super.onDestroy();
+    }
+
+    // app specific storage, no permission needed
+    private File newFile(String name, long startMs) {
+        File root = getExternalFilesDir(Environment.DIRECTORY_MOVIES);
+        File dir = new File(root != null ? root : getFilesDir(), RecordingsDir);
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        String time = new SimpleDateFormat("yyyyMMdd-HHmm", Locale.ENGLISH).format(new Date(startMs));
+        String safeName = name.replaceAll("[\\\\/:*?\"<>|\\s]+", "_");
+        return new File(dir, String.format(Locale.ENGLISH, "%s-%s.ts", safeName, time));
+    }
+
+    private Notification buildNotification() {
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && manager.getNotificationChannel(ChannelId) == null) {
+            manager.createNotificationChannel(new NotificationChannel(ChannelId, getString(R.string.recording_channel), NotificationManager.IMPORTANCE_LOW));
+        }
+        return new NotificationCompat.Builder(this, ChannelId)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.recording_channel))
+                .setContentText(getString(R.string.recording_status, recorders.size(), scheduled.size()))
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .build();
+    }
+
+    private void updateNotification() {
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        manager.notify(NotificationId, buildNotification());
+    }
+}
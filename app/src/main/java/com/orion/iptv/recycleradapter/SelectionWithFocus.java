@@ -11,6 +11,11 @@ import java.util.List;
 public class SelectionWithFocus<T> extends DefaultSelection<T> {
     protected int lastFocused = RecyclerView.NO_POSITION;
     protected int curFocused = RecyclerView.NO_POSITION;
+    protected final List<OnFocusedListener<T>> focusedListeners = new ArrayList<>();
+
+    public interface OnFocusedListener<T> {
+        void onFocused(int position, T item);
+    }
 
     public SelectionWithFocus(RecyclerView recyclerView) {
         super(recyclerView);
@@ -65,6 +70,25 @@ public class SelectionWithFocus<T> extends DefaultSelection<T> {
     protected void focus(int position) {
         if (_focus(position)) {
             maybeNotifyFocusChanged();
+            maybeNotifyFocused(position);
+        }
+    }
+
+    public void addFocusedListener(OnFocusedListener<T> listener) {
+        focusedListeners.add(listener);
+    }
+
+    public void removeFocusedListener(OnFocusedListener<T> listener) {
+        focusedListeners.remove(listener);
+    }
+
+    protected void maybeNotifyFocused(int position) {
+        if (isPositionInvalid(position)) {
+            return;
+        }
+        T item = adapter.getItem(position);
+        for (OnFocusedListener<T> listener : focusedListeners) {
+            listener.onFocused(position, item);
         }
     }
 
@@ -0,0 +1,164 @@
+package com.orion.iptv.timeshift;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.orion.player.ExtDataSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+// 直播时移：暂停、回看、追到直播；只在主线程调用
+public class Timeshift {
+    private static final String TAG = "Timeshift";
+    private static final String BufferFileName = "timeshift.buffer";
+    // start this far behind the live edge when going back to live, so the player has data at once
+    private static final long LiveMarginMs = 1000;
+
+    private final File dir;
+    private long capacity = 0;
+    @Nullable
+    private TimeshiftBuffer buffer;
+    @Nullable
+    private TimeshiftRelay relay;
+    @Nullable
+    private ExtDataSource upstream;
+    @Nullable
+    private ExtDataSource current;
+    private long behindMs = 0;
+    // elapsedRealtime when paused, 0 if playing
+    private long pausedAt = 0;
+
+    public Timeshift(File dir) {
+        this.dir = dir;
+    }
+
+    // ts over http only, hls has its own window and files or rtsp are not live ts
+    public static boolean isSupported(ExtDataSource dataSource) {
+        Uri uri = Uri.parse(dataSource.getUri());
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        String path = uri.getPath() != null ? uri.getPath().toLowerCase(Locale.ROOT) : "";
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            return false;
+        }
+        return !path.endsWith(".m3u8") && !path.endsWith(".mp4") && !path.endsWith(".mkv");
+    }
+
+    // 0 disables timeshift, takes effect on the next start
+    public void setCapacity(long capacity) {
+        if (this.capacity == capacity) {
+            return;
+        }
+        stop();
+        this.capacity = capacity;
+        buffer = null;
+        if (capacity <= 0) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(dir, BufferFileName).delete();
+        }
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public boolean isActive() {
+        return relay != null;
+    }
+
+    // returns the data source the player should use, upstream itself if the relay can't start
+    public ExtDataSource start(ExtDataSource upstream) {
+        stop();
+        try {
+            if (buffer == null) {
+                buffer = new TimeshiftBuffer(new File(dir, BufferFileName), capacity);
+            }
+            relay = new TimeshiftRelay(buffer, upstream);
+            relay.startRelay();
+        } catch (IOException | OutOfMemoryError e) {
+            // mapping a large file may fail on 32 bit devices
+            Log.w(TAG, "start timeshift failed: " + e);
+            relay = null;
+            return upstream;
+        }
+        this.upstream = upstream;
+        current = newDataSource(0);
+        return current;
+    }
+
+    public void stop() {
+        if (relay != null) {
+            relay.stopRelay();
+            relay = null;
+        }
+        upstream = null;
+        current = null;
+        behindMs = 0;
+        pausedAt = 0;
+    }
+
+    // stats and failover are about the upstream link, not the local relay
+    @Nullable
+    public ExtDataSource unwrap(@Nullable ExtDataSource dataSource) {
+        return dataSource != null && dataSource == current ? upstream : dataSource;
+    }
+
+    public boolean isPaused() {
+        return pausedAt > 0;
+    }
+
+    public void pause() {
+        if (relay != null && pausedAt == 0) {
+            pausedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    // the player continues from where it paused, the delay grows by the paused time
+    public void resume() {
+        behindMs = getBehindMs();
+        pausedAt = 0;
+    }
+
+    public long getBehindMs() {
+        long behind = behindMs;
+        if (pausedAt > 0) {
+            behind += SystemClock.elapsedRealtime() - pausedAt;
+        }
+        return Math.min(behind, getMaxBehindMs());
+    }
+
+    private long getMaxBehindMs() {
+        if (buffer == null) {
+            return 0;
+        }
+        long oldest = buffer.getOldestTime();
+        return oldest < 0 ? 0 : SystemClock.elapsedRealtime() - oldest;
+    }
+
+    // positive delta goes back in time, returns the data source to play from, null if inactive
+    @Nullable
+    public ExtDataSource seek(long deltaMs) {
+        if (relay == null || buffer == null) {
+            return null;
+        }
+        long behind = Math.max(0, Math.min(getBehindMs() + deltaMs, getMaxBehindMs()));
+        behindMs = behind;
+        pausedAt = 0;
+        current = newDataSource(behind);
+        return current;
+    }
+
+    private ExtDataSource newDataSource(long behind) {
+        assert relay != null && buffer != null && upstream != null;
+        long time = SystemClock.elapsedRealtime() - Math.max(behind, LiveMarginMs);
+        long position = buffer.positionAt(time);
+        ExtDataSource dataSource = new ExtDataSource(relay.uriAt(position));
+        dataSource.setLowLatency(upstream.isLowLatency());
+        dataSource.setBufferProfile(upstream.getBufferProfile());
+        return dataSource;
+    }
+}
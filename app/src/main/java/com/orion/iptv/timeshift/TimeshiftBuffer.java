@@ -0,0 +1,187 @@
+package com.orion.iptv.timeshift;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// 定长的磁盘环形缓冲，mmap 到内存，写满后覆盖最旧的数据；
+// 位置都是从录制开始算起的绝对字节数，同时每隔一段时间记下写入位置，用于按时间回看
+public class TimeshiftBuffer {
+    private static final int TsPacketSize = 188;
+    private static final long IndexIntervalMs = 500;
+    // 4096 samples at 500ms cover more than half an hour
+    private static final int IndexSize = 4096;
+    // the writer overwrites the oldest data before it moves the write position,
+    // keep readers this far away from it; writes must be smaller than this
+    public static final int GuardBytes = 256 * 1024;
+
+    private final long capacity;
+    private final MappedByteBuffer buffer;
+    private final long[] indexTimes = new long[IndexSize];
+    private final long[] indexPositions = new long[IndexSize];
+    private int indexCount = 0;
+    private int indexHead = 0;
+    private long written = 0;
+    // bumped on reset, readers of an older generation get end of stream
+    private int generation = 0;
+    // the recorder of this generation gave up, readers end at the write position
+    private int finishedGeneration = -1;
+
+    public TimeshiftBuffer(File file, long capacity) throws IOException {
+        if (capacity <= GuardBytes * 4L || capacity > Integer.MAX_VALUE) {
+            throw new IOException("unsupported capacity: " + capacity);
+        }
+        this.capacity = capacity - capacity % TsPacketSize;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(this.capacity);
+            // the mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int reset() {
+        written = 0;
+        indexCount = 0;
+        indexHead = 0;
+        generation += 1;
+        notifyAll();
+        return generation;
+    }
+
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    public synchronized void finish(int generation) {
+        finishedGeneration = generation;
+        notifyAll();
+    }
+
+    public synchronized long getWritePosition() {
+        return written;
+    }
+
+    public synchronized long getOldestPosition() {
+        return Math.max(0, written - (capacity - GuardBytes));
+    }
+
+    // only the recorder thread of the generation writes, through its own view from newView(),
+    // src is drained completely; a recorder left over from an older generation is dropped, returns false then
+    public boolean write(int expectedGeneration, ByteBuffer view, ByteBuffer src) {
+        long position;
+        synchronized (this) {
+            if (generation != expectedGeneration) {
+                src.position(src.limit());
+                return false;
+            }
+            position = written;
+        }
+        int length = src.remaining();
+        while (src.hasRemaining()) {
+            int offset = (int) (position % capacity);
+            int chunk = (int) Math.min(src.remaining(), capacity - offset);
+            int limit = src.limit();
+            src.limit(src.position() + chunk);
+            view.position(offset);
+            view.put(src);
+            src.limit(limit);
+            position += chunk;
+        }
+        synchronized (this) {
+            if (generation != expectedGeneration) {
+                return false;
+            }
+            written += length;
+            long now = SystemClock.elapsedRealtime();
+            int last = (indexHead + IndexSize - 1) % IndexSize;
+            if (indexCount == 0 || now - indexTimes[last] >= IndexIntervalMs) {
+                indexTimes[indexHead] = now;
+                indexPositions[indexHead] = written - length;
+                indexHead = (indexHead + 1) % IndexSize;
+                indexCount = Math.min(indexCount + 1, IndexSize);
+            }
+            notifyAll();
+        }
+        return true;
+    }
+
+    // elapsedRealtime of the oldest data still held, -1 if nothing recorded
+    public synchronized long getOldestTime() {
+        long oldest = getOldestPosition();
+        for (int i = 0; i < indexCount; i++) {
+            int slot = (indexHead + IndexSize - indexCount + i) % IndexSize;
+            if (indexPositions[slot] >= oldest) {
+                return indexTimes[slot];
+            }
+        }
+        return -1;
+    }
+
+    // position of the data recorded around the given elapsedRealtime, aligned to ts packets
+    public synchronized long positionAt(long time) {
+        long oldest = getOldestPosition();
+        long position = written;
+        for (int i = indexCount - 1; i >= 0; i--) {
+            int slot = (indexHead + IndexSize - indexCount + i) % IndexSize;
+            if (indexPositions[slot] < oldest) {
+                break;
+            }
+            position = indexPositions[slot];
+            if (indexTimes[slot] <= time) {
+                break;
+            }
+        }
+        return align(Math.max(position, oldest));
+    }
+
+    private long align(long position) {
+        long aligned = position - position % TsPacketSize;
+        return aligned < getOldestPosition() ? aligned + TsPacketSize : aligned;
+    }
+
+    // blocks until data at position is available, returns the bytes read,
+    // -1 at end of stream; position overwritten meanwhile skips to the oldest data
+    public int read(int expectedGeneration, long[] position, ByteBuffer view, byte[] dst, int off, int len) throws InterruptedException {
+        while (true) {
+            long start;
+            int available;
+            synchronized (this) {
+                while (generation == expectedGeneration && finishedGeneration != generation && position[0] >= written) {
+                    wait();
+                }
+                if (generation != expectedGeneration || position[0] >= written) {
+                    return -1;
+                }
+                position[0] = Math.max(position[0], align(getOldestPosition()));
+                start = position[0];
+                available = (int) Math.min(written - start, len);
+            }
+            int offset = (int) (start % capacity);
+            int chunk = (int) Math.min(available, capacity - offset);
+            view.position(offset);
+            view.get(dst, off, chunk);
+            synchronized (this) {
+                // the writer lapped us while copying, the bytes may be torn
+                if (start < getOldestPosition()) {
+                    continue;
+                }
+            }
+            position[0] = start + chunk;
+            return chunk;
+        }
+    }
+
+    // each reader needs its own view, positions are not shared
+    public ByteBuffer newView() {
+        return buffer.duplicate();
+    }
+}
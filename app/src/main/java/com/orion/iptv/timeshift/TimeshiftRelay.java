@@ -0,0 +1,201 @@
+package com.orion.iptv.timeshift;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.orion.iptv.network.DownloadHelper;
+import com.orion.player.ExtDataSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+import okhttp3.Call;
+import okhttp3.Credentials;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+// 本地中继：后台线程把上游直播流录进 TimeshiftBuffer，播放器从 127.0.0.1 按位置读取
+public class TimeshiftRelay extends NanoHTTPD {
+    private static final String TAG = "TimeshiftRelay";
+    private static final String MIME_TS = "video/mp2t";
+    private static final String MIME_PLAIN = "text/plain; charset=UTF-8";
+    private static final int ReadBufferSize = 64 * 1024;
+    private static final int MaxReconnects = 3;
+    private static final long ReconnectDelayMs = 1000;
+
+    private final TimeshiftBuffer buffer;
+    private final ExtDataSource upstream;
+    private final int generation;
+    private final Thread recorder;
+    private volatile Call call;
+    private volatile boolean stopped = false;
+
+    public TimeshiftRelay(TimeshiftBuffer buffer, ExtDataSource upstream) {
+        // port 0, the system picks a free one
+        super("127.0.0.1", 0);
+        this.buffer = buffer;
+        this.upstream = upstream;
+        this.generation = buffer.reset();
+        this.recorder = new Thread(this::record, TAG);
+        this.recorder.setDaemon(true);
+    }
+
+    public void startRelay() throws IOException {
+        start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        recorder.start();
+        Log.i(TAG, String.format(Locale.ENGLISH, "relay %s on port %d", upstream.getUri(), getListeningPort()));
+    }
+
+    public void stopRelay() {
+        stopped = true;
+        Call current = call;
+        if (current != null) {
+            current.cancel();
+        }
+        // not joined, the canceled call ends the recorder soon and its own view
+        // keeps a late copy away from the next recorder
+        recorder.interrupt();
+        // wake up readers blocked on this generation, a recorder still running has its writes dropped
+        buffer.reset();
+        stop();
+    }
+
+    public String uriAt(long position) {
+        return String.format(Locale.ENGLISH, "http://127.0.0.1:%d/live.ts?pos=%d", getListeningPort(), position);
+    }
+
+    private Request newRequest() {
+        Request.Builder builder = new Request.Builder().url(upstream.getUri());
+        ExtDataSource.Auth auth = upstream.getAuth();
+        if (!auth.equals(ExtDataSource.NoAuth)) {
+            builder.header("Authorization", Credentials.basic(auth.username, auth.password));
+        }
+        for (Map.Entry<String, String> header : upstream.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+
+    private void record() {
+        // a live stream never completes, only stalls are fatal
+        OkHttpClient client = DownloadHelper.getClient().newBuilder()
+                .callTimeout(0, TimeUnit.MILLISECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .build();
+        ByteBuffer chunk = ByteBuffer.allocateDirect(ReadBufferSize);
+        ByteBuffer view = buffer.newView();
+        int failures = 0;
+        while (!stopped && failures <= MaxReconnects) {
+            call = client.newCall(newRequest());
+            try (okhttp3.Response response = call.execute()) {
+                ResponseBody body = response.body();
+                if (!response.isSuccessful() || body == null) {
+                    throw new IOException("unexpected response code: " + response.code());
+                }
+                try (ReadableByteChannel channel = Channels.newChannel(body.byteStream())) {
+                    boolean synced = buffer.getWritePosition() > 0;
+                    while (!stopped) {
+                        chunk.clear();
+                        if (channel.read(chunk) < 0) {
+                            break;
+                        }
+                        chunk.flip();
+                        if (!synced) {
+                            // start on a ts sync byte so packet aligned positions stay valid
+                            synced = skipToSyncByte(chunk);
+                        }
+                        if (chunk.hasRemaining()) {
+                            if (!buffer.write(generation, view, chunk)) {
+                                return;
+                            }
+                            failures = 0;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (!stopped) {
+                    Log.w(TAG, "record failed: " + e);
+                }
+            }
+            failures += 1;
+            if (!stopped && failures <= MaxReconnects) {
+                try {
+                    Thread.sleep(ReconnectDelayMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        if (!stopped) {
+            Log.w(TAG, "upstream lost, close relay");
+            buffer.finish(generation);
+        }
+    }
+
+    private static boolean skipToSyncByte(ByteBuffer chunk) {
+        while (chunk.hasRemaining()) {
+            if (chunk.get(chunk.position()) == 0x47) {
+                return true;
+            }
+            chunk.get();
+        }
+        return false;
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        if (!session.getUri().equals("/live.ts")) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAIN, "not found");
+        }
+        long position = buffer.getOldestPosition();
+        List<String> pos = session.getParameters().get("pos");
+        if (pos != null && pos.size() == 1) {
+            try {
+                position = Long.parseLong(pos.get(0));
+            } catch (NumberFormatException e) {
+                return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAIN, "bad position");
+            }
+        }
+        return newChunkedResponse(Response.Status.OK, MIME_TS, new RingInputStream(position));
+    }
+
+    private class RingInputStream extends InputStream {
+        private final long[] position;
+        private final ByteBuffer view;
+
+        RingInputStream(long position) {
+            this.position = new long[]{position};
+            this.view = buffer.newView();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                return buffer.read(generation, position, view, b, off, len);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+}
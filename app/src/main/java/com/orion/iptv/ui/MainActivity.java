@@ -10,15 +10,11 @@ import android.widget.Button;
 import com.orion.iptv.R;
 import com.orion.iptv.misc.PreferenceStore;
 import com.orion.iptv.network.DownloadHelper;
+import com.orion.iptv.network.LinkHealthStore;
 import com.orion.iptv.ui.live.LivePlayerActivity;
 import com.orion.iptv.ui.shares.SharesActivity;
 import com.orion.iptv.ui.video.VideoPlayerSettingsActivity;
 
-import java.util.concurrent.TimeUnit;
-
-import okhttp3.Cache;
-import okhttp3.OkHttpClient;
-
 public class MainActivity extends AppCompatActivity {
 
     @Override
@@ -26,12 +22,8 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         PreferenceStore.setPreferences(PreferenceManager.getDefaultSharedPreferences(this));
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .cache(new Cache(this.getCacheDir(), 50 * 1024 * 1024))
-                .followSslRedirects(true)
-                .build();
-        DownloadHelper.setClient(client);
+        DownloadHelper.init(this.getCacheDir());
+        LinkHealthStore.init(getFilesDir());
         Button live_page = findViewById(R.id.live_page);
         live_page.setOnClickListener((view) -> {
             Intent intent = new Intent(this, LivePlayerActivity.class);
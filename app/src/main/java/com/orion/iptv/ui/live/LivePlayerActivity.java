@@ -1,5 +1,6 @@
 package com.orion.iptv.ui.live;
 
+import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
@@ -11,10 +12,14 @@ import android.util.TypedValue;
 import android.view.GestureDetector;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
+import android.view.View;
 import android.view.RoundedCorner;
 import android.view.WindowInsets;
 import android.view.WindowManager;
+import android.widget.TextView;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
@@ -31,9 +36,12 @@ import androidx.lifecycle.ViewModelProvider;
 import com.google.android.exoplayer2.PlaybackException;
 import com.orion.iptv.R;
 import com.orion.iptv.bean.ChannelInfo;
+import com.orion.iptv.bean.ChannelItem;
 import com.orion.iptv.bean.ChannelSource;
 import com.orion.iptv.bean.EpgProgram;
 import com.orion.iptv.epg.m51zmt.M51ZMT;
+import com.orion.iptv.hls.HlsRelay;
+import com.orion.iptv.multicast.MulticastRelay;
 import com.orion.iptv.layout.dialog.ChannelSourceDialog;
 import com.orion.iptv.layout.live.DataSource;
 import com.orion.iptv.layout.live.LiveChannelInfo;
@@ -41,14 +49,25 @@ import com.orion.iptv.layout.live.LiveChannelList;
 import com.orion.iptv.layout.live.LivePlayerSetting;
 import com.orion.iptv.layout.live.LivePlayerViewModel;
 import com.orion.iptv.misc.SourceTypeDetector;
+import com.orion.iptv.misc.StartupStats;
+import com.orion.iptv.misc.StreamCodecs;
+import com.orion.iptv.misc.ZapTracker;
 import com.orion.iptv.network.DownloadHelper;
+import com.orion.iptv.network.LinkHealthStore;
+import com.orion.iptv.timeshift.Timeshift;
+import com.orion.iptv.ui.multiview.MultiViewActivity;
 import com.orion.player.ui.NetworkSpeed;
 import com.orion.player.ui.Rect;
 import com.orion.player.ui.VideoView;
 import com.orion.iptv.misc.PreferenceStore;
+import com.orion.player.ErrorClassifier;
 import com.orion.player.ExtDataSource;
+import com.orion.player.ExtTrack;
 import com.orion.player.IExtPlayer;
 import com.orion.player.IExtPlayerFactory;
+import com.orion.player.PlayerPreloader;
+import com.orion.player.exo.BufferProfile;
+import com.orion.player.render.VideoGLSurfaceView;
 import com.orion.player.ui.Buffering;
 import com.orion.player.ui.Toast;
 
@@ -63,12 +82,14 @@ import java.util.concurrent.TimeUnit;
 import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.HttpUrl;
 import okhttp3.Response;
 
 public class LivePlayerActivity extends AppCompatActivity {
     private static final String TAG = "LivePlayer";
     private static final int GestureInsetXdp = 48;
     private static final int GestureInsetYdp = 48;
+    private static final long TimeshiftStepMs = 30 * 1000;
 
     protected LivePlayerViewModel mViewModel;
 
@@ -78,12 +99,26 @@ public class LivePlayerActivity extends AppCompatActivity {
     protected LiveChannelList channelList;
     protected LivePlayerSetting playerSetting;
     protected NetworkSpeed networkSpeed;
+    protected TextView zapStats;
     protected Toast toast;
     protected Buffering buffering;
 
     protected IExtPlayerFactory<? extends IExtPlayer> playerFactory;
+    // factory of the current player, differs from playerFactory when the player type is auto
+    protected IExtPlayerFactory<? extends IExtPlayer> currentFactory;
+    protected int currentPlayerType;
     protected int surfaceType;
     protected IExtPlayer player;
+    protected PlayerPreloader preloader;
+    protected Timeshift timeshift;
+    // started on the first relayed hls channel
+    protected HlsRelay hlsRelay;
+    protected MulticastRelay multicastRelay;
+    // player type or surface type changed, the current player can't be reused
+    protected boolean rebuildPlayer = false;
+    protected final StartupStats startupStats = new StartupStats();
+    // 起播成功后再进入缓冲才算卡顿
+    private boolean sourceStarted = false;
 
     private Handler mHandler;
     private Handler mPlayerHandler;
@@ -100,9 +135,28 @@ public class LivePlayerActivity extends AppCompatActivity {
     private final EpgRefresher epgRefresher = new EpgRefresher();
 
     private final PlayerEventListener listener = new PlayerEventListener();
+    private final Runnable preloadAdjacent = this::preloadAdjacentChannels;
     private List<Call> pendingCalls;
+    // 只保留当前频道的节目单请求
+    private Call epgCall;
     private boolean needResume = false;
     private long lastPressed = 0;
+    // the focused tile's channel plays full screen after multi-view
+    private final ActivityResultLauncher<Intent> multiView = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(),
+            result -> {
+                Intent data = result.getData();
+                if (result.getResultCode() == RESULT_OK && data != null) {
+                    // the selected channel starts once its link is chosen, not the one left behind
+                    needResume = false;
+                    mViewModel.selectChannelInCurrentGroup(data.getIntExtra(MultiViewActivity.EXTRA_SELECTED, -1));
+                    return;
+                }
+                Pair<Integer, DataSource> dataSource = mViewModel.getCurrentSource();
+                if (player == null && dataSource != null) {
+                    switchDataSource(dataSource);
+                }
+            });
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -131,6 +185,7 @@ public class LivePlayerActivity extends AppCompatActivity {
         buffering = findViewById(R.id.buffering);
         toast = findViewById(R.id.toast);
         networkSpeed = findViewById(R.id.network_speed);
+        zapStats = findViewById(R.id.zap_stats);
         FragmentManager fg = getSupportFragmentManager();
         channelInfo = (LiveChannelInfo) fg.findFragmentByTag("channel_info");
         channelList = (LiveChannelList) fg.findFragmentByTag("channel_list");
@@ -206,11 +261,31 @@ public class LivePlayerActivity extends AppCompatActivity {
             }
         });
 
+        preloader = new PlayerPreloader(this);
+        timeshift = new Timeshift(getCacheDir());
+        preloader.setMaxPlayers(mViewModel.getPreloadCount());
+        mViewModel.observePreloadCount(this, count -> {
+            preloader.setMaxPlayers(count);
+            syncWarmLinks();
+        });
+        mViewModel.observeShowZapStats(this, show -> {
+            zapStats.setVisibility(show ? View.VISIBLE : View.GONE);
+            zapStats.removeCallbacks(refreshStats);
+            ZapTracker.setListener(show ? this::updateStats : null);
+            if (show) {
+                refreshStats.run();
+            }
+        });
         playerFactory = mViewModel.getPlayerFactory().second;
         mViewModel.observePlayerFactory(this, this::switchPlayer);
         surfaceType = mViewModel.getSurfaceType();
         mViewModel.observeSurfaceType(this, this::switchSurfaceType);
         mViewModel.observeLiveSource(this, this::switchDataSource);
+        mViewModel.observePreviewChannel(this, item -> {
+            if (item != null) {
+                abortPendingStartup();
+            }
+        });
         mViewModel.observeNextEpgProgram(this, nextEpgProgram -> {
             epgRefresher.stop();
             if (nextEpgProgram == null) {
@@ -222,6 +297,21 @@ public class LivePlayerActivity extends AppCompatActivity {
         epgUrl = mViewModel.getEpgUrl();
         mViewModel.observeEpgUrl(this, url -> epgUrl = url);
         mViewModel.observeCurrentChannel(this, this::onCurrentChannel);
+        mViewModel.observeMultiViewRequest(this, this::openMultiView);
+    }
+
+    // the tiles start before onStop, free the decoders of our player and the warm ones first;
+    // the result callback starts playback again
+    private void openMultiView(int tiles) {
+        LivePlayerViewModel.Channel channel = mViewModel.getCurrentChannel();
+        if (channel == null) {
+            return;
+        }
+        playerSetting.hide();
+        Intent intent = MultiViewActivity.newIntent(this, channel.channels, channel.channelPos, tiles,
+                mViewModel::newDataSource, mViewModel.getPlayerFactory().first, surfaceType);
+        releasePlayback();
+        multiView.launch(intent);
     }
 
     protected void postPlayerAction(long delayMillis, Runnable r) {
@@ -271,14 +361,36 @@ public class LivePlayerActivity extends AppCompatActivity {
 
     private void switchPlayer(Pair<Integer, IExtPlayerFactory<? extends IExtPlayer>> playerFactory) {
         this.playerFactory = playerFactory.second;
+        rebuildPlayer = true;
+        preloader.releaseAll();
+        syncWarmLinks();
         Pair<Integer, DataSource> dataSource = mViewModel.getCurrentSource();
         if (dataSource != null) {
             switchDataSource(dataSource);
         }
     }
 
+    // render stats change every frame, refresh them while shown
+    private final Runnable refreshStats = new Runnable() {
+        @Override
+        public void run() {
+            updateStats();
+            zapStats.postDelayed(this, 1000);
+        }
+    };
+
+    private void updateStats() {
+        View surface = videoView.getVideoSurfaceView();
+        String render = surface instanceof VideoGLSurfaceView
+                ? ((VideoGLSurfaceView) surface).getRenderStats().summary()
+                : "render: gl surface only";
+        String zap = ZapTracker.summary();
+        zapStats.setText(zap.isEmpty() ? render : zap + "\n" + render);
+    }
+
     private void switchSurfaceType(Integer surfaceType) {
         this.surfaceType = surfaceType;
+        rebuildPlayer = true;
         Pair<Integer, DataSource> dataSource = mViewModel.getCurrentSource();
         if (dataSource != null) {
             switchDataSource(dataSource);
@@ -287,19 +399,233 @@ public class LivePlayerActivity extends AppCompatActivity {
 
     private void switchDataSource(Pair<Integer, DataSource> dataSource) {
         mPlayerHandler.removeCallbacksAndMessages(null);
-        if (player != null) {
-            player.release();
+        mHandler.removeCallbacks(preloadAdjacent);
+        timeshift.stop();
+        timeshift.setCapacity((long) mViewModel.getTimeshiftSize() * 1024 * 1024);
+        // warm players read the upstream directly, a timeshifted channel starts on the relay instead;
+        // catch-up already seeks on the server side
+        boolean timeshifted = !mViewModel.isCatchup() && timeshift.isEnabled() && Timeshift.isSupported(dataSource.second.dataSource);
+        boolean relayed = !timeshifted && mViewModel.getHlsPrefetch() > 0 && HlsRelay.isSupported(dataSource.second.dataSource);
+        // neither player receives multicast reliably, it always goes through the relay
+        boolean multicast = MulticastRelay.isSupported(dataSource.second.dataSource);
+        int playerType = mViewModel.getPlayerType(dataSource.second.dataSource);
+        IExtPlayerFactory<? extends IExtPlayer> factory = mViewModel.getPlayerFactory(playerType);
+        PlayerPreloader.WarmPlayer warm = timeshifted || relayed || multicast ? null : preloader.take(factory, dataSource.second.dataSource);
+        boolean reuse = warm == null && player != null && !rebuildPlayer && factory == currentFactory
+                && player.isReusableFor(dataSource.second.dataSource);
+        if (player != null && !reuse) {
+            player.removeListener(listener);
             videoView.setPlayer(null);
+            if (!preloader.park(currentFactory, player)) {
+                player.release();
+            }
+        }
+        // 只保留新频道的相邻频道，避免同时占用过多解码器
+        preloader.retain(playerFactory, getAdjacentDataSources());
+        syncWarmLinks();
+        DownloadHelper.beginPlaybackStartup();
+        sourceStarted = false;
+        ZapTracker.mark(ZapTracker.STAGE_SWITCH_SOURCE);
+        if (warm != null) {
+            startupStats.begin(StartupStats.STARTUP_WARM);
+            player = warm.player;
+            currentFactory = factory;
+            currentPlayerType = playerType;
+            trackZapDimensions(dataSource.second.dataSource);
+            player.addListener(listener);
+            videoView.setSurfaceType(surfaceType);
+            videoView.setPlayer(player);
+            networkSpeed.setPlayer(player);
+            channelInfo.setPlayer(player);
+            warm.replay(listener);
+            channelInfo.replay(warm);
+            player.setVolume(1f);
+            player.play();
+            return;
+        }
+        ExtDataSource source = dataSource.second.dataSource;
+        if (timeshifted) {
+            source = timeshift.start(source);
+        } else if (relayed) {
+            source = relayHls(source);
+        } else if (multicast) {
+            source = relayMulticast(source);
         }
-        player = playerFactory.create(this);
+        if (reuse) {
+            startupStats.begin(StartupStats.STARTUP_REUSED);
+            trackZapDimensions(dataSource.second.dataSource);
+            player.setDataSource(source);
+            ZapTracker.mark(ZapTracker.STAGE_SET_DATA_SOURCE);
+            player.prepare();
+            ZapTracker.mark(ZapTracker.STAGE_PREPARE);
+            player.play();
+            // state may stay in STATE_BUFFERING, so no state change will schedule the timeout
+            postPlayerAction(mViewModel.getSourceTimeout(dataSource.second.dataSource), this::onSourceTimeout);
+            return;
+        }
+        rebuildPlayer = false;
+        startupStats.begin(StartupStats.STARTUP_NEW);
+        player = factory.create(this);
+        currentFactory = factory;
+        currentPlayerType = playerType;
+        ZapTracker.mark(ZapTracker.STAGE_PLAYER_CREATE);
+        trackZapDimensions(dataSource.second.dataSource);
         player.addListener(listener);
         videoView.setSurfaceType(surfaceType);
         videoView.setPlayer(player);
         networkSpeed.setPlayer(player);
         channelInfo.setPlayer(player);
-        player.setDataSource(dataSource.second.dataSource);
+        player.setDataSource(source);
+        ZapTracker.mark(ZapTracker.STAGE_SET_DATA_SOURCE);
+        player.prepare();
+        ZapTracker.mark(ZapTracker.STAGE_PREPARE);
+        player.play();
+    }
+
+    private void trackZapDimensions(ExtDataSource dataSource) {
+        HttpUrl url = HttpUrl.parse(dataSource.getUri());
+        ZapTracker.setDimensions(player.getClass().getSimpleName(), url != null ? url.host() : null, surfaceType);
+    }
+
+    // 正在起播的频道被跳过了，停掉它，不再占用带宽和解码器
+    private void abortPendingStartup() {
+        mHandler.removeCallbacks(preloadAdjacent);
+        if (player == null || player.getPlaybackState() == IExtPlayer.STATE_READY) {
+            return;
+        }
+        mPlayerHandler.removeCallbacksAndMessages(null);
+        startupStats.cancel();
+        DownloadHelper.endPlaybackStartup();
+        player.stop();
+    }
+
+    // 时移、hls中继或组播中继时播放器读的是本地地址，统计和换线都按上游线路算
+    private ExtDataSource playingLink() {
+        if (player == null) {
+            return null;
+        }
+        ExtDataSource dataSource = timeshift.unwrap(player.getDataSource());
+        dataSource = hlsRelay != null ? hlsRelay.unwrap(dataSource) : dataSource;
+        return multicastRelay != null ? multicastRelay.unwrap(dataSource) : dataSource;
+    }
+
+    private ExtDataSource relayHls(ExtDataSource dataSource) {
+        if (hlsRelay == null) {
+            HlsRelay relay = new HlsRelay(BufferProfile.getBufferBytesLimit(this));
+            try {
+                relay.startRelay();
+            } catch (IOException e) {
+                Log.w(TAG, "start hls relay failed: " + e);
+                return dataSource;
+            }
+            hlsRelay = relay;
+        }
+        return hlsRelay.wrap(dataSource, mViewModel.getHlsPrefetch());
+    }
+
+    private ExtDataSource relayMulticast(ExtDataSource dataSource) {
+        if (multicastRelay == null) {
+            MulticastRelay relay = new MulticastRelay(this);
+            try {
+                relay.startRelay();
+            } catch (IOException e) {
+                Log.w(TAG, "start multicast relay failed: " + e);
+                return dataSource;
+            }
+            multicastRelay = relay;
+        }
+        return multicastRelay.wrap(dataSource);
+    }
+
+    private void pauseTimeshift() {
+        if (!timeshift.isActive() || timeshift.isPaused()) {
+            return;
+        }
+        player.pause();
+        timeshift.pause();
+        toast.setMessage(getString(R.string.timeshift_paused), 3*1000);
+    }
+
+    private void resumeTimeshift() {
+        if (!timeshift.isActive() || !timeshift.isPaused()) {
+            return;
+        }
+        timeshift.resume();
+        player.play();
+        showTimeshiftPosition();
+    }
+
+    // records the current channel until the current program ends, pressing again stops it
+    private void toggleRecording() {
+        boolean started = mViewModel.toggleRecording(this, null);
+        toast.setMessage(getString(started ? R.string.record_started : R.string.record_stopped), 3*1000);
+    }
+
+    // positive delta rewinds, going past the live edge plays live
+    private void seekTimeshift(long deltaMs) {
+        ExtDataSource source = timeshift.seek(deltaMs);
+        if (source == null) {
+            return;
+        }
+        mPlayerHandler.removeCallbacksAndMessages(null);
+        // not a new link, keep it out of startup and stall stats
+        sourceStarted = false;
+        player.setDataSource(source);
         player.prepare();
         player.play();
+        showTimeshiftPosition();
+    }
+
+    private void showTimeshiftPosition() {
+        long behindSeconds = timeshift.getBehindMs() / 1000;
+        if (behindSeconds <= 1) {
+            toast.setMessage(getString(R.string.timeshift_live), 3*1000);
+            return;
+        }
+        String behind = String.format(Locale.ENGLISH, "%02d:%02d", behindSeconds / 60, behindSeconds % 60);
+        toast.setMessage(getString(R.string.timeshift_behind, behind), 3*1000);
+    }
+
+    private void onSourceTimeout() {
+        // catch-up urls are built per program, they don't rate the live link
+        if (player != null && playingLink() != null && !mViewModel.isCatchup()) {
+            LinkHealthStore.recordFailure(playingLink().getUri(), LinkHealthStore.ERROR_TIMEOUT);
+        }
+        mViewModel.seekToNextSource();
+    }
+
+    private List<ExtDataSource> getAdjacentDataSources() {
+        List<ExtDataSource> dataSources = new ArrayList<>();
+        for (ChannelItem item : new ChannelItem[]{channelList.peekNextChannel(), channelList.peekPrevChannel()}) {
+            if (item == null) {
+                continue;
+            }
+            // 与 selectChannel 一致，预热上次竞速胜出或评分最高的线路，它有预热播放器时 selectChannel 不再竞速
+            String link = mViewModel.getStartupLink(item);
+            if (link == null) {
+                continue;
+            }
+            ExtDataSource dataSource = mViewModel.newDataSource(link, item.info);
+            // the preloader keeps players of one factory, auto mode may pick another one for this link;
+            // multicast needs the relay, joining groups ahead of time would only cost bandwidth
+            if (mViewModel.getPlayerFactory(dataSource) == playerFactory && !MulticastRelay.isSupported(dataSource)) {
+                dataSources.add(dataSource);
+            }
+        }
+        return dataSources;
+    }
+
+    private void preloadAdjacentChannels() {
+        if (player == null || player.getPlaybackState() != IExtPlayer.STATE_READY) {
+            return;
+        }
+        preloader.preload(playerFactory, getAdjacentDataSources());
+        syncWarmLinks();
+        mViewModel.probeOtherLinks();
+    }
+
+    private void syncWarmLinks() {
+        mViewModel.setWarmLinks(preloader.getWarmLinks());
     }
 
     protected boolean inTouchArea(MotionEvent event) {
@@ -315,8 +641,18 @@ public class LivePlayerActivity extends AppCompatActivity {
     public boolean onKeyDown(int keyCode, KeyEvent event) {
         boolean handled = false;
         switch (event.getKeyCode()) {
-            case KeyEvent.KEYCODE_ENTER:
             case KeyEvent.KEYCODE_MEDIA_PLAY_PAUSE:
+                if (timeshift.isActive() && !playerSetting.isViewVisible()) {
+                    if (timeshift.isPaused()) {
+                        resumeTimeshift();
+                    } else {
+                        pauseTimeshift();
+                    }
+                    handled = true;
+                    break;
+                }
+                // fall through, toggle the channel list as the center key does
+            case KeyEvent.KEYCODE_ENTER:
             case KeyEvent.KEYCODE_DPAD_CENTER:
                 if (!playerSetting.isViewVisible()) {
                     channelList.toggleVisibility(true);
@@ -325,28 +661,60 @@ public class LivePlayerActivity extends AppCompatActivity {
                 break;
             case KeyEvent.KEYCODE_DPAD_LEFT:
                 if (!channelList.isViewVisible() && !playerSetting.isViewVisible()) {
+                    ZapTracker.begin();
                     postPlayerAction(0, mViewModel::seekToPrevSource);
                     handled = true;
                 }
                 break;
             case KeyEvent.KEYCODE_DPAD_RIGHT:
                 if (!channelList.isViewVisible() && !playerSetting.isViewVisible()) {
+                    ZapTracker.begin();
                     postPlayerAction(0, mViewModel::seekToNextSource);
                     handled = true;
                 }
                 break;
             case KeyEvent.KEYCODE_DPAD_UP:
                 if (!channelList.isViewVisible() && !playerSetting.isViewVisible()) {
+                    ZapTracker.begin();
                     postPlayerAction(0, channelList::seekToNextChannel);
                     handled = true;
                 }
                 break;
             case KeyEvent.KEYCODE_DPAD_DOWN:
                 if (!channelList.isViewVisible() && !playerSetting.isViewVisible()) {
+                    ZapTracker.begin();
                     postPlayerAction(0, channelList::seekToPrevChannel);
                     handled = true;
                 }
                 break;
+            case KeyEvent.KEYCODE_MEDIA_PAUSE:
+                pauseTimeshift();
+                handled = timeshift.isActive();
+                break;
+            case KeyEvent.KEYCODE_MEDIA_PLAY:
+                resumeTimeshift();
+                handled = timeshift.isActive();
+                break;
+            case KeyEvent.KEYCODE_MEDIA_RECORD:
+                toggleRecording();
+                handled = true;
+                break;
+            case KeyEvent.KEYCODE_MEDIA_REWIND:
+                if (timeshift.isActive()) {
+                    seekTimeshift(TimeshiftStepMs);
+                    handled = true;
+                } else {
+                    handled = mViewModel.seekCatchup(-TimeshiftStepMs);
+                }
+                break;
+            case KeyEvent.KEYCODE_MEDIA_FAST_FORWARD:
+                if (timeshift.isActive()) {
+                    seekTimeshift(-TimeshiftStepMs);
+                    handled = true;
+                } else {
+                    handled = mViewModel.seekCatchup(TimeshiftStepMs);
+                }
+                break;
             case KeyEvent.KEYCODE_MENU:
                 if (!channelList.isViewVisible()) {
                     playerSetting.toggleVisibility(true);
@@ -388,6 +756,7 @@ public class LivePlayerActivity extends AppCompatActivity {
         super.onResume();
         hideSystemBars();
         if (player != null) {
+            timeshift.resume();
             player.play();
         } else if (needResume) {
             Pair<Integer, DataSource> dataSource = mViewModel.getCurrentSource();
@@ -401,6 +770,7 @@ public class LivePlayerActivity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         if (player != null) {
+            timeshift.pause();
             player.pause();
         }
     }
@@ -412,14 +782,48 @@ public class LivePlayerActivity extends AppCompatActivity {
             call.cancel();
         }
         pendingCalls.clear();
-        mPlayerHandler.removeCallbacksAndMessages(null);
+        DownloadHelper.endPlaybackStartup();
         mHandler.removeCallbacksAndMessages(null);
+        releasePlayback();
+    }
+
+    private void releasePlayback() {
+        mPlayerHandler.removeCallbacksAndMessages(null);
+        mHandler.removeCallbacks(preloadAdjacent);
+        preloader.releaseAll();
+        syncWarmLinks();
+        timeshift.stop();
+        if (hlsRelay != null) {
+            hlsRelay.stopRelay();
+            hlsRelay = null;
+        }
+        if (multicastRelay != null) {
+            multicastRelay.stopRelay();
+            multicastRelay = null;
+        }
         if (player != null) {
             player.release();
             player = null;
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        ZapTracker.setListener(null);
+        zapStats.removeCallbacks(refreshStats);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            Log.w(TAG, "memory is running low, release warm players");
+            preloader.releaseAll();
+            syncWarmLinks();
+        }
+    }
+
     @SuppressWarnings("deprecation")
     protected void hideSystemBars() {
         WindowInsetsControllerCompat windowInsetsController = ViewCompat.getWindowInsetsController(getWindow().getDecorView());
@@ -491,6 +895,10 @@ public class LivePlayerActivity extends AppCompatActivity {
         if (currentChannel == null || epgUrl == null || epgUrl.isEmpty()) {
             return;
         }
+        if (epgCall != null) {
+            epgCall.cancel();
+            pendingCalls.remove(epgCall);
+        }
         ChannelInfo info = currentChannel.channelInfo;
         Date today = new Date();
         Call call = M51ZMT.get(
@@ -515,6 +923,7 @@ public class LivePlayerActivity extends AppCompatActivity {
                 }
         );
         pendingCalls.add(call);
+        epgCall = call;
     }
 
     private class GestureListener extends GestureDetector.SimpleOnGestureListener {
@@ -559,9 +968,11 @@ public class LivePlayerActivity extends AppCompatActivity {
                 Log.i(TAG, String.format(Locale.ENGLISH, "scrollX event detect, dist: %.2f, direction: %.2f", distX, velocityX));
                 if (distX < 0) {
                     // from right to left
+                    ZapTracker.begin();
                     postPlayerAction(0, mViewModel::seekToNextSource);
                 } else {
                     // from left to right
+                    ZapTracker.begin();
                     postPlayerAction(0, mViewModel::seekToPrevSource);
                 }
                 return true;
@@ -581,9 +992,16 @@ public class LivePlayerActivity extends AppCompatActivity {
     }
 
     private class PlayerEventListener implements IExtPlayer.Listener {
+        @Override
+        public void onRenderedFirstFrame() {
+            ZapTracker.mark(ZapTracker.STAGE_FIRST_FRAME);
+        }
+
         @Override
         public void onPlayerError(Exception error) {
             Log.e(TAG, error.toString());
+            DownloadHelper.endPlaybackStartup();
+            startupStats.cancel();
             buffering.hide();
             toast.setMessage(error.toString(), 5*1000);
             if (error instanceof PlaybackException) {
@@ -595,9 +1013,36 @@ public class LivePlayerActivity extends AppCompatActivity {
                     return;
                 }
             }
+            if (player != null && playingLink() != null) {
+                Pair<Integer, DataSource> dataSource = mViewModel.getCurrentSource();
+                // the link is fine, retry it right away on the next player
+                if (dataSource != null && ErrorClassifier.classify(error) == ErrorClassifier.KIND_DECODER
+                        && mViewModel.fallbackPlayer(playingLink(), currentPlayerType)) {
+                    postPlayerAction(0, () -> switchDataSource(dataSource));
+                    return;
+                }
+                if (!mViewModel.isCatchup()) {
+                    int errorCode = error instanceof PlaybackException ? ((PlaybackException) error).errorCode : LinkHealthStore.ERROR_UNKNOWN;
+                    LinkHealthStore.recordFailure(playingLink().getUri(), errorCode);
+                }
+                // auto mode learned codecs this player can't decode, retry the link on the chosen one;
+                // not after the fallback chain ran out, the next link or a later retry takes over
+                if (dataSource != null && !mViewModel.isFallbackExhausted(playingLink())
+                        && mViewModel.getPlayerFactory(playingLink()) != currentFactory) {
+                    postPlayerAction(0, () -> switchDataSource(dataSource));
+                    return;
+                }
+            }
             postPlayerAction(5000, mViewModel::seekToNextSource);
         }
 
+        @Override
+        public void onTracksChanged(List<ExtTrack> tracks) {
+            if (playingLink() != null) {
+                StreamCodecs.learn(playingLink().getUri(), tracks);
+            }
+        }
+
         @Override
         public void onDataSourceUsed(ExtDataSource dataSource) {
             toast.hide();
@@ -611,17 +1056,41 @@ public class LivePlayerActivity extends AppCompatActivity {
                 case IExtPlayer.STATE_READY:
                     Log.w(TAG, "IExtPlayer change state to STATE_READY");
                     mPlayerHandler.removeCallbacksAndMessages(null);
+                    DownloadHelper.endPlaybackStartup();
+                    ZapTracker.mark(ZapTracker.STAGE_READY);
+                    long startupMs = startupStats.end();
+                    // reused and warm players skip connect and probing, only new startups rate the link
+                    if (startupMs >= 0 && startupStats.getMode() == StartupStats.STARTUP_NEW && playingLink() != null && !mViewModel.isCatchup()) {
+                        LinkHealthStore.recordSuccess(playingLink().getUri(), startupMs);
+                    }
+                    if (playingLink() != null) {
+                        mViewModel.onPlayerWorking(playingLink(), currentPlayerType);
+                    }
+                    sourceStarted = true;
                     buffering.hide();
                     channelInfo.hide(5*1000);
+                    // 当前频道起播后再预热相邻频道，不和它抢带宽
+                    mHandler.removeCallbacks(preloadAdjacent);
+                    mHandler.postDelayed(preloadAdjacent, 1000);
                     break;
                 case IExtPlayer.STATE_BUFFERING:
                     Log.w(TAG, "IExtPlayer change state to STATE_BUFFERING");
                     buffering.show();
-                    postPlayerAction(mViewModel.getSourceTimeout(), mViewModel::seekToNextSource);
+                    if (sourceStarted && playingLink() != null && !mViewModel.isCatchup()) {
+                        LinkHealthStore.recordStall(playingLink().getUri());
+                    }
+                    // startup history only predicts startup, a stall of a playing link gets the configured timeout
+                    int timeout = sourceStarted ? mViewModel.getSourceTimeout() : mViewModel.getSourceTimeout(playingLink());
+                    postPlayerAction(timeout, LivePlayerActivity.this::onSourceTimeout);
                     break;
                 case IExtPlayer.STATE_ENDED:
                     Log.w(TAG, "IExtPlayer change state to STATE_ENDED");
                     buffering.hide();
+                    // the catch-up program played to its end, the next link would only replay it
+                    if (mViewModel.isCatchup()) {
+                        postPlayerAction(0, mViewModel::backToLive);
+                        break;
+                    }
                     postPlayerAction(5*1000, mViewModel::seekToNextSource);
                     break;
                 case IExtPlayer.STATE_IDLE:
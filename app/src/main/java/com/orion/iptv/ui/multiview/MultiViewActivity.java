@@ -0,0 +1,350 @@
+package com.orion.iptv.ui.multiview;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.orion.iptv.R;
+import com.orion.iptv.bean.ChannelInfo;
+import com.orion.iptv.bean.ChannelItem;
+import com.orion.iptv.layout.live.LivePlayerViewModel;
+import com.orion.iptv.misc.StreamCodecs;
+import com.orion.iptv.multicast.MulticastRelay;
+import com.orion.player.DecoderBudget;
+import com.orion.player.ExtDataSource;
+import com.orion.player.IExtPlayer;
+import com.orion.player.IExtPlayerFactory;
+import com.orion.player.ijk.ExtHWIjkPlayerFactory;
+import com.orion.player.ijk.ExtSWIjkPlayerFactory;
+import com.orion.player.ui.VideoView;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+// 多画面：每个窗口一个播放器和一个 surface，只有焦点窗口出声音；
+// 解码器不够时没有焦点的窗口用软解，码率按预算分配，没有焦点的窗口限制在低分辨率
+public class MultiViewActivity extends AppCompatActivity {
+    private static final String TAG = "MultiViewActivity";
+    private static final String EXTRA_NAMES = "names";
+    // one bundle per link, tagged with the tile it belongs to
+    private static final String EXTRA_SOURCES = "sources";
+    private static final String KeyTile = "tile";
+    private static final String KeyUri = "uri";
+    private static final String KeyHeaders = "headers";
+    private static final String KeyUsername = "username";
+    private static final String KeyPassword = "password";
+    private static final String KeyLowLatency = "low_latency";
+    private static final String KeyBufferProfile = "buffer_profile";
+    private static final String KeyContentType = "content_type";
+    private static final String EXTRA_POSITIONS = "positions";
+    private static final String EXTRA_PLAYER_TYPE = "player_type";
+    private static final String EXTRA_SURFACE_TYPE = "surface_type";
+    // result, channel position of the focused tile in its group
+    public static final String EXTRA_SELECTED = "selected";
+    private static final int[] TileIds = {R.id.tile0, R.id.tile1, R.id.tile2, R.id.tile3};
+
+    public interface DataSourceFactory {
+        // the data source the live player would use for the link
+        ExtDataSource create(String link, ChannelInfo info);
+    }
+
+    private final List<Tile> tiles = new ArrayList<>();
+    private final IExtPlayerFactory<? extends IExtPlayer> softwareFactory = new ExtSWIjkPlayerFactory();
+    private IExtPlayerFactory<? extends IExtPlayer> hardwareFactory;
+    private int hardwareSlots;
+    private long bitrateBudget;
+    private int surfaceType;
+    private int focused = 0;
+    // shared by all tiles, every request joins its own group
+    @Nullable
+    private MulticastRelay multicastRelay;
+
+    // channels from the given position on, wrapping around the group
+    public static Intent newIntent(Context context, List<ChannelItem> channels, int first, int count,
+                                   DataSourceFactory factory, int playerType, int surfaceType) {
+        int size = Math.min(count, channels.size());
+        String[] names = new String[size];
+        ArrayList<Bundle> sources = new ArrayList<>();
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            int position = (first + i) % channels.size();
+            ChannelItem item = channels.get(position);
+            names[i] = item.info.channelName;
+            for (String link : item.getSources()) {
+                if (!TextUtils.isEmpty(link)) {
+                    sources.add(toBundle(i, factory.create(link, item.info)));
+                }
+            }
+            positions[i] = position;
+        }
+        return new Intent(context, MultiViewActivity.class)
+                .putExtra(EXTRA_NAMES, names)
+                .putParcelableArrayListExtra(EXTRA_SOURCES, sources)
+                .putExtra(EXTRA_POSITIONS, positions)
+                .putExtra(EXTRA_PLAYER_TYPE, playerType)
+                .putExtra(EXTRA_SURFACE_TYPE, surfaceType);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_multiview);
+        Intent intent = getIntent();
+        String[] names = intent.getStringArrayExtra(EXTRA_NAMES);
+        ArrayList<Bundle> sources = intent.getParcelableArrayListExtra(EXTRA_SOURCES);
+        int[] positions = intent.getIntArrayExtra(EXTRA_POSITIONS);
+        if (names == null || sources == null || positions == null) {
+            finish();
+            return;
+        }
+        List<List<ExtDataSource>> links = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            links.add(new ArrayList<>());
+        }
+        for (Bundle source : sources) {
+            int tile = source.getInt(KeyTile, -1);
+            if (tile >= 0 && tile < links.size()) {
+                links.get(tile).add(fromBundle(source));
+            }
+        }
+        int playerType = intent.getIntExtra(EXTRA_PLAYER_TYPE, 0);
+        // the focused tile needs a hardware decoder
+        hardwareFactory = playerType == StreamCodecs.PLAYER_SW_IJK ? new ExtHWIjkPlayerFactory() : LivePlayerViewModel.newPlayerFactory(playerType);
+        surfaceType = intent.getIntExtra(EXTRA_SURFACE_TYPE, VideoView.SURFACE_TYPE_SURFACE_VIEW);
+        hardwareSlots = Math.max(1, DecoderBudget.getHardwareDecoders());
+        bitrateBudget = DecoderBudget.getBitrateBudget(this);
+
+        int count = Math.min(names.length, DecoderBudget.getMaxTiles(this));
+        Log.i(TAG, String.format(Locale.ENGLISH, "tiles: %d, hardware slots: %d, bitrate budget: %d", count, hardwareSlots, bitrateBudget));
+        findViewById(R.id.row1).setVisibility(count > 2 ? View.VISIBLE : View.GONE);
+        for (int i = 0; i < TileIds.length; i++) {
+            View view = findViewById(TileIds[i]);
+            if (i >= count) {
+                // keep the grid, an empty cell stays black
+                view.setVisibility(View.INVISIBLE);
+                view.setFocusable(false);
+                continue;
+            }
+            Tile tile = new Tile(i, view, names[i], links.get(i), positions[i]);
+            tiles.add(tile);
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        int hardware = 0;
+        // focused tile first, it must get a hardware decoder
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile tile = tiles.get((focused + i) % tiles.size());
+            tile.start(hardware < hardwareSlots);
+            hardware += tile.hardware ? 1 : 0;
+        }
+        applyBudget();
+        if (!tiles.isEmpty()) {
+            tiles.get(focused).view.requestFocus();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        for (Tile tile : tiles) {
+            tile.release();
+        }
+        if (multicastRelay != null) {
+            multicastRelay.stopRelay();
+            multicastRelay = null;
+        }
+    }
+
+    private ExtDataSource relayMulticast(ExtDataSource dataSource) {
+        if (multicastRelay == null) {
+            MulticastRelay relay = new MulticastRelay(this);
+            try {
+                relay.startRelay();
+            } catch (IOException e) {
+                Log.w(TAG, "start multicast relay failed: " + e);
+                return dataSource;
+            }
+            multicastRelay = relay;
+        }
+        return multicastRelay.wrap(dataSource);
+    }
+
+    private static Bundle toBundle(int tile, ExtDataSource dataSource) {
+        Bundle bundle = new Bundle();
+        bundle.putInt(KeyTile, tile);
+        bundle.putString(KeyUri, dataSource.getUri());
+        bundle.putSerializable(KeyHeaders, new HashMap<>(dataSource.getHeaders()));
+        bundle.putString(KeyUsername, dataSource.getAuth().username);
+        bundle.putString(KeyPassword, dataSource.getAuth().password);
+        bundle.putBoolean(KeyLowLatency, dataSource.isLowLatency());
+        bundle.putInt(KeyBufferProfile, dataSource.getBufferProfile());
+        bundle.putInt(KeyContentType, dataSource.getContentType());
+        return bundle;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ExtDataSource fromBundle(Bundle bundle) {
+        ExtDataSource dataSource = new ExtDataSource(bundle.getString(KeyUri, ""));
+        Serializable headers = bundle.getSerializable(KeyHeaders);
+        if (headers instanceof HashMap) {
+            dataSource.setHeaders((HashMap<String, String>) headers);
+        }
+        String username = bundle.getString(KeyUsername, "");
+        String password = bundle.getString(KeyPassword, "");
+        if (!username.isEmpty() || !password.isEmpty()) {
+            dataSource.setAuth(new ExtDataSource.Auth(username, password));
+        }
+        dataSource.setLowLatency(bundle.getBoolean(KeyLowLatency));
+        dataSource.setBufferProfile(bundle.getInt(KeyBufferProfile));
+        dataSource.setContentType(bundle.getInt(KeyContentType));
+        return dataSource;
+    }
+
+    private void onTileFocused(int index) {
+        if (index == focused) {
+            return;
+        }
+        int old = focused;
+        focused = index;
+        Tile tile = tiles.get(index);
+        if (tile.player != null && !tile.hardware) {
+            // hand the hardware decoder over, release first so the decoder count never exceeds the budget
+            Tile donor = tiles.get(old).hardware ? tiles.get(old) : null;
+            for (int i = 0; donor == null && i < tiles.size(); i++) {
+                if (tiles.get(i).hardware) {
+                    donor = tiles.get(i);
+                }
+            }
+            if (donor != null) {
+                donor.start(false);
+            }
+            tile.start(true);
+        }
+        applyBudget();
+    }
+
+    private void applyBudget() {
+        for (Tile tile : tiles) {
+            tile.applyBudget(tile.index == focused);
+        }
+    }
+
+    private void select(Tile tile) {
+        setResult(RESULT_OK, new Intent().putExtra(EXTRA_SELECTED, tile.position));
+        finish();
+    }
+
+    private class Tile {
+        final int index;
+        final View view;
+        final VideoView videoView;
+        final TextView nameView;
+        final String name;
+        final List<ExtDataSource> links;
+        final int position;
+        IExtPlayer player;
+        boolean hardware = false;
+        int linkIndex = 0;
+        int failures = 0;
+
+        private final IExtPlayer.Listener listener = new IExtPlayer.Listener() {
+            @Override
+            public void onPlaybackStateChanged(int state) {
+                if (state == IExtPlayer.STATE_READY) {
+                    failures = 0;
+                    nameView.setText(name);
+                }
+            }
+
+            @Override
+            public void onPlayerError(Exception error) {
+                Log.w(TAG, String.format(Locale.ENGLISH, "tile %s failed: %s", name, error));
+                failures += 1;
+                if (failures >= links.size()) {
+                    nameView.setText(getString(R.string.multiview_failed, name));
+                    return;
+                }
+                // next link of the channel
+                linkIndex = (linkIndex + 1) % links.size();
+                start(hardware);
+                applyBudget(index == focused);
+            }
+        };
+
+        Tile(int index, View view, String name, List<ExtDataSource> links, int position) {
+            this.index = index;
+            this.view = view;
+            this.videoView = view.findViewById(R.id.tile_video);
+            this.nameView = view.findViewById(R.id.tile_name);
+            this.name = name;
+            this.links = links;
+            this.position = position;
+            nameView.setText(name);
+            view.setOnFocusChangeListener((v, hasFocus) -> {
+                if (hasFocus) {
+                    onTileFocused(index);
+                }
+            });
+            view.setOnClickListener(v -> select(this));
+        }
+
+        void start(boolean hardware) {
+            release();
+            if (links.isEmpty()) {
+                nameView.setText(getString(R.string.multiview_failed, name));
+                return;
+            }
+            this.hardware = hardware;
+            player = (hardware ? hardwareFactory : softwareFactory).create(MultiViewActivity.this);
+            player.addListener(listener);
+            videoView.setSurfaceType(surfaceType);
+            videoView.setPlayer(player);
+            ExtDataSource source = links.get(linkIndex);
+            // neither player receives multicast reliably, same as the live player
+            if (MulticastRelay.isSupported(source)) {
+                source = relayMulticast(source);
+            }
+            player.setDataSource(source);
+            player.prepare();
+            player.play();
+        }
+
+        void applyBudget(boolean focused) {
+            if (player == null) {
+                return;
+            }
+            player.setVolume(focused ? 1f : 0f);
+            int bitrate = DecoderBudget.getTileBitrate(bitrateBudget, tiles.size(), focused);
+            if (focused) {
+                player.setVideoConstraints(0, 0, bitrate);
+            } else {
+                player.setVideoConstraints(DecoderBudget.LowResWidth, DecoderBudget.LowResHeight, bitrate);
+            }
+        }
+
+        void release() {
+            if (player == null) {
+                return;
+            }
+            player.removeListener(listener);
+            videoView.setPlayer(null);
+            player.release();
+            player = null;
+            hardware = false;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.orion.player;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.ext.ffmpeg.FfmpegLibrary;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
+import com.google.android.exoplayer2.util.MimeTypes;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// 设备解码能力，MediaCodecList 只查询一次；ijk 的轨道只有 ffmpeg 的编码名，这里统一换成 mime
+public class CodecSupport {
+    private static final String TAG = "CodecSupport";
+    private static final Map<String, String> FfmpegCodecMimes = new HashMap<>();
+
+    static {
+        FfmpegCodecMimes.put("h264", MimeTypes.VIDEO_H264);
+        FfmpegCodecMimes.put("hevc", MimeTypes.VIDEO_H265);
+        FfmpegCodecMimes.put("mpeg2video", MimeTypes.VIDEO_MPEG2);
+        FfmpegCodecMimes.put("mpeg4", MimeTypes.VIDEO_MP4V);
+        FfmpegCodecMimes.put("vp9", MimeTypes.VIDEO_VP9);
+        FfmpegCodecMimes.put("av1", MimeTypes.VIDEO_AV1);
+        FfmpegCodecMimes.put("aac", MimeTypes.AUDIO_AAC);
+        FfmpegCodecMimes.put("ac3", MimeTypes.AUDIO_AC3);
+        FfmpegCodecMimes.put("eac3", MimeTypes.AUDIO_E_AC3);
+        FfmpegCodecMimes.put("mp2", MimeTypes.AUDIO_MPEG_L2);
+        FfmpegCodecMimes.put("mp3", MimeTypes.AUDIO_MPEG);
+        FfmpegCodecMimes.put("dts", MimeTypes.AUDIO_DTS);
+        FfmpegCodecMimes.put("opus", MimeTypes.AUDIO_OPUS);
+    }
+
+    private static class Decoders {
+        boolean hardware = false;
+        boolean hardwareTenBit = false;
+        boolean software = false;
+    }
+
+    @Nullable
+    private static Map<String, Decoders> decoders;
+
+    private CodecSupport() {
+    }
+
+    private static synchronized Map<String, Decoders> probe() {
+        if (decoders != null) {
+            return decoders;
+        }
+        Map<String, Decoders> result = new HashMap<>();
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (info.isEncoder()) {
+                continue;
+            }
+            boolean software = isSoftware(info);
+            for (String type : info.getSupportedTypes()) {
+                String mime = type.toLowerCase(Locale.ROOT);
+                Decoders entry = result.get(mime);
+                if (entry == null) {
+                    entry = new Decoders();
+                    result.put(mime, entry);
+                }
+                if (software) {
+                    entry.software = true;
+                    continue;
+                }
+                entry.hardware = true;
+                try {
+                    for (MediaCodecInfo.CodecProfileLevel level : info.getCapabilitiesForType(type).profileLevels) {
+                        entry.hardwareTenBit |= isTenBitProfile(mime, level.profile);
+                    }
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "query " + info.getName() + " failed: " + e);
+                }
+            }
+        }
+        Log.i(TAG, String.format(Locale.ENGLISH, "probed %d decoder types", result.size()));
+        decoders = result;
+        return result;
+    }
+
+    public static boolean isSoftware(MediaCodecInfo info) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return info.isSoftwareOnly();
+        }
+        String name = info.getName().toLowerCase(Locale.ROOT);
+        return name.startsWith("omx.google.") || name.startsWith("c2.android.") || name.contains(".sw.");
+    }
+
+    private static boolean isTenBitProfile(String mime, int profile) {
+        switch (mime) {
+            case MimeTypes.VIDEO_H265:
+                return profile == MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10
+                        || profile == MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10HDR10
+                        || profile == MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10HDR10Plus;
+            case MimeTypes.VIDEO_VP9:
+                return profile == MediaCodecInfo.CodecProfileLevel.VP9Profile2
+                        || profile == MediaCodecInfo.CodecProfileLevel.VP9Profile3;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean hasHardwareDecoder(String mime, boolean tenBit) {
+        Decoders entry = probe().get(mime);
+        return entry != null && (tenBit ? entry.hardwareTenBit : entry.hardware);
+    }
+
+    // any decoder exoplayer can use, MediaCodec in software or the ffmpeg extension
+    public static boolean hasExoDecoder(String mime) {
+        Decoders entry = probe().get(mime);
+        if (entry != null && (entry.hardware || entry.software)) {
+            return true;
+        }
+        return MimeTypes.isAudio(mime) && FfmpegLibrary.isAvailable() && FfmpegLibrary.supportsFormat(mime);
+    }
+
+    @Nullable
+    public static String mimeOf(Format format) {
+        if (format.sampleMimeType != null && format.sampleMimeType.contains("/")) {
+            return format.sampleMimeType;
+        }
+        // ijk tracks carry the ffmpeg codec name
+        return format.codecs != null ? FfmpegCodecMimes.get(format.codecs.toLowerCase(Locale.ROOT)) : null;
+    }
+
+    // only known from exo tracks, ijk doesn't report the profile
+    public static boolean isTenBit(Format format) {
+        String mime = mimeOf(format);
+        if (mime == null || format.codecs == null || !format.codecs.contains(".")) {
+            return false;
+        }
+        Pair<Integer, Integer> profile = MediaCodecUtil.getCodecProfileAndLevel(format);
+        return profile != null && isTenBitProfile(mime, profile.first);
+    }
+}
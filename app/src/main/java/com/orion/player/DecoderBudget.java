@@ -0,0 +1,89 @@
+package com.orion.player;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+
+import java.util.Locale;
+
+// 多画面的资源预算：同时解码的路数和总码率都不能超过设备能力
+public class DecoderBudget {
+    private static final String TAG = "DecoderBudget";
+    public static final int MaxTiles = 4;
+    // vendors report 16 or 32 instances, in practice a tv box keeps up with a few hd streams
+    private static final int MaxHardwareDecoders = 4;
+    // software decoding needs spare cores, the ui and the hardware pipelines run as well
+    private static final int MinCoresForSoftware = 4;
+    private static final long DefaultBitrateBudget = 20_000_000;
+    // leave headroom, the estimate is an average
+    private static final float BitrateBudgetFraction = 0.75f;
+    // variant cap for tiles without focus
+    public static final int LowResWidth = 640;
+    public static final int LowResHeight = 360;
+
+    private static int hardwareDecoders = -1;
+
+    private DecoderBudget() {
+    }
+
+    public static synchronized int getHardwareDecoders() {
+        if (hardwareDecoders >= 0) {
+            return hardwareDecoders;
+        }
+        int max = 0;
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (info.isEncoder() || CodecSupport.isSoftware(info)) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (!type.equalsIgnoreCase(MediaFormat.MIMETYPE_VIDEO_AVC)) {
+                    continue;
+                }
+                try {
+                    max = Math.max(max, info.getCapabilitiesForType(type).getMaxSupportedInstances());
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "query " + info.getName() + " failed: " + e);
+                }
+            }
+        }
+        hardwareDecoders = Math.min(max, MaxHardwareDecoders);
+        Log.i(TAG, String.format(Locale.ENGLISH, "hardware avc decoders: %d, usable: %d", max, hardwareDecoders));
+        return hardwareDecoders;
+    }
+
+    public static int getSoftwareDecoders(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null || am.isLowRamDevice() || Runtime.getRuntime().availableProcessors() < MinCoresForSoftware) {
+            return 0;
+        }
+        return 2;
+    }
+
+    // at least one tile, the focused one always decodes in hardware
+    public static int getMaxTiles(Context context) {
+        int tiles = getHardwareDecoders() + getSoftwareDecoders(context);
+        return Math.max(1, Math.min(tiles, MaxTiles));
+    }
+
+    public static long getBitrateBudget(Context context) {
+        long estimate = DefaultBandwidthMeter.getSingletonInstance(context).getBitrateEstimate();
+        if (estimate <= 0) {
+            return DefaultBitrateBudget;
+        }
+        return (long) (estimate * BitrateBudgetFraction);
+    }
+
+    // the focused tile gets half of the budget, the others share the rest
+    public static int getTileBitrate(long budget, int tiles, boolean focused) {
+        if (tiles <= 1) {
+            return (int) Math.min(budget, Integer.MAX_VALUE);
+        }
+        long bitrate = focused ? budget / 2 : budget / 2 / (tiles - 1);
+        return (int) Math.min(bitrate, Integer.MAX_VALUE);
+    }
+}
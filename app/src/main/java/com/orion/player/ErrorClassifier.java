@@ -0,0 +1,120 @@
+package com.orion.player;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import androidx.annotation.IntDef;
+
+import com.google.android.exoplayer2.PlaybackException;
+import com.orion.player.ijk.IjkPlayerException;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import tv.danmaku.ijk.media.player.IMediaPlayer;
+
+// 播放错误分类：网络错误换线路，解封装错误说明线路本身有问题，解码错误换播放器重试同一线路
+public class ErrorClassifier {
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({KIND_UNKNOWN, KIND_NETWORK, KIND_DEMUXER, KIND_DECODER})
+    public @interface Kind {}
+    public static final int KIND_UNKNOWN = 0;
+    public static final int KIND_NETWORK = 1;
+    public static final int KIND_DEMUXER = 2;
+    public static final int KIND_DECODER = 3;
+
+    // IjkMediaPlayer posts ffplay errors with this what and the ffmpeg error code in extra
+    private static final int MEDIA_ERROR_IJK_PLAYER = -10000;
+    // ffmpeg FFERRTAG codes
+    private static final int AVERROR_DECODER_NOT_FOUND = errTag(0xF8, 'D', 'E', 'C');
+    private static final int AVERROR_DEMUXER_NOT_FOUND = errTag(0xF8, 'D', 'E', 'M');
+    private static final int AVERROR_STREAM_NOT_FOUND = errTag(0xF8, 'S', 'T', 'R');
+    private static final int AVERROR_INVALIDDATA = errTag('I', 'N', 'D', 'A');
+    private static final int AVERROR_EOF = errTag('E', 'O', 'F', ' ');
+    // errno of AVERROR(e): EIO, ENETDOWN, ENETUNREACH, ECONNABORTED, ECONNRESET, ETIMEDOUT, ECONNREFUSED, EHOSTUNREACH
+    private static final int[] NetworkErrnos = {5, 100, 101, 103, 104, 110, 111, 113};
+
+    private ErrorClassifier() {
+    }
+
+    private static int errTag(int a, int b, int c, int d) {
+        return -(a | (b << 8) | (c << 16) | (d << 24));
+    }
+
+    public static @Kind int classify(Exception error) {
+        if (error instanceof PlaybackException) {
+            return classifyExo(((PlaybackException) error).errorCode);
+        }
+        if (error instanceof IjkPlayerException) {
+            IjkPlayerException e = (IjkPlayerException) error;
+            return classifyIjk(e.what, e.extra);
+        }
+        return KIND_UNKNOWN;
+    }
+
+    public static @Kind int classifyExo(int errorCode) {
+        if (errorCode == PlaybackException.ERROR_CODE_TIMEOUT) {
+            return KIND_NETWORK;
+        }
+        // codes are grouped by thousands: 2xxx io, 3xxx parsing, 4xxx decoding, 5xxx audio track
+        switch (errorCode / 1000) {
+            case 2:
+                return KIND_NETWORK;
+            case 3:
+                return KIND_DEMUXER;
+            case 4:
+            case 5:
+                return KIND_DECODER;
+            default:
+                return KIND_UNKNOWN;
+        }
+    }
+
+    public static @Kind int classifyIjk(int what, int extra) {
+        switch (what) {
+            case IMediaPlayer.MEDIA_ERROR_IO:
+            case IMediaPlayer.MEDIA_ERROR_TIMED_OUT:
+            case IMediaPlayer.MEDIA_ERROR_SERVER_DIED:
+                return KIND_NETWORK;
+            case IMediaPlayer.MEDIA_ERROR_MALFORMED:
+            case IMediaPlayer.MEDIA_ERROR_NOT_VALID_FOR_PROGRESSIVE_PLAYBACK:
+                return KIND_DEMUXER;
+            case IMediaPlayer.MEDIA_ERROR_UNSUPPORTED:
+                return KIND_DECODER;
+            case MEDIA_ERROR_IJK_PLAYER:
+                return classifyFfmpeg(extra);
+            default:
+                return KIND_UNKNOWN;
+        }
+    }
+
+    private static @Kind int classifyFfmpeg(int error) {
+        if (error == AVERROR_DECODER_NOT_FOUND) {
+            return KIND_DECODER;
+        }
+        if (error == AVERROR_DEMUXER_NOT_FOUND || error == AVERROR_STREAM_NOT_FOUND || error == AVERROR_INVALIDDATA) {
+            return KIND_DEMUXER;
+        }
+        if (error == AVERROR_EOF) {
+            return KIND_NETWORK;
+        }
+        int tag = -error;
+        // AVERROR_HTTP_*: 0xF8 followed by '4' or '5'
+        if ((tag & 0xFF) == 0xF8 && ((tag >> 8) & 0xFF) >= '4' && ((tag >> 8) & 0xFF) <= '5') {
+            return KIND_NETWORK;
+        }
+        for (int errno : NetworkErrnos) {
+            if (tag == errno) {
+                return KIND_NETWORK;
+            }
+        }
+        return KIND_UNKNOWN;
+    }
+}
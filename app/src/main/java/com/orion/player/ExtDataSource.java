@@ -1,17 +1,46 @@
 package com.orion.player;
 
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.collection.ArrayMap;
 
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 import java.util.Map;
 import java.util.Objects;
 
 public class ExtDataSource {
     public static final Auth NoAuth = new Auth("", "");
 
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({CONTENT_TYPE_UNKNOWN, CONTENT_TYPE_HLS, CONTENT_TYPE_DASH, CONTENT_TYPE_RTSP, CONTENT_TYPE_TS})
+    public @interface ContentType {}
+    public static final int CONTENT_TYPE_UNKNOWN = 0;
+    public static final int CONTENT_TYPE_HLS = 1;
+    public static final int CONTENT_TYPE_DASH = 2;
+    public static final int CONTENT_TYPE_RTSP = 3;
+    public static final int CONTENT_TYPE_TS = 4;
+
     private final String uri;
     private Map<String, String> headers;
     private Auth auth;
+    // 低延迟直播：贴近直播边缘播放，缓冲更小
+    private boolean lowLatency = false;
+    // exo.BufferProfile, ijkplayer ignores it
+    private int bufferProfile = 0;
+    // 已知的流类型，exo 据此直接选 media source，不再嗅探
+    @ContentType
+    private int contentType = CONTENT_TYPE_UNKNOWN;
 
     public ExtDataSource(String uri) {
         this.uri = uri;
@@ -42,6 +71,31 @@ public class ExtDataSource {
         this.auth = auth;
     }
 
+    public boolean isLowLatency() {
+        return lowLatency;
+    }
+
+    public void setLowLatency(boolean lowLatency) {
+        this.lowLatency = lowLatency;
+    }
+
+    public int getBufferProfile() {
+        return bufferProfile;
+    }
+
+    public void setBufferProfile(int bufferProfile) {
+        this.bufferProfile = bufferProfile;
+    }
+
+    @ContentType
+    public int getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(@ContentType int contentType) {
+        this.contentType = contentType;
+    }
+
     public static class Auth {
         public final String username;
         public final String password;
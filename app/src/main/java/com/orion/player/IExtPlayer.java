@@ -11,6 +11,7 @@ import android.view.SurfaceView;
 import android.view.TextureView;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 
 import com.google.android.exoplayer2.text.CueGroup;
 import com.orion.player.render.VideoGLSurfaceView;
@@ -32,6 +33,7 @@ public interface IExtPlayer {
         default void onTracksChanged(List<ExtTrack> tracks) {}
         default void onIsPlayingChanged(boolean isPlaying) {}
         default void onCues(CueGroup cues) {}
+        default void onRenderedFirstFrame() {}
     }
 
     @Documented
@@ -57,6 +59,12 @@ public interface IExtPlayer {
     ExtDataSource getDataSource();
 
     void prepare();
+    // 是否支持在已准备好的实例上直接 setDataSource + prepare 切换
+    boolean isReusable();
+    // 有些配置只能在创建时指定，数据源要求不同的配置时不能复用
+    default boolean isReusableFor(ExtDataSource dataSource) {
+        return isReusable();
+    }
     void play();
     void pause();
     void stop();
@@ -67,12 +75,23 @@ public interface IExtPlayer {
     void setPlaybackSpeed(float speed);
     float getPlaybackSpeed();
 
+    void setVolume(float volume);
+
+    // 限制视频轨道的分辨率和码率，用于多画面里没有焦点的窗口；0为不限制，只对多码率的流有效
+    default void setVideoConstraints(int maxWidth, int maxHeight, int maxBitrate) {}
+
     @State
     int getPlaybackState();
 
     Looper getApplicationLooper();
 
     double getNetworkSpeed();
+    // how far playback is behind the live edge, -1 if unknown or not live
+    long getCurrentLiveOffset();
+
+    // 当前使用的缓冲或参数配置名，显示在频道信息里，未知时为null
+    @Nullable
+    String getPlaybackProfile();
 
     long getCurrentPosition();
     long getDuration();
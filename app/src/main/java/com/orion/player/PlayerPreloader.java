@@ -0,0 +1,245 @@
+package com.orion.player;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// 为相邻频道预先准备静音、无surface的播放器，换台时直接接到VideoView上
+public class PlayerPreloader {
+    private static final String TAG = "PlayerPreloader";
+    // paused live player falls behind live edge, rebuild it after a while
+    private static final long MaxWarmAgeMs = 30 * 1000;
+    // below this memory class only one warm player is allowed
+    private static final int MinMemoryClassMb = 192;
+
+    private final Context context;
+    private final Handler mHandler;
+    private final List<WarmPlayer> warmPlayers;
+    private final Runnable refresher = this::refresh;
+    private IExtPlayerFactory<? extends IExtPlayer> factory;
+    private List<ExtDataSource> wanted;
+    private int maxPlayers = 0;
+
+    public PlayerPreloader(Context context) {
+        this.context = context;
+        this.mHandler = new Handler(context.getMainLooper());
+        this.warmPlayers = new ArrayList<>();
+        this.wanted = new ArrayList<>();
+    }
+
+    public void setMaxPlayers(int maxPlayers) {
+        this.maxPlayers = maxPlayers;
+        retain(factory, wanted);
+    }
+
+    // 预热播放器数量，内存紧张时降级
+    public int getBudget() {
+        if (maxPlayers <= 0) {
+            return 0;
+        }
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null || am.isLowRamDevice()) {
+            return 0;
+        }
+        ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+        am.getMemoryInfo(info);
+        if (info.lowMemory) {
+            return 0;
+        }
+        if (am.getMemoryClass() < MinMemoryClassMb) {
+            return Math.min(maxPlayers, 1);
+        }
+        return maxPlayers;
+    }
+
+    // keep warm players for data sources in order, the rest are released
+    public void retain(IExtPlayerFactory<? extends IExtPlayer> factory, List<ExtDataSource> dataSources) {
+        if (this.factory != factory) {
+            releaseAll();
+            this.factory = factory;
+        }
+        int budget = getBudget();
+        List<ExtDataSource> retained = new ArrayList<>();
+        for (ExtDataSource dataSource : dataSources) {
+            if (retained.size() >= budget) {
+                break;
+            }
+            retained.add(dataSource);
+        }
+        wanted = retained;
+        Iterator<WarmPlayer> it = warmPlayers.iterator();
+        while (it.hasNext()) {
+            WarmPlayer warm = it.next();
+            if (indexOf(wanted, warm.player.getDataSource()) < 0 || warm.isStale()) {
+                it.remove();
+                warm.release();
+            }
+        }
+        if (warmPlayers.isEmpty()) {
+            mHandler.removeCallbacks(refresher);
+        }
+    }
+
+    public void preload(IExtPlayerFactory<? extends IExtPlayer> factory, List<ExtDataSource> dataSources) {
+        retain(factory, dataSources);
+        for (ExtDataSource dataSource : wanted) {
+            if (find(dataSource) != null) {
+                continue;
+            }
+            Log.i(TAG, String.format(Locale.ENGLISH, "preload %s", dataSource.getUri()));
+            IExtPlayer player = factory.create(context);
+            WarmPlayer warm = new WarmPlayer(player);
+            player.addListener(warm);
+            player.setVolume(0f);
+            player.setDataSource(dataSource);
+            player.prepare();
+            warmPlayers.add(warm);
+        }
+        mHandler.removeCallbacks(refresher);
+        if (!warmPlayers.isEmpty()) {
+            mHandler.postDelayed(refresher, MaxWarmAgeMs);
+        }
+    }
+
+    private void refresh() {
+        if (factory != null) {
+            preload(factory, wanted);
+        }
+    }
+
+    @Nullable
+    public WarmPlayer take(IExtPlayerFactory<? extends IExtPlayer> factory, ExtDataSource dataSource) {
+        if (factory != this.factory) {
+            return null;
+        }
+        WarmPlayer warm = find(dataSource);
+        if (warm == null) {
+            return null;
+        }
+        warmPlayers.remove(warm);
+        if (warm.isStale() || warm.failed) {
+            warm.release();
+            return null;
+        }
+        Log.i(TAG, String.format(Locale.ENGLISH, "use warm player for %s", dataSource.getUri()));
+        warm.player.removeListener(warm);
+        return warm;
+    }
+
+    // 换下来的播放器如果还正常，留给相邻频道用，返回false时由调用方释放
+    public boolean park(IExtPlayerFactory<? extends IExtPlayer> factory, IExtPlayer player) {
+        if (factory != this.factory || getBudget() == 0 || player.getPlayerError() != null) {
+            return false;
+        }
+        int state = player.getPlaybackState();
+        if (state != IExtPlayer.STATE_READY && state != IExtPlayer.STATE_BUFFERING) {
+            return false;
+        }
+        if (player.getDataSource() == null || find(player.getDataSource()) != null) {
+            return false;
+        }
+        player.setVolume(0f);
+        player.pause();
+        WarmPlayer warm = new WarmPlayer(player);
+        player.addListener(warm);
+        warmPlayers.add(warm);
+        return true;
+    }
+
+    public Set<String> getWarmLinks() {
+        Set<String> links = new HashSet<>();
+        for (WarmPlayer warm : warmPlayers) {
+            ExtDataSource dataSource = warm.player.getDataSource();
+            if (dataSource != null) {
+                links.add(dataSource.getUri());
+            }
+        }
+        return links;
+    }
+
+    public void releaseAll() {
+        mHandler.removeCallbacks(refresher);
+        for (WarmPlayer warm : warmPlayers) {
+            warm.release();
+        }
+        warmPlayers.clear();
+    }
+
+    @Nullable
+    private WarmPlayer find(ExtDataSource dataSource) {
+        for (WarmPlayer warm : warmPlayers) {
+            ExtDataSource warmSource = warm.player.getDataSource();
+            if (warmSource != null && warmSource.getUri().equals(dataSource.getUri())) {
+                return warm;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(List<ExtDataSource> dataSources, @Nullable ExtDataSource dataSource) {
+        if (dataSource == null) {
+            return -1;
+        }
+        for (int i = 0; i < dataSources.size(); i++) {
+            if (dataSources.get(i).getUri().equals(dataSource.getUri())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static class WarmPlayer implements IExtPlayer.Listener {
+        public final IExtPlayer player;
+        private final long createdAt;
+        private List<ExtTrack> tracks;
+        private boolean failed = false;
+
+        WarmPlayer(IExtPlayer player) {
+            this.player = player;
+            this.createdAt = SystemClock.elapsedRealtime();
+        }
+
+        boolean isStale() {
+            return SystemClock.elapsedRealtime() - createdAt > MaxWarmAgeMs;
+        }
+
+        void release() {
+            player.release();
+        }
+
+        // 预热期间的事件没人收到，接管后补发一次
+        public void replay(IExtPlayer.Listener listener) {
+            listener.onDataSourceUsed(player.getDataSource());
+            if (tracks != null) {
+                listener.onTracksChanged(tracks);
+            }
+            ExtVideoSize videoSize = player.getVideoSize();
+            if (!videoSize.equals(ExtVideoSize.UNKNOWN)) {
+                listener.onVideoSizeChanged(videoSize);
+            }
+            listener.onPlaybackStateChanged(player.getPlaybackState());
+        }
+
+        @Override
+        public void onTracksChanged(List<ExtTrack> tracks) {
+            this.tracks = tracks;
+        }
+
+        @Override
+        public void onPlayerError(Exception error) {
+            Log.w(TAG, "warm player failed: " + error);
+            failed = true;
+        }
+    }
+}
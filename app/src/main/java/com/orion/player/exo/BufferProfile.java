@@ -0,0 +1,112 @@
+package com.orion.player.exo;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Locale;
+
+// ExoPlayer 缓冲策略；自动模式按测得的带宽选择时长，按应用内存等级限制缓冲字节数
+public class BufferProfile {
+    private static final String TAG = "BufferProfile";
+
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({PROFILE_AUTO, PROFILE_FAST_START, PROFILE_BALANCED, PROFILE_RESILIENT})
+    public @interface Profile {}
+    public static final int PROFILE_AUTO = 0;
+    public static final int PROFILE_FAST_START = 1;
+    public static final int PROFILE_BALANCED = 2;
+    public static final int PROFILE_RESILIENT = 3;
+    private static final String[] names = {"auto", "fast-start", "balanced", "resilient"};
+
+    // fast LAN, start as soon as possible
+    private static final long FastNetworkBps = 20_000_000;
+    // below this a single HD stream barely fits, keep more media ahead
+    private static final long SlowNetworkBps = 4_000_000;
+    private static final int LowMemoryClassMb = 128;
+    // allocator cap is memory class / 8, in this range
+    private static final int MinBufferBytes = 8 * 1024 * 1024;
+    private static final int MaxBufferBytes = 48 * 1024 * 1024;
+
+    // min buffer, max buffer, buffer to start playback, buffer to resume after a stall
+    private static final int[][] Durations = {
+            {},
+            {5000, 15000, 500, 2500},
+            {15000, 30000, 1500, 3000},
+            {30000, 60000, 2500, 5000},
+    };
+    // close to the live edge, start on half a second of media
+    private static final int[] LowLatencyDurations = {2000, 10000, 500, 1000};
+
+    private BufferProfile() {
+    }
+
+    public static String getName(@Profile int profile) {
+        return names[profile];
+    }
+
+    @Profile
+    public static int resolve(Context context, @Profile int profile) {
+        if (profile != PROFILE_AUTO) {
+            return profile;
+        }
+        long bitrate = DefaultBandwidthMeter.getSingletonInstance(context).getBitrateEstimate();
+        if (bitrate >= FastNetworkBps) {
+            return PROFILE_FAST_START;
+        }
+        if (bitrate > 0 && bitrate < SlowNetworkBps) {
+            // long buffers on a small heap mean gc churn, the byte cap alone is not enough
+            return getMemoryClass(context) < LowMemoryClassMb ? PROFILE_BALANCED : PROFILE_RESILIENT;
+        }
+        return PROFILE_BALANCED;
+    }
+
+    public static int getBufferBytesLimit(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null || am.isLowRamDevice()) {
+            return MinBufferBytes;
+        }
+        long bytes = (long) am.getMemoryClass() * 1024 * 1024 / 8;
+        return (int) Math.max(MinBufferBytes, Math.min(bytes, MaxBufferBytes));
+    }
+
+    private static int getMemoryClass(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return am != null ? am.getMemoryClass() : 0;
+    }
+
+    // profile should be resolved already
+    public static LoadControl buildLoadControl(Context context, @Profile int resolved, boolean lowLatency) {
+        int[] durations = lowLatency ? LowLatencyDurations : Durations[resolved];
+        int bytesLimit = getBufferBytesLimit(context);
+        Log.i(TAG, String.format(Locale.ENGLISH, "profile: %d, low latency: %b, buffer: %d-%dms, start: %dms, rebuffer: %dms, bytes limit: %d",
+                resolved, lowLatency, durations[0], durations[1], durations[2], durations[3], bytesLimit));
+        // the byte target is a hard cap: loading stops there even if the min duration is not reached
+        return new DefaultLoadControl.Builder()
+                .setAllocator(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE))
+                .setBufferDurationsMs(durations[0], durations[1], durations[2], durations[3])
+                .setTargetBufferBytes(bytesLimit)
+                .setPrioritizeTimeOverSizeThresholds(false)
+                .build();
+    }
+}
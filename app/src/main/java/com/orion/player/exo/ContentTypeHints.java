@@ -0,0 +1,116 @@
+package com.orion.player.exo;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.orion.player.ExtDataSource;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// 线路的流类型：数据源上给定的 > 之前响应的 Content-Type > 链接后缀和参数
+public class ContentTypeHints {
+    private static final int MaxEntries = 500;
+    // xtream 这类接口 /live/u/p/1?output=ts
+    private static final Pattern HlsQuery = Pattern.compile("[?&](?:extension|output|type|format)=(?:m3u8|hls)(?:&|$)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TsQuery = Pattern.compile("[?&](?:extension|output|type|format)=(?:ts|mpegts)(?:&|$)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DashQuery = Pattern.compile("[?&](?:extension|output|type|format)=(?:mpd|dash)(?:&|$)", Pattern.CASE_INSENSITIVE);
+
+    private static final Map<String, Integer> learned = Collections.synchronizedMap(new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MaxEntries;
+        }
+    });
+
+    private ContentTypeHints() {
+    }
+
+    public static @ExtDataSource.ContentType int resolve(ExtDataSource dataSource) {
+        if (dataSource.getContentType() != ExtDataSource.CONTENT_TYPE_UNKNOWN) {
+            return dataSource.getContentType();
+        }
+        Integer type = learned.get(dataSource.getUri());
+        if (type != null) {
+            return type;
+        }
+        return infer(dataSource.getUri());
+    }
+
+    public static @ExtDataSource.ContentType int infer(String link) {
+        Uri uri = Uri.parse(link);
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        if (scheme.equals("rtsp")) {
+            return ExtDataSource.CONTENT_TYPE_RTSP;
+        }
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            return ExtDataSource.CONTENT_TYPE_UNKNOWN;
+        }
+        String path = uri.getPath() != null ? uri.getPath().toLowerCase(Locale.ROOT) : "";
+        if (path.endsWith(".m3u8")) {
+            return ExtDataSource.CONTENT_TYPE_HLS;
+        }
+        if (path.endsWith(".mpd")) {
+            return ExtDataSource.CONTENT_TYPE_DASH;
+        }
+        if (path.endsWith(".ts")) {
+            return ExtDataSource.CONTENT_TYPE_TS;
+        }
+        if (HlsQuery.matcher(link).find()) {
+            return ExtDataSource.CONTENT_TYPE_HLS;
+        }
+        if (TsQuery.matcher(link).find()) {
+            return ExtDataSource.CONTENT_TYPE_TS;
+        }
+        if (DashQuery.matcher(link).find()) {
+            return ExtDataSource.CONTENT_TYPE_DASH;
+        }
+        return ExtDataSource.CONTENT_TYPE_UNKNOWN;
+    }
+
+    // response headers of the link itself, generic types like octet-stream are ignored
+    public static void learn(String link, Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() == null || !header.getKey().equalsIgnoreCase("Content-Type") || header.getValue().isEmpty()) {
+                continue;
+            }
+            int type = fromMimeType(header.getValue().get(0));
+            if (type != ExtDataSource.CONTENT_TYPE_UNKNOWN) {
+                learned.put(link, type);
+            }
+            return;
+        }
+    }
+
+    // the hint was wrong, sniff next time
+    public static void forget(String link) {
+        learned.remove(link);
+    }
+
+    public static @ExtDataSource.ContentType int fromMimeType(@Nullable String mimeType) {
+        if (mimeType == null) {
+            return ExtDataSource.CONTENT_TYPE_UNKNOWN;
+        }
+        int semicolon = mimeType.indexOf(';');
+        String type = (semicolon >= 0 ? mimeType.substring(0, semicolon) : mimeType).trim().toLowerCase(Locale.ROOT);
+        switch (type) {
+            case "application/vnd.apple.mpegurl":
+            case "application/x-mpegurl":
+            case "audio/mpegurl":
+            case "audio/x-mpegurl":
+                return ExtDataSource.CONTENT_TYPE_HLS;
+            case "application/dash+xml":
+                return ExtDataSource.CONTENT_TYPE_DASH;
+            case "video/mp2t":
+            case "video/mpegts":
+                return ExtDataSource.CONTENT_TYPE_TS;
+            default:
+                return ExtDataSource.CONTENT_TYPE_UNKNOWN;
+        }
+    }
+}
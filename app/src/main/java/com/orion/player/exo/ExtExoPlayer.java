@@ -14,6 +14,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLivePlaybackSpeedControl;
 import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlayer;
 import com.google.android.exoplayer2.Format;
@@ -24,11 +25,13 @@ import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.Tracks;
 import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSource;
 import com.google.android.exoplayer2.source.DefaultMediaSourceFactory;
+import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.text.CueGroup;
 import com.google.android.exoplayer2.trackselection.TrackSelectionOverride;
 import com.google.android.exoplayer2.upstream.DefaultDataSource;
 import com.google.android.exoplayer2.video.VideoSize;
+import com.orion.player.ErrorClassifier;
 import com.orion.player.ExtDataSource;
 import com.orion.player.IExtPlayer;
 import com.orion.player.ExtTrack;
@@ -36,6 +39,7 @@ import com.orion.player.ExtVideoSize;
 import com.orion.player.render.VideoGLSurfaceView;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -45,6 +49,14 @@ import okhttp3.OkHttpClient;
 
 public class ExtExoPlayer implements IExtPlayer {
     private static final String TAG = "ExtExoPlayer";
+    // 低延迟直播，目标落后直播边缘3s，靠小幅调整播放速度追赶
+    private static final MediaItem.LiveConfiguration LowLatencyLiveConfiguration = new MediaItem.LiveConfiguration.Builder()
+            .setTargetOffsetMs(3000)
+            .setMinOffsetMs(1500)
+            .setMaxOffsetMs(10000)
+            .setMinPlaybackSpeed(0.97f)
+            .setMaxPlaybackSpeed(1.03f)
+            .build();
     private final Context context;
     private final List<Listener> listeners;
     private final SimpleTransferMonitor transferMonitor;
@@ -53,7 +65,16 @@ public class ExtExoPlayer implements IExtPlayer {
 
     private Handler mHandler;
     private ExoPlayer innerPlayer;
+    private OkHttpDataSource.Factory okHttpDataSourceFactory;
+    private TypedMediaSources typedMediaSources;
     private float playbackSpeed = 0.0f;
+    // load control is fixed once the player is built
+    private boolean lowLatency = false;
+    @BufferProfile.Profile
+    private int bufferProfile = BufferProfile.PROFILE_AUTO;
+    // auto resolved at build time
+    @BufferProfile.Profile
+    private int resolvedBufferProfile = BufferProfile.PROFILE_AUTO;
     private ExtDataSource dataSource;
     private VideoGLSurfaceView videoGLSurfaceView;
     private final VideoGLSurfaceView.Callback callback = surface -> {
@@ -76,26 +97,26 @@ public class ExtExoPlayer implements IExtPlayer {
         renderFactory = renderFactory.forceEnableMediaCodecAsynchronousQueueing();
         renderFactory = renderFactory.setExtensionRendererMode(DefaultRenderersFactory.EXTENSION_RENDERER_MODE_ON);
         builder.setRenderersFactory(renderFactory);
+        lowLatency = dataSource != null && dataSource.isLowLatency();
+        bufferProfile = dataSource != null ? dataSource.getBufferProfile() : BufferProfile.PROFILE_AUTO;
+        resolvedBufferProfile = BufferProfile.resolve(context, bufferProfile);
+        builder.setLoadControl(BufferProfile.buildLoadControl(context, resolvedBufferProfile, lowLatency));
+        if (lowLatency) {
+            builder.setLivePlaybackSpeedControl(new DefaultLivePlaybackSpeedControl.Builder()
+                    .setFallbackMinPlaybackSpeed(0.97f)
+                    .setFallbackMaxPlaybackSpeed(1.03f)
+                    .build());
+        }
 
         OkHttpClient client = new OkHttpClient.Builder().build();
-        OkHttpDataSource.Factory okHttpDataSourceFactory = new OkHttpDataSource.Factory((Call.Factory) client);
-        Map<String, String> headers = new ArrayMap<>();
-        ExtDataSource.Auth auth = dataSource.getAuth();
-        if (!auth.equals(ExtDataSource.NoAuth)) {
-            headers.put("Authorization", Credentials.basic(auth.username, auth.password));
-        }
-        Map<String, String> origHeaders = dataSource.getHeaders();
-        if (origHeaders.size() > 0) {
-            headers.putAll(origHeaders);
-        }
-        if (headers.size() > 0) {
-            okHttpDataSourceFactory.setDefaultRequestProperties(headers);
-        }
+        okHttpDataSourceFactory = new OkHttpDataSource.Factory((Call.Factory) client);
+        setRequestProperties(dataSource);
         DefaultDataSource.Factory dataSourceFactory = new DefaultDataSource.Factory(context, okHttpDataSourceFactory);
         dataSourceFactory.setTransferListener(transferMonitor);
         DefaultMediaSourceFactory mediaSourceFactory = new DefaultMediaSourceFactory(context);
         mediaSourceFactory.setDataSourceFactory(dataSourceFactory);
         builder.setMediaSourceFactory(mediaSourceFactory);
+        typedMediaSources = new TypedMediaSources(dataSourceFactory);
 
         innerPlayer = builder.build();
         innerPlayer.addListener(new SimpleListener());
@@ -106,15 +127,56 @@ public class ExtExoPlayer implements IExtPlayer {
         pendingOperations.clear();
     }
 
+    protected void setRequestProperties(ExtDataSource dataSource) {
+        Map<String, String> headers = new ArrayMap<>();
+        ExtDataSource.Auth auth = dataSource.getAuth();
+        if (!auth.equals(ExtDataSource.NoAuth)) {
+            headers.put("Authorization", Credentials.basic(auth.username, auth.password));
+        }
+        Map<String, String> origHeaders = dataSource.getHeaders();
+        if (origHeaders.size() > 0) {
+            headers.putAll(origHeaders);
+        }
+        // always set, so headers of previous data source won't leak to the next one
+        okHttpDataSourceFactory.setDefaultRequestProperties(headers);
+    }
+
     @Override
     public void setDataSource(ExtDataSource dataSource) {
         this.dataSource = dataSource;
+        @ExtDataSource.ContentType int contentType = ContentTypeHints.resolve(dataSource);
         MediaItem item = new MediaItem.Builder()
                 .setMediaId(dataSource.getUri())
                 .setUri(dataSource.getUri())
+                .setMimeType(TypedMediaSources.mimeTypeOf(contentType))
                 .setRequestMetadata(MediaItem.RequestMetadata.EMPTY)
+                .setLiveConfiguration(dataSource.isLowLatency() ? LowLatencyLiveConfiguration : MediaItem.LiveConfiguration.UNSET)
                 .build();
-        post(() -> innerPlayer.setMediaItem(item));
+        if (innerPlayer != null) {
+            // reuse renderers and codecs, only drop per-stream state
+            post(() -> {
+                setRequestProperties(dataSource);
+                innerPlayer.setTrackSelectionParameters(innerPlayer.getTrackSelectionParameters()
+                        .buildUpon()
+                        .clearOverrides()
+                        .setDisabledTrackTypes(Collections.emptySet())
+                        .build());
+                setMediaItem(item, contentType);
+            });
+            return;
+        }
+        post(() -> setMediaItem(item, contentType));
+    }
+
+    private void setMediaItem(MediaItem item, @ExtDataSource.ContentType int contentType) {
+        MediaSource mediaSource = typedMediaSources.create(item, contentType);
+        // unknown type, learn it from the response for the next time
+        transferMonitor.watchContentType(mediaSource == null ? item.mediaId : null);
+        if (mediaSource != null) {
+            innerPlayer.setMediaSource(mediaSource);
+        } else {
+            innerPlayer.setMediaItem(item);
+        }
     }
 
     protected void post(Runnable op) {
@@ -132,10 +194,22 @@ public class ExtExoPlayer implements IExtPlayer {
 
     @Override
     public void prepare() {
-        initExoPlayer();
+        if (innerPlayer == null) {
+            initExoPlayer();
+        }
         mHandler.post(innerPlayer::prepare);
     }
 
+    @Override
+    public boolean isReusable() {
+        return true;
+    }
+
+    @Override
+    public boolean isReusableFor(ExtDataSource dataSource) {
+        return innerPlayer == null || (dataSource.isLowLatency() == lowLatency && dataSource.getBufferProfile() == bufferProfile);
+    }
+
     @Override
     public void play() {
         post(innerPlayer::play);
@@ -185,6 +259,20 @@ public class ExtExoPlayer implements IExtPlayer {
         return playbackSpeed;
     }
 
+    @Override
+    public void setVolume(float volume) {
+        post(() -> innerPlayer.setVolume(volume));
+    }
+
+    @Override
+    public void setVideoConstraints(int maxWidth, int maxHeight, int maxBitrate) {
+        post(() -> innerPlayer.setTrackSelectionParameters(innerPlayer.getTrackSelectionParameters()
+                .buildUpon()
+                .setMaxVideoSize(maxWidth > 0 ? maxWidth : Integer.MAX_VALUE, maxHeight > 0 ? maxHeight : Integer.MAX_VALUE)
+                .setMaxVideoBitrate(maxBitrate > 0 ? maxBitrate : Integer.MAX_VALUE)
+                .build()));
+    }
+
     @Nullable
     @Override
     public Looper getApplicationLooper() {
@@ -218,6 +306,24 @@ public class ExtExoPlayer implements IExtPlayer {
         return transferMonitor.getNetworkSpeed();
     }
 
+    @Override
+    public long getCurrentLiveOffset() {
+        if (innerPlayer == null || !innerPlayer.isCurrentMediaItemLive()) {
+            return -1;
+        }
+        long offset = innerPlayer.getCurrentLiveOffset();
+        return offset == C.TIME_UNSET ? -1 : offset;
+    }
+
+    @Override
+    public String getPlaybackProfile() {
+        if (innerPlayer == null) {
+            return null;
+        }
+        String name = BufferProfile.getName(resolvedBufferProfile);
+        return lowLatency ? name + "/low-latency" : name;
+    }
+
     @Override
     public long getCurrentPosition() {
         return innerPlayer != null ? innerPlayer.getCurrentPosition() : 0;
@@ -366,8 +472,18 @@ public class ExtExoPlayer implements IExtPlayer {
             }
         }
 
+        @Override
+        public void onRenderedFirstFrame() {
+            for (Listener listener : listeners) {
+                listener.onRenderedFirstFrame();
+            }
+        }
+
         @Override
         public void onPlayerError(@NonNull PlaybackException error) {
+            if (dataSource != null && ErrorClassifier.classifyExo(error.errorCode) == ErrorClassifier.KIND_DEMUXER) {
+                ContentTypeHints.forget(dataSource.getUri());
+            }
             for (Listener listener : listeners) {
                 listener.onPlayerError(error);
             }
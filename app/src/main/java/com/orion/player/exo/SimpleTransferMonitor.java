@@ -3,6 +3,7 @@ package com.orion.player.exo;
 import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.TransferListener;
@@ -13,12 +14,25 @@ public class SimpleTransferMonitor implements TransferListener {
     private long totalTransferred = 0;
     private long lastMeasured = 0;
     private long lastMeasuredTimeMs = -1;
+    // the first response of this link tells its content type
+    @Nullable
+    private volatile String watchedLink;
+
+    public void watchContentType(@Nullable String link) {
+        watchedLink = link;
+    }
 
     @Override
     public void onTransferInitializing(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {}
 
     @Override
-    public void onTransferStart(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {}
+    public void onTransferStart(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {
+        String link = watchedLink;
+        if (isNetwork && link != null && link.equals(dataSpec.uri.toString())) {
+            watchedLink = null;
+            ContentTypeHints.learn(link, source.getResponseHeaders());
+        }
+    }
 
     @Override
     public void onBytesTransferred(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
@@ -0,0 +1,75 @@
+package com.orion.player.exo;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ts.DefaultTsPayloadReaderFactory;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.source.dash.DashMediaSource;
+import com.google.android.exoplayer2.source.hls.DefaultHlsExtractorFactory;
+import com.google.android.exoplayer2.source.hls.HlsMediaSource;
+import com.google.android.exoplayer2.source.rtsp.RtspMediaSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.TimestampAdjuster;
+import com.orion.player.ExtDataSource;
+
+// 类型已知的线路直接建对应的 media source，跳过 DefaultMediaSourceFactory 的类型推断和 extractor 嗅探
+class TypedMediaSources {
+    // 直播 ts 不一定从 IDR 开始，也不一定带 AUD
+    private static final int LiveTsFlags = DefaultTsPayloadReaderFactory.FLAG_ALLOW_NON_IDR_KEYFRAMES
+            | DefaultTsPayloadReaderFactory.FLAG_DETECT_ACCESS_UNITS;
+
+    private final HlsMediaSource.Factory hlsFactory;
+    private final DashMediaSource.Factory dashFactory;
+    private final RtspMediaSource.Factory rtspFactory;
+    private final ProgressiveMediaSource.Factory tsFactory;
+
+    TypedMediaSources(DataSource.Factory dataSourceFactory) {
+        // ts segments of a live playlist need the same flags as a plain ts stream
+        hlsFactory = new HlsMediaSource.Factory(dataSourceFactory)
+                .setExtractorFactory(new DefaultHlsExtractorFactory(LiveTsFlags, true));
+        dashFactory = new DashMediaSource.Factory(dataSourceFactory);
+        rtspFactory = new RtspMediaSource.Factory();
+        // a single extractor is used without sniffing
+        tsFactory = new ProgressiveMediaSource.Factory(dataSourceFactory, () -> new Extractor[]{
+                new TsExtractor(TsExtractor.MODE_SINGLE_PMT, new TimestampAdjuster(0), new DefaultTsPayloadReaderFactory(LiveTsFlags))
+        });
+    }
+
+    // null for unknown types, DefaultMediaSourceFactory handles them
+    @Nullable
+    MediaSource create(MediaItem item, @ExtDataSource.ContentType int contentType) {
+        switch (contentType) {
+            case ExtDataSource.CONTENT_TYPE_HLS:
+                return hlsFactory.createMediaSource(item);
+            case ExtDataSource.CONTENT_TYPE_DASH:
+                return dashFactory.createMediaSource(item);
+            case ExtDataSource.CONTENT_TYPE_RTSP:
+                return rtspFactory.createMediaSource(item);
+            case ExtDataSource.CONTENT_TYPE_TS:
+                return tsFactory.createMediaSource(item);
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    static String mimeTypeOf(@ExtDataSource.ContentType int contentType) {
+        switch (contentType) {
+            case ExtDataSource.CONTENT_TYPE_HLS:
+                return MimeTypes.APPLICATION_M3U8;
+            case ExtDataSource.CONTENT_TYPE_DASH:
+                return MimeTypes.APPLICATION_MPD;
+            case ExtDataSource.CONTENT_TYPE_RTSP:
+                return MimeTypes.APPLICATION_RTSP;
+            case ExtDataSource.CONTENT_TYPE_TS:
+                return MimeTypes.VIDEO_MP2T;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.orion.player.ijk;
+
+import java.util.Arrays;
+
+// 手写的 ASS 事件扫描：解释 {} 里常用的覆盖标签，其余丢掉，输出纯文本和按样式切分的区间；
+// 缓冲区重复使用，扫描时除了区间数组扩容不分配对象
+public class AssEventScanner {
+    public static final int FLAG_BOLD = 1;
+    public static final int FLAG_ITALIC = 1 << 1;
+    public static final int FLAG_UNDERLINE = 1 << 2;
+    public static final int FLAG_STRIKE_OUT = 1 << 3;
+
+    private final StringBuilder text = new StringBuilder();
+    private int[] runStarts = new int[8];
+    private int[] runEnds = new int[8];
+    private int[] runFlags = new int[8];
+    private int[] runColors = new int[8];
+    private float[] runSizes = new float[8];
+    private int runCount = 0;
+
+    private AssScript script;
+    private AssScript.Style eventStyle;
+    private AssScript.Style style;
+    private int runStart;
+    private int flags;
+    private int color;
+    private float size;
+    private boolean drawing;
+    // numpad alignment of the event, 0 when the style decides
+    private int alignment;
+    private float positionX;
+    private float positionY;
+
+    // the whole event text from `from` to `to`, without the Dialogue fields
+    public void scan(CharSequence event, int from, int to, AssScript script, AssScript.Style style) {
+        this.script = script;
+        text.setLength(0);
+        runCount = 0;
+        runStart = 0;
+        drawing = false;
+        alignment = 0;
+        positionX = Float.NaN;
+        positionY = Float.NaN;
+        eventStyle = style;
+        resetTo(style);
+        int i = from;
+        while (i < to) {
+            char c = event.charAt(i);
+            if (c == '{') {
+                int close = indexOf(event, '}', i + 1, to);
+                if (close >= 0) {
+                    parseOverrides(event, i + 1, close);
+                    i = close + 1;
+                    continue;
+                }
+            }
+            if (c == '\\' && i + 1 < to) {
+                char next = event.charAt(i + 1);
+                if (next == 'N' || next == 'n' || next == 'h') {
+                    if (!drawing) {
+                        // \n is a soft break, only wrap style 2 breaks on it; \h is a hard space
+                        text.append(next == 'N' ? '\n' : (next == 'n' ? ' ' : '\u00a0'));
+                    }
+                    i += 2;
+                    continue;
+                }
+            }
+            if (!drawing && c != '\r') {
+                text.append(c);
+            }
+            i++;
+        }
+        closeRun();
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public int getRunStart(int index) {
+        return runStarts[index];
+    }
+
+    public int getRunEnd(int index) {
+        return runEnds[index];
+    }
+
+    public int getRunFlags(int index) {
+        return runFlags[index];
+    }
+
+    // argb
+    public int getRunColor(int index) {
+        return runColors[index];
+    }
+
+    // script pixels, 0 when unknown
+    public float getRunSize(int index) {
+        return runSizes[index];
+    }
+
+    // the style of the event, \r may switch runs to others
+    public AssScript.Style getEventStyle() {
+        return eventStyle;
+    }
+
+    public int getAlignment() {
+        return alignment;
+    }
+
+    // script pixels, NaN without \pos or \move
+    public float getPositionX() {
+        return positionX;
+    }
+
+    public float getPositionY() {
+        return positionY;
+    }
+
+    private void resetTo(AssScript.Style style) {
+        closeRun();
+        this.style = style;
+        flags = (style.bold ? FLAG_BOLD : 0) | (style.italic ? FLAG_ITALIC : 0)
+                | (style.underline ? FLAG_UNDERLINE : 0) | (style.strikeOut ? FLAG_STRIKE_OUT : 0);
+        color = style.primaryColor;
+        size = style.fontSize;
+    }
+
+    private void closeRun() {
+        int end = text.length();
+        if (end <= runStart) {
+            return;
+        }
+        if (runCount == runStarts.length) {
+            int capacity = runCount * 2;
+            runStarts = Arrays.copyOf(runStarts, capacity);
+            runEnds = Arrays.copyOf(runEnds, capacity);
+            runFlags = Arrays.copyOf(runFlags, capacity);
+            runColors = Arrays.copyOf(runColors, capacity);
+            runSizes = Arrays.copyOf(runSizes, capacity);
+        }
+        runStarts[runCount] = runStart;
+        runEnds[runCount] = end;
+        runFlags[runCount] = flags;
+        runColors[runCount] = color;
+        runSizes[runCount] = size;
+        runCount++;
+        runStart = end;
+    }
+
+    private void parseOverrides(CharSequence s, int from, int to) {
+        int i = from;
+        while (i < to) {
+            // text between tags is a comment
+            if (s.charAt(i) != '\\') {
+                i++;
+                continue;
+            }
+            int nameStart = ++i;
+            // 1c, 3a and the like
+            if (i < to && Character.isDigit(s.charAt(i))) {
+                i++;
+            }
+            while (i < to && Character.isLetter(s.charAt(i))) {
+                i++;
+            }
+            int nameEnd = i;
+            int argEnd = i;
+            if (argEnd < to && s.charAt(argEnd) == '(') {
+                // \t(...) holds tags itself
+                int close = indexOf(s, ')', argEnd, to);
+                argEnd = close >= 0 ? close + 1 : to;
+            } else {
+                while (argEnd < to && s.charAt(argEnd) != '\\') {
+                    argEnd++;
+                }
+            }
+            applyTag(s, nameStart, nameEnd, nameEnd, argEnd);
+            i = argEnd;
+        }
+    }
+
+    private void applyTag(CharSequence s, int nameStart, int nameEnd, int argStart, int argEnd) {
+        boolean empty = trimEnd(s, argStart, argEnd) == argStart;
+        if (nameIs(s, nameStart, nameEnd, "b")) {
+            int weight = parseInt(s, argStart, argEnd, -1);
+            setFlag(FLAG_BOLD, empty ? style.bold : weight == 1 || weight >= 700);
+        } else if (nameIs(s, nameStart, nameEnd, "i")) {
+            setFlag(FLAG_ITALIC, empty ? style.italic : parseInt(s, argStart, argEnd, 0) != 0);
+        } else if (nameIs(s, nameStart, nameEnd, "u")) {
+            setFlag(FLAG_UNDERLINE, empty ? style.underline : parseInt(s, argStart, argEnd, 0) != 0);
+        } else if (nameIs(s, nameStart, nameEnd, "s")) {
+            setFlag(FLAG_STRIKE_OUT, empty ? style.strikeOut : parseInt(s, argStart, argEnd, 0) != 0);
+        } else if (nameIs(s, nameStart, nameEnd, "c") || nameIs(s, nameStart, nameEnd, "1c")) {
+            int parsed = empty ? style.primaryColor : AssScript.parseColor(s, argStart, argEnd, color);
+            setColor((color & 0xff000000) | (parsed & 0x00ffffff));
+        } else if (nameIs(s, nameStart, nameEnd, "alpha") || nameIs(s, nameStart, nameEnd, "1a")) {
+            int alpha = empty ? style.primaryColor >>> 24 : 0xff - (int) (AssScript.parseHex(s, argStart, argEnd, 0) & 0xff);
+            setColor((alpha << 24) | (color & 0x00ffffff));
+        } else if (nameIs(s, nameStart, nameEnd, "fs")) {
+            float value = empty ? style.fontSize : parseFloat(s, argStart, argEnd, size);
+            if (value != size) {
+                closeRun();
+                size = value;
+            }
+        } else if (nameIs(s, nameStart, nameEnd, "an")) {
+            int value = parseInt(s, argStart, argEnd, 0);
+            // the first one wins
+            if (alignment == 0 && value >= 1 && value <= 9) {
+                alignment = value;
+            }
+        } else if (nameIs(s, nameStart, nameEnd, "a")) {
+            int value = parseInt(s, argStart, argEnd, 0);
+            if (alignment == 0 && value > 0) {
+                alignment = AssScript.fromLegacyAlignment(value);
+            }
+        } else if (nameIs(s, nameStart, nameEnd, "pos") || nameIs(s, nameStart, nameEnd, "move")) {
+            // (x, y) or (x1, y1, x2, y2[, t1, t2]), moves stay at the start
+            int comma = indexOf(s, ',', argStart, argEnd);
+            if (Float.isNaN(positionX) && comma > argStart) {
+                int next = indexOf(s, ',', comma + 1, argEnd);
+                positionX = parseFloat(s, argStart + 1, comma, Float.NaN);
+                positionY = parseFloat(s, comma + 1, next >= 0 ? next : argEnd - 1, Float.NaN);
+            }
+        } else if (nameIs(s, nameStart, nameEnd, "r")) {
+            int nameTo = trimEnd(s, argStart, argEnd);
+            resetTo(nameTo == argStart ? eventStyle : script.getStyle(s.subSequence(argStart, nameTo).toString()));
+        } else if (nameIs(s, nameStart, nameEnd, "p")) {
+            // vector drawings are not text
+            drawing = parseInt(s, argStart, argEnd, 0) > 0;
+        }
+    }
+
+    private void setFlag(int flag, boolean set) {
+        int value = set ? flags | flag : flags & ~flag;
+        if (value != flags) {
+            closeRun();
+            flags = value;
+        }
+    }
+
+    private void setColor(int value) {
+        if (value != color) {
+            closeRun();
+            color = value;
+        }
+    }
+
+    private static boolean nameIs(CharSequence s, int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (s.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int trimEnd(CharSequence s, int from, int to) {
+        while (to > from && (s.charAt(to - 1) == ' ' || s.charAt(to - 1) == '\t')) {
+            to--;
+        }
+        return to;
+    }
+
+    private static int parseInt(CharSequence s, int from, int to, int fallback) {
+        float value = parseFloat(s, from, to, Float.NaN);
+        return Float.isNaN(value) ? fallback : (int) value;
+    }
+
+    // [-]digits[.digits], surrounding spaces and parentheses skipped
+    private static float parseFloat(CharSequence s, int from, int to, float fallback) {
+        while (from < to && (s.charAt(from) == ' ' || s.charAt(from) == '(')) {
+            from++;
+        }
+        boolean negative = from < to && s.charAt(from) == '-';
+        if (negative || (from < to && s.charAt(from) == '+')) {
+            from++;
+        }
+        float value = 0;
+        float scale = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '.' && scale == 0) {
+                scale = 1;
+            } else if (c >= '0' && c <= '9') {
+                if (scale == 0) {
+                    value = value * 10 + (c - '0');
+                } else {
+                    scale /= 10;
+                    value += (c - '0') * scale;
+                }
+                digits++;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return fallback;
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,288 @@
+package com.orion.player.ijk;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// ASS/SSA 脚本头：[Script Info] 的 PlayResX/PlayResY 和 [V4+ Styles] 的样式，只在设置脚本头时解析一次
+public class AssScript {
+    // the spec default when PlayRes is missing
+    private static final int DefaultPlayResX = 384;
+    private static final int DefaultPlayResY = 288;
+
+    public static class Style {
+        public final String name;
+        // script pixels, 0 when unknown
+        public final float fontSize;
+        // argb
+        public final int primaryColor;
+        public final boolean bold;
+        public final boolean italic;
+        public final boolean underline;
+        public final boolean strikeOut;
+        // numpad layout, 1 bottom left .. 9 top right
+        public final int alignment;
+        public final int marginL;
+        public final int marginR;
+        public final int marginV;
+        // from a script header, otherwise positioning is left to the subtitle view
+        public final boolean declared;
+
+        public Style(String name, float fontSize, int primaryColor, boolean bold, boolean italic, boolean underline,
+                     boolean strikeOut, int alignment, int marginL, int marginR, int marginV, boolean declared) {
+            this.name = name;
+            this.fontSize = fontSize;
+            this.primaryColor = primaryColor;
+            this.bold = bold;
+            this.italic = italic;
+            this.underline = underline;
+            this.strikeOut = strikeOut;
+            this.alignment = alignment;
+            this.marginL = marginL;
+            this.marginR = marginR;
+            this.marginV = marginV;
+            this.declared = declared;
+        }
+    }
+
+    public static final Style DefaultStyle = new Style("Default", 0, 0xffffffff, false, false, false, false, 2, 0, 0, 0, false);
+
+    public final int playResX;
+    public final int playResY;
+    private final Map<String, Style> styles;
+    // index of the Style field in a Dialogue line, Text is always the last field
+    public final int eventStyleIndex;
+    public final int eventFieldCount;
+
+    private AssScript(int playResX, int playResY, Map<String, Style> styles, int eventStyleIndex, int eventFieldCount) {
+        this.playResX = playResX;
+        this.playResY = playResY;
+        this.styles = styles;
+        this.eventStyleIndex = eventStyleIndex;
+        this.eventFieldCount = eventFieldCount;
+    }
+
+    public static AssScript empty() {
+        return new AssScript(DefaultPlayResX, DefaultPlayResY, new HashMap<>(), 3, 10);
+    }
+
+    // style names are case insensitive, unknown names fall back to Default
+    public Style getStyle(@Nullable String name) {
+        Style style = name != null ? styles.get(name.trim().toLowerCase(Locale.ROOT)) : null;
+        if (style != null) {
+            return style;
+        }
+        style = styles.get("default");
+        return style != null ? style : DefaultStyle;
+    }
+
+    public static AssScript parse(String header) {
+        int playResX = 0;
+        int playResY = 0;
+        Map<String, Style> styles = new HashMap<>();
+        String section = "";
+        String[] styleFormat = null;
+        int eventStyleIndex = 3;
+        int eventFieldCount = 10;
+        for (String line : header.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith(";")) {
+                continue;
+            }
+            if (line.startsWith("[") && line.endsWith("]")) {
+                section = line.toLowerCase(Locale.ROOT);
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            switch (section) {
+                case "[script info]":
+                    if (key.equalsIgnoreCase("PlayResX")) {
+                        playResX = parseInt(value, 0);
+                    } else if (key.equalsIgnoreCase("PlayResY")) {
+                        playResY = parseInt(value, 0);
+                    }
+                    break;
+                case "[v4+ styles]":
+                case "[v4 styles]":
+                    if (key.equalsIgnoreCase("Format")) {
+                        styleFormat = splitFields(value, Integer.MAX_VALUE);
+                    } else if (key.equalsIgnoreCase("Style") && styleFormat != null) {
+                        Style style = parseStyle(styleFormat, splitFields(value, styleFormat.length), section.equals("[v4 styles]"));
+                        if (style != null) {
+                            styles.put(style.name.toLowerCase(Locale.ROOT), style);
+                        }
+                    }
+                    break;
+                case "[events]":
+                    if (key.equalsIgnoreCase("Format")) {
+                        String[] format = splitFields(value, Integer.MAX_VALUE);
+                        eventFieldCount = format.length;
+                        for (int i = 0; i < format.length; i++) {
+                            if (format[i].equalsIgnoreCase("Style")) {
+                                eventStyleIndex = i;
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        // one of them missing is scaled from the other, as libass does
+        if (playResX <= 0 && playResY <= 0) {
+            playResX = DefaultPlayResX;
+            playResY = DefaultPlayResY;
+        } else if (playResX <= 0) {
+            playResX = playResY == 1024 ? 1280 : playResY * 4 / 3;
+        } else if (playResY <= 0) {
+            playResY = playResX == 1280 ? 1024 : playResX * 3 / 4;
+        }
+        return new AssScript(playResX, playResY, styles, eventStyleIndex, eventFieldCount);
+    }
+
+    @Nullable
+    private static Style parseStyle(String[] format, String[] fields, boolean legacyAlignment) {
+        if (fields.length != format.length) {
+            return null;
+        }
+        String name = null;
+        float fontSize = 0;
+        int primaryColor = 0xffffffff;
+        boolean bold = false;
+        boolean italic = false;
+        boolean underline = false;
+        boolean strikeOut = false;
+        int alignment = 2;
+        int marginL = 0;
+        int marginR = 0;
+        int marginV = 0;
+        for (int i = 0; i < format.length; i++) {
+            String value = fields[i];
+            switch (format[i].toLowerCase(Locale.ROOT)) {
+                case "name":
+                    name = value;
+                    break;
+                case "fontsize":
+                    fontSize = parseFloat(value);
+                    break;
+                case "primarycolour":
+                    primaryColor = parseColor(value, 0, value.length(), primaryColor);
+                    break;
+                case "bold":
+                    bold = parseInt(value, 0) != 0;
+                    break;
+                case "italic":
+                    italic = parseInt(value, 0) != 0;
+                    break;
+                case "underline":
+                    underline = parseInt(value, 0) != 0;
+                    break;
+                case "strikeout":
+                    strikeOut = parseInt(value, 0) != 0;
+                    break;
+                case "alignment":
+                    alignment = legacyAlignment ? fromLegacyAlignment(parseInt(value, 2)) : parseInt(value, 2);
+                    break;
+                case "marginl":
+                    marginL = parseInt(value, 0);
+                    break;
+                case "marginr":
+                    marginR = parseInt(value, 0);
+                    break;
+                case "marginv":
+                    marginV = parseInt(value, 0);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        if (alignment < 1 || alignment > 9) {
+            alignment = 2;
+        }
+        return new Style(name, fontSize, primaryColor, bold, italic, underline, strikeOut, alignment, marginL, marginR, marginV, true);
+    }
+
+    // the last field takes the rest, text may contain commas
+    private static String[] splitFields(String value, int limit) {
+        String[] fields = value.split(",", limit == Integer.MAX_VALUE ? -1 : limit);
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+        }
+        return fields;
+    }
+
+    // ssa \a: 1-3 bottom, +4 top, +8 middle
+    static int fromLegacyAlignment(int value) {
+        int horizontal = value & 3;
+        if (horizontal == 0) {
+            return 2;
+        }
+        if ((value & 4) != 0) {
+            return horizontal + 6;
+        }
+        if ((value & 8) != 0) {
+            return horizontal + 3;
+        }
+        return horizontal;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static float parseFloat(String value) {
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // &HAABBGGRR or &HBBGGRR; alpha 00 is opaque. Returns argb
+    static int parseColor(CharSequence text, int from, int to, int fallback) {
+        long abgr = parseHex(text, from, to, -1L);
+        if (abgr < 0) {
+            return fallback;
+        }
+        int alpha = 0xff - (int) ((abgr >>> 24) & 0xff);
+        int blue = (int) (abgr >> 16) & 0xff;
+        int green = (int) (abgr >> 8) & 0xff;
+        int red = (int) abgr & 0xff;
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    // &H...& is hex, a bare number is decimal as in ssa styles
+    static long parseHex(CharSequence text, int from, int to, long fallback) {
+        boolean hex = false;
+        while (from < to && (text.charAt(from) == '&' || text.charAt(from) == 'H' || text.charAt(from) == 'h' || text.charAt(from) == ' ')) {
+            hex |= text.charAt(from) == 'H' || text.charAt(from) == 'h';
+            from++;
+        }
+        int radix = hex ? 16 : 10;
+        long value = 0;
+        int digits = 0;
+        for (int i = from; i < to && digits < 10; i++) {
+            int digit = Character.digit(text.charAt(i), radix);
+            if (digit < 0) {
+                break;
+            }
+            value = value * radix + digit;
+            digits++;
+        }
+        return digits > 0 ? value & 0xffffffffL : fallback;
+    }
+}
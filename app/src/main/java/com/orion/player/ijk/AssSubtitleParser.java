@@ -1,20 +1,234 @@
 package com.orion.player.ijk;
 
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+import android.text.style.UnderlineSpan;
+
+import androidx.annotation.Nullable;
+
 import com.google.android.exoplayer2.text.Cue;
 import com.google.android.exoplayer2.text.CueGroup;
 
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+// ijk 送来的字幕文本多是去掉了 Dialogue 字段的 ASS 事件，也可能是完整的 Dialogue 行；
+// 样式头只解析一次，span 按样式缓存，相同的事件直接复用上次的 CueGroup；
+// android 的 span 对象用到时才创建，纯文本事件不碰 android.text
 public class AssSubtitleParser implements SubtitleParser {
-    Pattern delete = Pattern.compile("\\{.*?\\}");
+    private static final String DialoguePrefix = "Dialogue:";
+    private static final CueGroup Empty = new CueGroup(Collections.emptyList());
+    // anime streams repeat signs and karaoke lines
+    private static final int CachedEvents = 64;
+
+    private final AssEventScanner scanner = new AssEventScanner();
+    private final Cue.Builder cueBuilder = new Cue.Builder();
+    // access ordered, the least recently shown event is dropped first
+    private final Map<String, CueGroup> events = new LinkedHashMap<String, CueGroup>(CachedEvents, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CueGroup> eldest) {
+            return size() > CachedEvents;
+        }
+    };
+    // keyed by Typeface style
+    private final Map<Integer, StyleSpan> styleSpans = new HashMap<>();
+    private final Map<Integer, ForegroundColorSpan> colorSpans = new HashMap<>();
+    private final Map<Integer, RelativeSizeSpan> sizeSpans = new HashMap<>();
+    @Nullable
+    private UnderlineSpan underlineSpan;
+    @Nullable
+    private StrikethroughSpan strikeOutSpan;
+    private AssScript script = AssScript.empty();
+
+    // [Script Info] and [V4+ Styles] of the track, null for none
+    public void setHeader(@Nullable String header) {
+        script = header != null ? AssScript.parse(header) : AssScript.empty();
+        events.clear();
+    }
 
     @Override
     public CueGroup parse(String text) {
-        Matcher m = delete.matcher(text);
-        String clean = m.replaceAll("");
-        Cue cue = new Cue.Builder().setText(clean).build();
-        return new CueGroup(List.of(cue));
+        if (text == null || text.isEmpty()) {
+            return Empty;
+        }
+        CueGroup cached = events.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        int from = 0;
+        AssScript.Style style = script.getStyle(null);
+        if (text.startsWith(DialoguePrefix)) {
+            // Layer, Start, End, Style, Name, MarginL, MarginR, MarginV, Effect, Text
+            int field = 0;
+            int fieldStart = DialoguePrefix.length();
+            for (int i = fieldStart; i < text.length() && field < script.eventFieldCount - 1; i++) {
+                if (text.charAt(i) != ',') {
+                    continue;
+                }
+                if (field == script.eventStyleIndex) {
+                    style = script.getStyle(text.substring(fieldStart, i));
+                }
+                field++;
+                fieldStart = i + 1;
+            }
+            from = fieldStart;
+        }
+        scanner.scan(text, from, text.length(), script, style);
+        CueGroup cueGroup = scanner.getText().length() == 0 ? Empty : new CueGroup(Collections.singletonList(buildCue()));
+        events.put(text, cueGroup);
+        return cueGroup;
+    }
+
+    private Cue buildCue() {
+        AssScript.Style style = scanner.getEventStyle();
+        // every field is set, the builder is shared by all events
+        cueBuilder.setText(hasSpans(style) ? buildSpanned(style) : scanner.getText().toString())
+                .setTextAlignment(null)
+                .setLine(Cue.DIMEN_UNSET, Cue.TYPE_UNSET)
+                .setLineAnchor(Cue.TYPE_UNSET)
+                .setPosition(Cue.DIMEN_UNSET)
+                .setPositionAnchor(Cue.TYPE_UNSET)
+                .setTextSize(Cue.DIMEN_UNSET, Cue.TYPE_UNSET);
+        if (style.declared && style.fontSize > 0) {
+            cueBuilder.setTextSize(style.fontSize / script.playResY, Cue.TEXT_SIZE_TYPE_FRACTIONAL);
+        }
+        int alignment = scanner.getAlignment();
+        boolean positioned = !Float.isNaN(scanner.getPositionX()) && !Float.isNaN(scanner.getPositionY());
+        // bare text without a style header keeps the default placement of the subtitle view
+        if (alignment == 0 && !positioned && !style.declared) {
+            return cueBuilder.build();
+        }
+        if (alignment == 0) {
+            alignment = style.alignment;
+        }
+        int horizontal = (alignment - 1) % 3;
+        int vertical = (alignment - 1) / 3;
+        cueBuilder.setTextAlignment(horizontal == 0 ? Layout.Alignment.ALIGN_NORMAL
+                : (horizontal == 1 ? Layout.Alignment.ALIGN_CENTER : Layout.Alignment.ALIGN_OPPOSITE));
+        cueBuilder.setPositionAnchor(horizontal == 0 ? Cue.ANCHOR_TYPE_START
+                : (horizontal == 1 ? Cue.ANCHOR_TYPE_MIDDLE : Cue.ANCHOR_TYPE_END));
+        // numpad rows: 1-3 bottom, 4-6 middle, 7-9 top
+        cueBuilder.setLineAnchor(vertical == 0 ? Cue.ANCHOR_TYPE_END
+                : (vertical == 1 ? Cue.ANCHOR_TYPE_MIDDLE : Cue.ANCHOR_TYPE_START));
+        if (positioned) {
+            cueBuilder.setPosition(scanner.getPositionX() / script.playResX);
+            cueBuilder.setLine(scanner.getPositionY() / script.playResY, Cue.LINE_TYPE_FRACTION);
+        } else {
+            cueBuilder.setPosition(horizontal == 0 ? (float) style.marginL / script.playResX
+                    : (horizontal == 1 ? 0.5f : 1f - (float) style.marginR / script.playResX));
+            cueBuilder.setLine(vertical == 0 ? 1f - (float) style.marginV / script.playResY
+                    : (vertical == 1 ? 0.5f : (float) style.marginV / script.playResY), Cue.LINE_TYPE_FRACTION);
+        }
+        return cueBuilder.build();
+    }
+
+    // runs in the default look of the event style need no span
+    private boolean hasSpans(AssScript.Style style) {
+        for (int i = 0; i < scanner.getRunCount(); i++) {
+            float size = scanner.getRunSize(i);
+            if ((scanner.getRunFlags(i) & (AssEventScanner.FLAG_BOLD | AssEventScanner.FLAG_ITALIC
+                    | AssEventScanner.FLAG_UNDERLINE | AssEventScanner.FLAG_STRIKE_OUT)) != 0
+                    || scanner.getRunColor(i) != 0xffffffff
+                    || (style.fontSize > 0 && size > 0 && size != style.fontSize)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private SpannableString buildSpanned(AssScript.Style style) {
+        SpannableString spanned = new SpannableString(scanner.getText());
+        for (int i = 0; i < scanner.getRunCount(); i++) {
+            int start = scanner.getRunStart(i);
+            int end = scanner.getRunEnd(i);
+            int flags = scanner.getRunFlags(i);
+            boolean bold = (flags & AssEventScanner.FLAG_BOLD) != 0;
+            boolean italic = (flags & AssEventScanner.FLAG_ITALIC) != 0;
+            if (bold || italic) {
+                setSpan(spanned, styleSpan(bold && italic ? Typeface.BOLD_ITALIC : (bold ? Typeface.BOLD : Typeface.ITALIC)), start, end);
+            }
+            if ((flags & AssEventScanner.FLAG_UNDERLINE) != 0) {
+                if (underlineSpan == null) {
+                    underlineSpan = new UnderlineSpan();
+                }
+                setSpan(spanned, underlineSpan, start, end);
+            }
+            if ((flags & AssEventScanner.FLAG_STRIKE_OUT) != 0) {
+                if (strikeOutSpan == null) {
+                    strikeOutSpan = new StrikethroughSpan();
+                }
+                setSpan(spanned, strikeOutSpan, start, end);
+            }
+            int color = scanner.getRunColor(i);
+            if (color != 0xffffffff) {
+                setSpan(spanned, colorSpan(color), start, end);
+            }
+            float size = scanner.getRunSize(i);
+            if (style.fontSize > 0 && size > 0 && size != style.fontSize) {
+                setSpan(spanned, sizeSpan(Math.round(size * 100 / style.fontSize)), start, end);
+            }
+        }
+        return spanned;
+    }
+
+    // a span object covers one range of a text: a run right after it extends it, a later run gets a copy
+    private static void setSpan(SpannableString spanned, Object span, int start, int end) {
+        int attachedStart = spanned.getSpanStart(span);
+        if (attachedStart >= 0 && spanned.getSpanEnd(span) == start) {
+            spanned.setSpan(span, attachedStart, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            return;
+        }
+        spanned.setSpan(attachedStart >= 0 ? copyOf(span) : span, start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+
+    private static Object copyOf(Object span) {
+        if (span instanceof StyleSpan) {
+            return new StyleSpan(((StyleSpan) span).getStyle());
+        }
+        if (span instanceof ForegroundColorSpan) {
+            return new ForegroundColorSpan(((ForegroundColorSpan) span).getForegroundColor());
+        }
+        if (span instanceof RelativeSizeSpan) {
+            return new RelativeSizeSpan(((RelativeSizeSpan) span).getSizeChange());
+        }
+        if (span instanceof UnderlineSpan) {
+            return new UnderlineSpan();
+        }
+        return new StrikethroughSpan();
+    }
+
+    private StyleSpan styleSpan(int typefaceStyle) {
+        StyleSpan span = styleSpans.get(typefaceStyle);
+        if (span == null) {
+            span = new StyleSpan(typefaceStyle);
+            styleSpans.put(typefaceStyle, span);
+        }
+        return span;
+    }
+
+    private ForegroundColorSpan colorSpan(int color) {
+        ForegroundColorSpan span = colorSpans.get(color);
+        if (span == null) {
+            span = new ForegroundColorSpan(color);
+            colorSpans.put(color, span);
+        }
+        return span;
+    }
+
+    private RelativeSizeSpan sizeSpan(int percent) {
+        RelativeSizeSpan span = sizeSpans.get(percent);
+        if (span == null) {
+            span = new RelativeSizeSpan(percent / 100f);
+            sizeSpans.put(percent, span);
+        }
+        return span;
     }
 }
@@ -54,6 +54,8 @@ public class ExtSWIjkPlayer implements IExtPlayer,
     protected boolean playWhenReady = false;
     protected ExtVideoSize videoSize;
     protected ExtDataSource dataSource;
+    @IjkOptionProfile.Profile
+    protected int optionProfile = IjkOptionProfile.PROFILE_LIVE_TS;
 
     protected SurfaceHolder surfaceHolder;
     protected TextureView textureView;
@@ -62,6 +64,8 @@ public class ExtSWIjkPlayer implements IExtPlayer,
     protected Surface videoOutput;
 
     protected long bufferedPosition = 0;
+    protected float volume = 1.0f;
+    protected float playbackSpeed = 1.0f;
 
     public ExtSWIjkPlayer(Context context) {
         this.context = context;
@@ -95,9 +99,36 @@ public class ExtSWIjkPlayer implements IExtPlayer,
         }
     }
 
+    // native reset() recreates the native player, so options, surface, volume and speed
+    // have to be applied again; java side listeners and surface callbacks survive
+    protected void resetForReuse() {
+        ijkMediaPlayer.reset();
+        setOptions(ijkMediaPlayer);
+        if (videoOutput != null) {
+            ijkMediaPlayer.setSurface(videoOutput);
+        }
+        ijkMediaPlayer.setVolume(volume, volume);
+        if (playbackSpeed != 1.0f) {
+            ijkMediaPlayer.setSpeed(playbackSpeed);
+        }
+        // state goes back to idle quietly, onPrepared will report buffering again
+        playbackState = STATE_IDLE;
+        prepared = false;
+        playWhenReady = false;
+        playerError = null;
+        seekToPositionMsWhenReady = 0;
+        bufferedPosition = 0;
+        videoSize = null;
+    }
+
     @Override
     public void setDataSource(ExtDataSource dataSource) {
+        if (this.dataSource != null) {
+            resetForReuse();
+        }
         this.dataSource = dataSource;
+        optionProfile = IjkOptionProfile.detect(dataSource);
+        IjkOptionProfile.apply(ijkMediaPlayer, optionProfile);
         for (Listener listener : listeners) {
             listener.onDataSourceUsed(dataSource);
         }
@@ -132,6 +163,11 @@ public class ExtSWIjkPlayer implements IExtPlayer,
         return dataSource;
     }
 
+    @Override
+    public String getPlaybackProfile() {
+        return dataSource != null ? IjkOptionProfile.getName(optionProfile) : null;
+    }
+
     @Override
     public void prepare() {
         try {
@@ -140,6 +176,11 @@ public class ExtSWIjkPlayer implements IExtPlayer,
         }
     }
 
+    @Override
+    public boolean isReusable() {
+        return true;
+    }
+
     @Override
     public void play() {
         try {
@@ -225,6 +266,7 @@ public class ExtSWIjkPlayer implements IExtPlayer,
 
     @Override
     public void setPlaybackSpeed(float speed) {
+        playbackSpeed = speed;
         ijkMediaPlayer.setSpeed(speed);
     }
 
@@ -233,6 +275,12 @@ public class ExtSWIjkPlayer implements IExtPlayer,
         return ijkMediaPlayer.getSpeed(.0f);
     }
 
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+        ijkMediaPlayer.setVolume(volume, volume);
+    }
+
     @Override
     public int getPlaybackState() {
         return playbackState;
@@ -248,6 +296,11 @@ public class ExtSWIjkPlayer implements IExtPlayer,
         return ijkMediaPlayer.getTcpSpeed();
     }
 
+    @Override
+    public long getCurrentLiveOffset() {
+        return -1;
+    }
+
     @Override
     public long getCurrentPosition() {
         return ijkMediaPlayer.getCurrentPosition();
@@ -533,7 +586,7 @@ public class ExtSWIjkPlayer implements IExtPlayer,
 
     @Override
     public boolean onError(IMediaPlayer mp, int what, int extra) {
-        notifyError(new Exception(String.format(Locale.getDefault(), "[error] what: %d, extra: %d", what, extra)));
+        notifyError(new IjkPlayerException(what, extra));
         return true;
     }
 
@@ -568,6 +621,11 @@ public class ExtSWIjkPlayer implements IExtPlayer,
             default:
         }
         maybeChangePlayerStateTo(state);
+        if (what == IMediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START) {
+            for (Listener listener : listeners) {
+                listener.onRenderedFirstFrame();
+            }
+        }
         return true;
     }
 
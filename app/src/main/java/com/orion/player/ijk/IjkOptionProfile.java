@@ -0,0 +1,113 @@
+package com.orion.player.ijk;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.LOCAL_VARIABLE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE_USE;
+
+import android.net.Uri;
+
+import androidx.annotation.IntDef;
+
+import com.orion.player.ExtDataSource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Locale;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+// ffmpeg 默认的 probesize/analyzeduration 和包缓冲对直播起播很慢，按协议和容器选择一组参数
+public class IjkOptionProfile {
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({FIELD, METHOD, PARAMETER, LOCAL_VARIABLE, TYPE_USE})
+    @IntDef({PROFILE_LIVE_TS, PROFILE_HLS, PROFILE_RTSP, PROFILE_VOD})
+    public @interface Profile {}
+    public static final int PROFILE_LIVE_TS = 0;
+    public static final int PROFILE_HLS = 1;
+    public static final int PROFILE_RTSP = 2;
+    public static final int PROFILE_VOD = 3;
+    private static final String[] names = {"live-ts", "hls", "rtsp", "vod"};
+
+    private static final String[] vodExtensions = {".mp4", ".mkv", ".mov", ".avi", ".webm", ".m4v", ".wmv", ".rmvb"};
+
+    private IjkOptionProfile() {
+    }
+
+    public static String getName(@Profile int profile) {
+        return names[profile];
+    }
+
+    @Profile
+    public static int detect(ExtDataSource dataSource) {
+        Uri uri = Uri.parse(dataSource.getUri());
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        String path = uri.getPath() != null ? uri.getPath().toLowerCase(Locale.ROOT) : "";
+        switch (scheme) {
+            case "rtsp":
+            case "rtmp":
+                return PROFILE_RTSP;
+            case "udp":
+            case "rtp":
+                return PROFILE_LIVE_TS;
+            case "file":
+            case "content":
+                return PROFILE_VOD;
+        }
+        if (path.endsWith(".m3u8")) {
+            return PROFILE_HLS;
+        }
+        for (String extension : vodExtensions) {
+            if (path.endsWith(extension)) {
+                return PROFILE_VOD;
+            }
+        }
+        // most iptv links without a known extension are live ts or flv
+        return PROFILE_LIVE_TS;
+    }
+
+    // options are applied on top of the ones set by setOptions, before setDataSource
+    public static void apply(IjkMediaPlayer player, @Profile int profile) {
+        switch (profile) {
+            case PROFILE_LIVE_TS:
+                // ts carries codec parameters in every keyframe, a few packets are enough
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "probesize", 128 * 1024);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "analyzeduration", 500 * 1000);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "flush_packets", 1);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "reconnect", 1);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "packet-buffering", 0);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "framedrop", 1);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 1);
+                break;
+            case PROFILE_HLS:
+                // segments are fetched whole, keep buffering but probe less
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "probesize", 256 * 1024);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "analyzeduration", 1000 * 1000);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "reconnect", 1);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "http_persistent", 1);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "framedrop", 1);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 1);
+                break;
+            case PROFILE_RTSP:
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "rtsp_transport", "tcp");
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "rtsp_flags", "prefer_tcp");
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "fflags", "nobuffer");
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "probesize", 32 * 1024);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "analyzeduration", 100 * 1000);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "packet-buffering", 0);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "infbuf", 1);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "framedrop", 1);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 1);
+                break;
+            case PROFILE_VOD:
+                // ffmpeg defaults, seeking should land on the requested position
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "reconnect", 1);
+                player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", 1);
+                break;
+        }
+    }
+}
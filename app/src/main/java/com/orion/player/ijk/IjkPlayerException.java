@@ -0,0 +1,15 @@
+package com.orion.player.ijk;
+
+import java.util.Locale;
+
+// onError of ijk, what is an IMediaPlayer error or MEDIA_ERROR_IJK_PLAYER with the ffmpeg error in extra
+public class IjkPlayerException extends Exception {
+    public final int what;
+    public final int extra;
+
+    public IjkPlayerException(int what, int extra) {
+        super(String.format(Locale.getDefault(), "[error] what: %d, extra: %d", what, extra));
+        this.what = what;
+        this.extra = extra;
+    }
+}
@@ -0,0 +1,102 @@
+package com.orion.player.render;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// GL 渲染统计：最近若干帧的显示间隔和绘制耗时放在定长数组里循环覆盖，丢帧和迟到帧累计计数；
+// 帧到达和绘制在不同线程，都加锁
+public class RenderStats {
+    // about 10 s at 30 fps
+    private static final int Capacity = 300;
+    // drawn later than this after the frame arrived, about one vsync at 60 Hz
+    private static final long LateNs = 20_000_000L;
+
+    // SurfaceTexture timestamp deltas, 0 when unknown
+    private final long[] presentationDeltas = new long[Capacity];
+    private final long[] drawDurations = new long[Capacity];
+    private int next = 0;
+    private int size = 0;
+    private long lastTimestamp = -1;
+    private long availableAt = -1;
+    private long framesDrawn = 0;
+    private long framesDropped = 0;
+    private long framesLate = 0;
+
+    // replaced: the previous frame arrived but was never drawn
+    synchronized void onFrameAvailable(boolean replaced, long nowNs) {
+        if (replaced) {
+            framesDropped += 1;
+        } else {
+            availableAt = nowNs;
+        }
+    }
+
+    // gl thread, once per latched frame
+    synchronized void onFrameDrawn(long timestampNs, long drawStartNs, long drawEndNs) {
+        framesDrawn += 1;
+        if (availableAt >= 0 && drawEndNs - availableAt > LateNs) {
+            framesLate += 1;
+        }
+        availableAt = -1;
+        presentationDeltas[next] = lastTimestamp >= 0 && timestampNs > lastTimestamp ? timestampNs - lastTimestamp : 0;
+        drawDurations[next] = drawEndNs - drawStartNs;
+        lastTimestamp = timestampNs;
+        next = (next + 1) % Capacity;
+        size = Math.min(size + 1, Capacity);
+    }
+
+    public synchronized void reset() {
+        next = 0;
+        size = 0;
+        lastTimestamp = -1;
+        availableAt = -1;
+        framesDrawn = 0;
+        framesDropped = 0;
+        framesLate = 0;
+    }
+
+    public synchronized String summary() {
+        if (size == 0) {
+            return "render: no frames";
+        }
+        long[] deltas = new long[size];
+        int count = 0;
+        long deltaSum = 0;
+        for (int i = 0; i < size; i++) {
+            if (presentationDeltas[i] > 0) {
+                deltas[count++] = presentationDeltas[i];
+                deltaSum += presentationDeltas[i];
+            }
+        }
+        long[] draws = Arrays.copyOf(drawDurations, size);
+        Arrays.sort(draws);
+        StringBuilder builder = new StringBuilder(String.format(Locale.ENGLISH,
+                "render: drawn %d dropped %d late %d\n  draw ms avg %.1f p95 %.1f max %.1f",
+                framesDrawn, framesDropped, framesLate,
+                mean(draws, size) / 1e6, draws[percentileIndex(size, 95)] / 1e6, draws[size - 1] / 1e6));
+        if (count > 1) {
+            double mean = (double) deltaSum / count;
+            double variance = 0;
+            for (int i = 0; i < count; i++) {
+                variance += (deltas[i] - mean) * (deltas[i] - mean);
+            }
+            Arrays.sort(deltas, 0, count);
+            builder.append(String.format(Locale.ENGLISH, "\n  fps %.1f interval ms p50 %.1f p95 %.1f jitter %.1f",
+                    1e9 / mean, deltas[percentileIndex(count, 50)] / 1e6, deltas[percentileIndex(count, 95)] / 1e6,
+                    Math.sqrt(variance / count) / 1e6));
+        }
+        return builder.toString();
+    }
+
+    private static double mean(long[] values, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[i];
+        }
+        return (double) sum / count;
+    }
+
+    private static int percentileIndex(int count, int percentile) {
+        return Math.min(count - 1, count * percentile / 100);
+    }
+}
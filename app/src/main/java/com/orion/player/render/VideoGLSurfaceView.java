@@ -22,6 +22,7 @@ import javax.microedition.khronos.opengles.GL10;
 public class VideoGLSurfaceView extends GLSurfaceView {
     private Surface surface;
     private final List<Callback> callbacks = new ArrayList<>();
+    private final RenderStats renderStats = new RenderStats();
 
     public VideoGLSurfaceView(Context context) {
         this(context, null);
@@ -51,6 +52,10 @@ public class VideoGLSurfaceView extends GLSurfaceView {
         return surface;
     }
 
+    public RenderStats getRenderStats() {
+        return renderStats;
+    }
+
     public void addCallback(Callback callback) {
         callbacks.add(callback);
     }
@@ -125,6 +130,7 @@ public class VideoGLSurfaceView extends GLSurfaceView {
 
             mSurface = new SurfaceTexture(mTextureID);
             mSurface.setOnFrameAvailableListener(this);
+            renderStats.reset();
             onSurfaceTextureCreated(mSurface);
         }
 
@@ -137,10 +143,13 @@ public class VideoGLSurfaceView extends GLSurfaceView {
 
         @Override
         public void onDrawFrame(GL10 gl) {
+            long drawStart = System.nanoTime();
+            long timestamp = -1;
             synchronized (this) {
                 if (updateSurface) {
                     mSurface.updateTexImage();
                     mSurface.getTransformMatrix(mSTMatrix);
+                    timestamp = mSurface.getTimestamp();
                     updateSurface = false;
                 }
             }
@@ -153,11 +162,16 @@ public class VideoGLSurfaceView extends GLSurfaceView {
             setPointer(3, aTextureCoordinates, 2, (3+2)*4);
             GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
             GLES20.glFinish();
+            // redraws without a new frame are not counted
+            if (timestamp >= 0) {
+                renderStats.onFrameDrawn(timestamp, drawStart, System.nanoTime());
+            }
         }
 
         @Override
         public void onFrameAvailable(SurfaceTexture unused) {
             synchronized (this) {
+                renderStats.onFrameAvailable(updateSurface, System.nanoTime());
                 updateSurface = true;
             }
             queueEvent(VideoGLSurfaceView.this::requestRender);
@@ -1,32 +1,76 @@
 package com.orion.iptv;
 
-import android.util.Log;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
-import com.google.android.exoplayer2.text.Cue;
-import com.google.android.exoplayer2.text.CueGroup;
-import com.orion.player.ijk.AssSubtitleParser;
+import com.orion.player.ijk.AssEventScanner;
+import com.orion.player.ijk.AssScript;
 
 import org.junit.Test;
 
-import java.util.Locale;
-
 public class AssSubtitleParserTest {
+    private static final String Header = "[Script Info]\n"
+            + "PlayResX: 1920\n"
+            + "PlayResY: 1080\n"
+            + "\n"
+            + "[V4+ Styles]\n"
+            + "Format: Name, Fontname, Fontsize, PrimaryColour, SecondaryColour, OutlineColour, BackColour, Bold, Italic, Underline, StrikeOut, ScaleX, ScaleY, Spacing, Angle, BorderStyle, Outline, Shadow, Alignment, MarginL, MarginR, MarginV, Encoding\n"
+            + "Style: Default,Arial,60,&H00FFFFFF,&H000000FF,&H00000000,&H00000000,0,0,0,0,100,100,0,0,1,2,0,2,20,20,40,1\n"
+            + "Style: Sign,Arial,40,&H0000FFFF,&H000000FF,&H00000000,&H00000000,-1,0,0,0,100,100,0,0,1,2,0,8,10,10,30,1\n"
+            + "\n"
+            + "[Events]\n"
+            + "Format: Layer, Start, End, Style, Name, MarginL, MarginR, MarginV, Effect, Text\n";
+
+    @Test
+    public void parseHeader() {
+        AssScript script = AssScript.parse(Header);
+        assertEquals(1920, script.playResX);
+        assertEquals(1080, script.playResY);
+        AssScript.Style sign = script.getStyle("sign");
+        assertTrue(sign.declared);
+        assertTrue(sign.bold);
+        assertEquals(40f, sign.fontSize, 0f);
+        assertEquals(0xffffff00, sign.primaryColor);
+        assertEquals(8, sign.alignment);
+        assertEquals(30, sign.marginV);
+        assertEquals("Default", script.getStyle("missing").name);
+        assertSame(AssScript.DefaultStyle, AssScript.empty().getStyle("Default"));
+    }
+
+    @Test
+    public void scanOverrides() {
+        AssScript script = AssScript.parse(Header);
+        AssEventScanner scanner = new AssEventScanner();
+        String event = "{\\an8\\pos(960,100)}plain {\\b1\\c&H0000FF&}red bold{\\r}\\Nnext{\\p1}m 0 0 l 10 10{\\p0}";
+        scanner.scan(event, 0, event.length(), script, script.getStyle("Default"));
+        assertEquals("plain red bold\nnext", scanner.getText().toString());
+        assertEquals(8, scanner.getAlignment());
+        assertEquals(960f, scanner.getPositionX(), 0f);
+        assertEquals(100f, scanner.getPositionY(), 0f);
+        assertEquals(3, scanner.getRunCount());
+        assertEquals(6, scanner.getRunStart(1));
+        assertEquals(14, scanner.getRunEnd(1));
+        assertEquals(AssEventScanner.FLAG_BOLD, scanner.getRunFlags(1));
+        assertEquals(0xffff0000, scanner.getRunColor(1));
+        assertEquals(0, scanner.getRunFlags(2));
+        assertEquals(0xffffffff, scanner.getRunColor(2));
+    }
+
     @Test
-    public void parseAss() {
-        String[] subtitles = new String[] {
-                "{\\fade(500,500)\\fn华文楷体\\fs16\\1c&H3CF1F3&\\b0}--==本影片由 {\\1cHFF8000&\\b1}CMCT 团队{\\fn华文楷体\\1c&H3CF1F3&\\b0} 荣誉出品==--更多精彩影视 请访问 {\\fnCronos Pro Subhead\\1c&HFF00FF&\\b1}https://cmct.tv{\\r}",
-                "",
-                "{}",
-                "{\\b0}test",
-                "{\\fs16}test",
-                "{\\1c&H3cf1f3&}ssssss"
-        };
-        AssSubtitleParser parser = new AssSubtitleParser();
-        for (String subtitle: subtitles) {
-            CueGroup cueGroup = parser.parse(subtitle);
-            for (Cue cue : cueGroup.cues) {
-                Log.i("test", String.format(Locale.getDefault(), "%d, %.2f, %s", cue.windowColor, cue.textSize, cue.text));
-            }
-        }
+    public void scanReusesBuffers() {
+        AssScript script = AssScript.empty();
+        AssEventScanner scanner = new AssEventScanner();
+        String first = "{\\i1}one{\\i0}two";
+        scanner.scan(first, 0, first.length(), script, script.getStyle(null));
+        assertEquals(2, scanner.getRunCount());
+        String second = "{\\fnArial\\fs16\\unknown(1,2)}three";
+        scanner.scan(second, 0, second.length(), script, script.getStyle(null));
+        assertEquals("three", scanner.getText().toString());
+        assertEquals(1, scanner.getRunCount());
+        assertFalse((scanner.getRunFlags(0) & AssEventScanner.FLAG_ITALIC) != 0);
+        assertEquals(16f, scanner.getRunSize(0), 0f);
+        assertEquals(0, scanner.getAlignment());
     }
 }
@@ -0,0 +1,149 @@
+package com.orion.iptv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.orion.iptv.probe.HlsProbe;
+import com.orion.iptv.probe.MediaInfo;
+import com.orion.iptv.probe.TsProbe;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+public class StreamProbeTest {
+    private static final int PmtPid = 0x1000;
+    private static final int VideoPid = 0x100;
+    private static final int AudioPid = 0x101;
+
+    // baseline sps, 80x45 macroblocks, then a pps so the sps is terminated
+    private static final byte[] AvcUnits = new byte[] {
+            0, 0, 0, 1, 0x67, 0x42, 0x00, 0x1f, (byte) 0xda, 0x01, 0x40, 0x16, (byte) 0xe4,
+            0, 0, 0, 1, 0x68, (byte) 0xce, 0x38, (byte) 0x80,
+    };
+
+    @Test
+    public void parseTs() {
+        ByteArrayOutputStream ts = new ByteArrayOutputStream();
+        ts.write(pat(), 0, 188);
+        ts.write(pmt(), 0, 188);
+        ts.write(videoStart(0), 0, 188);
+        for (int i = 1; i <= 10; i++) {
+            ts.write(pcrOnly(i * 90L), 0, 188);
+        }
+        byte[] data = ts.toByteArray();
+        MediaInfo info = TsProbe.parse(data, data.length);
+        assertNotNull(info);
+        assertEquals(MediaInfo.CONTAINER_TS, info.container);
+        assertEquals(MimeTypes.VIDEO_H264, info.videoMime);
+        assertEquals(MimeTypes.AUDIO_AAC, info.audioMime);
+        assertEquals(1280, info.width);
+        assertEquals(720, info.height);
+        assertFalse(info.tenBit);
+        // 10 packets in 10 ms
+        assertEquals(1504000, info.bitrate);
+    }
+
+    @Test
+    public void parseNotTs() {
+        byte[] data = new byte[188 * 4];
+        assertNull(TsProbe.parse(data, data.length));
+    }
+
+    @Test
+    public void parseHlsMaster() {
+        String playlist = "#EXTM3U\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=800000,RESOLUTION=640x360,CODECS=\"avc1.4d401e,mp4a.40.2\"\n"
+                + "low.m3u8\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=5000000,RESOLUTION=1920x1080,CODECS=\"hvc1.2.4.L123.B0,ec-3\"\n"
+                + "high.m3u8\n";
+        assertTrue(HlsProbe.isPlaylist(playlist));
+        MediaInfo info = HlsProbe.parseMaster(playlist);
+        assertNotNull(info);
+        assertEquals(MediaInfo.CONTAINER_HLS, info.container);
+        assertEquals(MimeTypes.VIDEO_H265, info.videoMime);
+        assertEquals(MimeTypes.AUDIO_E_AC3, info.audioMime);
+        assertEquals(1920, info.width);
+        assertEquals(1080, info.height);
+        assertTrue(info.tenBit);
+        assertEquals(5000000, info.bitrate);
+    }
+
+    @Test
+    public void parseHlsMedia() {
+        String playlist = "#EXTM3U\n#EXT-X-TARGETDURATION:6\n#EXTINF:6.0,\nseg-1.ts\n#EXTINF:6.0,\nseg-2.ts\n";
+        assertNull(HlsProbe.parseMaster(playlist));
+        assertEquals("seg-1.ts", HlsProbe.firstMediaUri(playlist));
+    }
+
+    private static byte[] packet(int pid, boolean unitStart) {
+        byte[] packet = new byte[188];
+        Arrays.fill(packet, (byte) 0xff);
+        packet[0] = 0x47;
+        packet[1] = (byte) ((unitStart ? 0x40 : 0) | (pid >> 8));
+        packet[2] = (byte) pid;
+        packet[3] = 0x10;
+        return packet;
+    }
+
+    private static byte[] pat() {
+        byte[] packet = packet(0, true);
+        byte[] section = new byte[] {
+                0, // pointer
+                0x00, (byte) 0xb0, 13, 0, 1, (byte) 0xc1, 0, 0,
+                0, 1, (byte) (0xe0 | (PmtPid >> 8)), (byte) PmtPid,
+                0, 0, 0, 0, // crc, not checked
+        };
+        System.arraycopy(section, 0, packet, 4, section.length);
+        return packet;
+    }
+
+    private static byte[] pmt() {
+        byte[] packet = packet(PmtPid, true);
+        byte[] section = new byte[] {
+                0, // pointer
+                0x02, (byte) 0xb0, 23, 0, 1, (byte) 0xc1, 0, 0,
+                (byte) (0xe0 | (VideoPid >> 8)), (byte) VideoPid, (byte) 0xf0, 0,
+                0x1b, (byte) (0xe0 | (VideoPid >> 8)), (byte) VideoPid, (byte) 0xf0, 0,
+                0x0f, (byte) (0xe0 | (AudioPid >> 8)), (byte) AudioPid, (byte) 0xf0, 0,
+                0, 0, 0, 0, // crc, not checked
+        };
+        System.arraycopy(section, 0, packet, 4, section.length);
+        return packet;
+    }
+
+    // adaptation field of 7 bytes carrying the pcr
+    private static void writePcr(byte[] packet, long base) {
+        packet[4] = 7;
+        packet[5] = 0x10;
+        packet[6] = (byte) (base >> 25);
+        packet[7] = (byte) (base >> 17);
+        packet[8] = (byte) (base >> 9);
+        packet[9] = (byte) (base >> 1);
+        packet[10] = (byte) (((base & 1) << 7) | 0x7e);
+        packet[11] = 0;
+    }
+
+    private static byte[] videoStart(long pcrBase) {
+        byte[] packet = packet(VideoPid, true);
+        packet[3] = 0x30;
+        writePcr(packet, pcrBase);
+        byte[] pesHeader = new byte[] {0, 0, 1, (byte) 0xe0, 0, 0, (byte) 0x80, 0, 0};
+        System.arraycopy(pesHeader, 0, packet, 12, pesHeader.length);
+        System.arraycopy(AvcUnits, 0, packet, 12 + pesHeader.length, AvcUnits.length);
+        return packet;
+    }
+
+    private static byte[] pcrOnly(long pcrBase) {
+        byte[] packet = packet(VideoPid, false);
+        packet[3] = 0x20;
+        writePcr(packet, pcrBase);
+        packet[4] = (byte) 183;
+        return packet;
+    }
+}
@@ -0,0 +1,44 @@
+package com.orion.iptv.record;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.orion.iptv.network.DownloadHelper;
+import com.orion.player.ExtDataSource;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RecorderTest {
+    private static Recording newRecording(String link, long endMs) throws IOException {
+        File file = File.createTempFile("recording", ".ts");
+        file.deleteOnExit();
+        return new Recording("test", link, 0, endMs, Recording.getMaxBytes(Recording.DEFAULT_BUDGET), 0, file);
+    }
+
+    private static Recording run(Recording recording) {
+        AtomicReference<Recording> finished = new AtomicReference<>();
+        new Recorder(recording, new HashMap<>(), ExtDataSource.NoAuth, finished::set).run();
+        assertSame(recording, finished.get());
+        return recording;
+    }
+
+    @Test
+    public void coldStart() throws IOException {
+        // redelivered after process death, no activity has set up the http client
+        DownloadHelper.reset();
+        Recording recording = run(newRecording("http://127.0.0.1/live.ts", System.currentTimeMillis() - 1000));
+        assertEquals(Recording.STATE_DONE, recording.getState());
+    }
+
+    @Test
+    public void unsupportedScheme() throws IOException {
+        // okhttp rejects the url, the recording still has to finish
+        Recording recording = run(newRecording("udp://239.0.0.1:1234", System.currentTimeMillis() + 60 * 1000));
+        assertEquals(Recording.STATE_FAILED, recording.getState());
+    }
+}